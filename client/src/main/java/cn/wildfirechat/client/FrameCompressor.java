@@ -0,0 +1,117 @@
+package cn.wildfirechat.client;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 帧压缩，与网关的FrameCompressor格式一致（zlib格式deflate）
+ * 统计压缩率和耗时，用于调整压缩阈值
+ */
+class FrameCompressor {
+    /**
+     * 解压后的最大字节数
+     */
+    private static final int MAX_INFLATED_BYTES = 64 * 1024 * 1024;
+
+    private final Deflater deflater = new Deflater();
+    private final Inflater inflater = new Inflater();
+    private final byte[] buffer = new byte[8192];
+
+    private final AtomicLong compressedFrames = new AtomicLong();
+    private final AtomicLong compressInBytes = new AtomicLong();
+    private final AtomicLong compressOutBytes = new AtomicLong();
+    private final AtomicLong compressNanos = new AtomicLong();
+    private final AtomicLong inflatedFrames = new AtomicLong();
+    private final AtomicLong inflateInBytes = new AtomicLong();
+    private final AtomicLong inflateOutBytes = new AtomicLong();
+    private final AtomicLong inflateNanos = new AtomicLong();
+
+    /**
+     * 压缩发送的帧
+     */
+    synchronized byte[] compress(byte[] data) {
+        long start = System.nanoTime();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            deflater.reset();
+        }
+        byte[] compressed = out.toByteArray();
+
+        compressedFrames.incrementAndGet();
+        compressInBytes.addAndGet(data.length);
+        compressOutBytes.addAndGet(compressed.length);
+        compressNanos.addAndGet(System.nanoTime() - start);
+        return compressed;
+    }
+
+    /**
+     * 解压网关发来的二进制帧
+     * @throws IOException 数据格式错误
+     */
+    synchronized byte[] inflate(ByteBuffer data) throws IOException {
+        long start = System.nanoTime();
+        int inLength = data.remaining();
+        byte[] input = new byte[inLength];
+        data.get(input);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(inLength * 4);
+        try {
+            inflater.setInput(input);
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated compressed frame");
+                }
+                out.write(buffer, 0, n);
+                if (out.size() > MAX_INFLATED_BYTES) {
+                    throw new IOException("Inflated frame exceeds " + MAX_INFLATED_BYTES + " bytes");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid compressed frame: " + e.getMessage(), e);
+        } finally {
+            inflater.reset();
+        }
+        byte[] inflated = out.toByteArray();
+
+        inflatedFrames.incrementAndGet();
+        inflateInBytes.addAndGet(inLength);
+        inflateOutBytes.addAndGet(inflated.length);
+        inflateNanos.addAndGet(System.nanoTime() - start);
+        return inflated;
+    }
+
+    /**
+     * 压缩统计
+     * 压缩率为压缩后字节数 / 原始字节数，耗时为每帧平均微秒数
+     */
+    Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long sentFrames = compressedFrames.get();
+        long sentIn = compressInBytes.get();
+        stats.put("compressedFrames", sentFrames);
+        stats.put("compressRatio", sentIn == 0 ? 0 : (double) compressOutBytes.get() / sentIn);
+        stats.put("avgCompressMicros", sentFrames == 0 ? 0 : compressNanos.get() / 1e3 / sentFrames);
+        long receivedFrames = inflatedFrames.get();
+        long receivedOut = inflateOutBytes.get();
+        stats.put("inflatedFrames", receivedFrames);
+        stats.put("inflateRatio", receivedOut == 0 ? 0 : (double) inflateInBytes.get() / receivedOut);
+        stats.put("avgInflateMicros", receivedFrames == 0 ? 0 : inflateNanos.get() / 1e3 / receivedFrames);
+        stats.put("savedBytes", (sentIn - compressOutBytes.get()) + (receivedOut - inflateInBytes.get()));
+        return stats;
+    }
+}
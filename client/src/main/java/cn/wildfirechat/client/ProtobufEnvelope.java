@@ -0,0 +1,172 @@
+package cn.wildfirechat.client;
+
+import cn.wildfirechat.client.protocol.PushMessage;
+import cn.wildfirechat.client.protocol.RequestMessage;
+import cn.wildfirechat.client.protocol.ResponseMessage;
+import cn.wildfirechat.pojos.OutputMessageData;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * protobuf帧格式，与网关的ProtobufEnvelope一致
+ * 信封中的参数、结果和消息数据是JSON字节，其余字段是protobuf字段；kind始终是第一个字段。
+ * 鉴权消息始终是JSON文本帧
+ */
+class ProtobufEnvelope {
+    private static final int KIND_REQUEST = 1;
+    private static final int KIND_RESPONSE = 2;
+    private static final int KIND_PUSH = 3;
+
+    private static final int FIELD_KIND = 1;
+    private static final int FIELD_REQUEST_ID = 2;
+    private static final int FIELD_METHOD = 3;
+    private static final int FIELD_PARAMS = 4;
+    private static final int FIELD_CODE = 5;
+    private static final int FIELD_MSG = 6;
+    private static final int FIELD_RESULT = 7;
+    private static final int FIELD_PUSH_TYPE = 8;
+    private static final int FIELD_DATA = 9;
+    private static final int FIELD_EVENT = 10;
+    private static final int FIELD_EXTRA = 11;
+
+    private static final int KIND_TAG = FIELD_KIND << 3 | WireFormat.WIRETYPE_VARINT;
+
+    private ProtobufEnvelope() {
+    }
+
+    /**
+     * 二进制帧是否为未压缩的信封
+     */
+    static boolean isEnvelope(byte[] frame) {
+        return frame.length > 0 && frame[0] == KIND_TAG;
+    }
+
+    /**
+     * 编码请求
+     */
+    static byte[] encode(RequestMessage request, Gson gson) {
+        List<byte[]> params = new ArrayList<>();
+        int size = CodedOutputStream.computeInt32Size(FIELD_KIND, KIND_REQUEST)
+                + CodedOutputStream.computeStringSize(FIELD_REQUEST_ID, request.getRequestId())
+                + CodedOutputStream.computeStringSize(FIELD_METHOD, request.getMethod());
+        if (request.getParams() != null) {
+            for (Object param : request.getParams()) {
+                byte[] json = gson.toJson(param).getBytes(StandardCharsets.UTF_8);
+                params.add(json);
+                size += CodedOutputStream.computeTagSize(FIELD_PARAMS)
+                        + CodedOutputStream.computeRawVarint32Size(json.length) + json.length;
+            }
+        }
+
+        byte[] out = new byte[size];
+        CodedOutputStream output = CodedOutputStream.newInstance(out);
+        try {
+            output.writeInt32(FIELD_KIND, KIND_REQUEST);
+            output.writeString(FIELD_REQUEST_ID, request.getRequestId());
+            output.writeString(FIELD_METHOD, request.getMethod());
+            for (byte[] json : params) {
+                output.writeTag(FIELD_PARAMS, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                output.writeRawVarint32(json.length);
+                output.writeRawBytes(json, 0, json.length);
+            }
+            output.checkNoSpaceLeft();
+        } catch (IOException e) {
+            // 写入预先分配好的数组不会出现IO错误
+            throw new IllegalStateException(e);
+        }
+        return out;
+    }
+
+    /**
+     * 解码网关发来的信封
+     * @return ResponseMessage或PushMessage
+     * @throws IOException 信封格式错误
+     */
+    static Object decode(byte[] envelope, Gson gson) throws IOException {
+        CodedInputStream input = CodedInputStream.newInstance(envelope);
+        int kind = 0;
+        String requestId = null;
+        Integer code = null;
+        String msg = null;
+        byte[] result = null;
+        String pushType = null;
+        byte[] data = null;
+        String event = null;
+        byte[] extra = null;
+        while (true) {
+            int tag = input.readTag();
+            if (tag == 0) {
+                break;
+            }
+            int field = WireFormat.getTagFieldNumber(tag);
+            boolean varint = (tag & 7) == WireFormat.WIRETYPE_VARINT;
+            boolean delimited = (tag & 7) == WireFormat.WIRETYPE_LENGTH_DELIMITED;
+            if (field == FIELD_KIND && varint) {
+                kind = input.readInt32();
+            } else if (field == FIELD_CODE && varint) {
+                code = input.readInt32();
+            } else if (!delimited) {
+                input.skipField(tag);
+            } else if (field == FIELD_REQUEST_ID) {
+                requestId = input.readString();
+            } else if (field == FIELD_MSG) {
+                msg = input.readString();
+            } else if (field == FIELD_RESULT) {
+                result = input.readRawBytes(input.readRawVarint32());
+            } else if (field == FIELD_PUSH_TYPE) {
+                pushType = input.readString();
+            } else if (field == FIELD_DATA) {
+                data = input.readRawBytes(input.readRawVarint32());
+            } else if (field == FIELD_EVENT) {
+                event = input.readString();
+            } else if (field == FIELD_EXTRA) {
+                extra = input.readRawBytes(input.readRawVarint32());
+            } else {
+                input.skipField(tag);
+            }
+        }
+
+        try {
+            switch (kind) {
+                case KIND_RESPONSE: {
+                    ResponseMessage response = new ResponseMessage();
+                    response.setRequestId(requestId);
+                    response.setCode(code != null ? code : 0);
+                    response.setMsg(msg);
+                    if (result != null) {
+                        response.setResult(JsonParser.parseString(new String(result, StandardCharsets.UTF_8)));
+                    }
+                    return response;
+                }
+                case KIND_PUSH: {
+                    PushMessage push = new PushMessage();
+                    push.setType(pushType);
+                    push.setEvent(event);
+                    if (data != null) {
+                        push.setData(gson.fromJson(new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8),
+                                OutputMessageData.class));
+                    }
+                    if (extra != null) {
+                        push.setExtra(gson.fromJson(new String(extra, StandardCharsets.UTF_8), Object.class));
+                    }
+                    return push;
+                }
+                default:
+                    throw new IOException("Unexpected envelope kind " + kind);
+            }
+        } catch (JsonParseException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+}
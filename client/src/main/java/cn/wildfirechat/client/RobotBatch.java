@@ -0,0 +1,91 @@
+package cn.wildfirechat.client;
+
+import cn.wildfirechat.pojos.Conversation;
+import cn.wildfirechat.pojos.InputOutputUserInfo;
+import cn.wildfirechat.pojos.MessagePayload;
+import cn.wildfirechat.pojos.SendMessageResult;
+import cn.wildfirechat.sdk.model.IMResult;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 批量调用
+ * 多个RobotService调用放在一个batch请求中发送，网关并行执行后在一个响应中返回所有结果；
+ * 针对同一会话的调用在网关按添加顺序执行
+ *
+ * <pre>
+ * List&lt;IMResult&lt;?&gt;&gt; results = client.newBatch()
+ *         .sendMessage(conv1, payload)
+ *         .sendMessage(conv2, payload)
+ *         .execute();
+ * </pre>
+ */
+public class RobotBatch {
+    private static final Type SEND_MESSAGE_RESULT = new TypeToken<IMResult<SendMessageResult>>(){}.getType();
+    private static final Type STRING_RESULT = new TypeToken<IMResult<String>>(){}.getType();
+    private static final Type USER_INFO_RESULT = new TypeToken<IMResult<InputOutputUserInfo>>(){}.getType();
+
+    private final RobotServiceClient client;
+    private final List<Object> items = new ArrayList<>();
+    private final List<Type> resultTypes = new ArrayList<>();
+
+    RobotBatch(RobotServiceClient client) {
+        this.client = client;
+    }
+
+    public RobotBatch sendMessage(Conversation conv, MessagePayload payload) {
+        return add("sendMessage", Arrays.asList(client.getRobotId(), conv, payload), SEND_MESSAGE_RESULT);
+    }
+
+    public RobotBatch sendMessage(Conversation conv, MessagePayload payload, List<String> toUsers) {
+        return add("sendMessage", Arrays.asList(client.getRobotId(), conv, payload, toUsers), SEND_MESSAGE_RESULT);
+    }
+
+    public RobotBatch replyMessage(long messageId, MessagePayload payload, boolean mentionSender) {
+        return add("replyMessage", Arrays.asList(messageId, payload, mentionSender), SEND_MESSAGE_RESULT);
+    }
+
+    public RobotBatch recallMessage(long messageId) {
+        return add("recallMessage", Arrays.asList(messageId), STRING_RESULT);
+    }
+
+    public RobotBatch getUserInfo(String userId) {
+        return add("getUserInfo", Arrays.asList(userId), USER_INFO_RESULT);
+    }
+
+    /**
+     * 添加任意RobotService方法调用
+     * @param method 方法名
+     * @param params 参数列表
+     * @param resultType 结果类型，如 IMResult&lt;Void&gt;
+     */
+    public RobotBatch add(String method, List<Object> params, Type resultType) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("method", method);
+        item.put("params", params);
+        items.add(item);
+        resultTypes.add(resultType);
+        return this;
+    }
+
+    /**
+     * 已添加的调用数
+     */
+    public int size() {
+        return items.size();
+    }
+
+    /**
+     * 发送并等待所有调用完成
+     * @return 按添加顺序排列的结果，整个batch失败时每一项都是同一个错误
+     */
+    public List<IMResult<?>> execute() {
+        return client.invokeBatch(items, resultTypes);
+    }
+}
@@ -3,6 +3,7 @@ package cn.wildfirechat.client;
 import cn.wildfirechat.client.handler.MessageHandler;
 import cn.wildfirechat.client.handler.ResponseHandler;
 import cn.wildfirechat.client.protocol.ConnectMessage;
+import cn.wildfirechat.client.protocol.PushFilter;
 import cn.wildfirechat.client.protocol.PushMessage;
 import cn.wildfirechat.client.protocol.RequestMessage;
 import cn.wildfirechat.client.protocol.ResponseMessage;
@@ -13,7 +14,11 @@ import org.java_websocket.handshake.ServerHandshake;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
@@ -30,6 +35,33 @@ class RobotGatewayClient extends WebSocketClient {
 
     private CompletableFuture<Boolean> authFuture;
 
+    /**
+     * 超过该字节数的帧压缩发送，0表示不协商压缩
+     */
+    private volatile int compressionThreshold = 1024;
+
+    /**
+     * 网关是否已在本次连接启用压缩
+     */
+    private volatile boolean compression;
+
+    /**
+     * 是否在鉴权时请求protobuf帧格式，默认使用JSON
+     */
+    private volatile boolean protobufRequested;
+
+    /**
+     * 网关是否已在本次连接切换为protobuf帧格式
+     */
+    private volatile boolean protobuf;
+
+    /**
+     * 鉴权时声明的推送订阅，重连后重新声明
+     */
+    private volatile PushFilter subscription;
+
+    private final FrameCompressor frameCompressor = new FrameCompressor();
+
     public RobotGatewayClient(String gatewayUrl, MessageHandler messageHandler, ConnectionManager connectionManager) {
         super(URI.create(gatewayUrl));
         this.messageHandler = messageHandler;
@@ -45,6 +77,27 @@ class RobotGatewayClient extends WebSocketClient {
         }
     }
 
+    /**
+     * 二进制帧：协商protobuf格式后为信封（可能被压缩），只协商压缩时为压缩后的JSON
+     */
+    @Override
+    public void onMessage(ByteBuffer bytes) {
+        byte[] data = new byte[bytes.remaining()];
+        bytes.get(data);
+        try {
+            if (!protobuf || !ProtobufEnvelope.isEnvelope(data)) {
+                data = frameCompressor.inflate(ByteBuffer.wrap(data));
+            }
+            if (protobuf) {
+                dispatch(ProtobufEnvelope.decode(data, gson));
+            } else {
+                onMessage(new String(data, StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            LOG.error("Failed to decode binary message: {}", e.getMessage());
+        }
+    }
+
     @Override
     public void onMessage(String message) {
         LOG.debug("Received message: {}", message);
@@ -85,13 +138,32 @@ class RobotGatewayClient extends WebSocketClient {
         }
     }
 
+    /**
+     * 分发从信封解码的消息
+     */
+    private void dispatch(Object message) {
+        if (message instanceof ResponseMessage) {
+            ResponseMessage response = (ResponseMessage) message;
+            if (response.getRequestId() != null) {
+                responseHandler.handleResponse(response);
+            } else {
+                LOG.warn("Received response without requestId: code={}, msg={}", response.getCode(), response.getMsg());
+            }
+        } else if (message instanceof PushMessage && messageHandler != null) {
+            messageHandler.onMessage((PushMessage) message);
+        }
+    }
+
     /**
      * 处理鉴权响应
      */
     private void handleConnectResponse(ConnectMessage msg) {
+        compression = msg.isSuccess() && Boolean.TRUE.equals(msg.getCompress());
+        protobuf = msg.isSuccess() && "protobuf".equals(msg.getFormat());
         if (authFuture != null) {
             if (msg.isSuccess()) {
-                LOG.info("Authentication successful");
+                LOG.info("Authentication successful, compression {}, format {}",
+                        compression ? "enabled" : "disabled", protobuf ? "protobuf" : "json");
                 if (connectionManager != null) {
                     connectionManager.onAuthenticated();
                 }
@@ -117,6 +189,13 @@ class RobotGatewayClient extends WebSocketClient {
     public void sendConnect(String robotId, String secret, CompletableFuture<Boolean> authFuture) {
         this.authFuture = authFuture;
         ConnectMessage request = ConnectMessage.request(robotId, secret);
+        if (compressionThreshold > 0) {
+            request.setCompress(true);
+        }
+        if (protobufRequested) {
+            request.setFormat("protobuf");
+        }
+        request.setSubscription(subscription);
         String json = gson.toJson(request);
 
         if (isOpen()) {
@@ -131,6 +210,8 @@ class RobotGatewayClient extends WebSocketClient {
     @Override
     public void onClose(int code, String reason, boolean remote) {
         LOG.info("WebSocket connection closed: code={}, reason={}, remote={}", code, reason, remote);
+        compression = false;
+        protobuf = false;
         responseHandler.clear();
         if (authFuture != null) {
             authFuture.complete(false);
@@ -169,9 +250,67 @@ class RobotGatewayClient extends WebSocketClient {
         String requestId = UUID.randomUUID().toString();
         RequestMessage request = new RequestMessage(requestId, method, params);
 
-        String json = gson.toJson(request);
+        CompletableFuture<ResponseMessage> future = responseHandler.registerRequest(requestId);
+        if (protobuf) {
+            sendEnvelope(ProtobufEnvelope.encode(request, gson));
+        } else {
+            sendFrame(gson.toJson(request));
+        }
+        return future;
+    }
+
+    /**
+     * 发送帧，已协商压缩且超过阈值时压缩后以二进制帧发送
+     */
+    private void sendFrame(String json) {
+        if (compression) {
+            byte[] data = json.getBytes(StandardCharsets.UTF_8);
+            if (data.length >= compressionThreshold) {
+                send(frameCompressor.compress(data));
+                return;
+            }
+        }
         send(json);
+    }
 
-        return responseHandler.registerRequest(requestId);
+    /**
+     * 以二进制帧发送protobuf信封，已协商压缩且超过阈值时整体压缩
+     */
+    private void sendEnvelope(byte[] envelope) {
+        if (compression && envelope.length >= compressionThreshold) {
+            envelope = frameCompressor.compress(envelope);
+        }
+        send(envelope);
+    }
+
+    /**
+     * 设置是否使用protobuf帧格式，下次鉴权时生效
+     * @param protobuf true时请求网关切换为protobuf信封，网关不支持时仍使用JSON
+     */
+    public void setProtobuf(boolean protobuf) {
+        this.protobufRequested = protobuf;
+    }
+
+    /**
+     * 设置推送订阅，下次鉴权时声明
+     * @param subscription 为null时不声明，网关推送所有消息
+     */
+    public void setSubscription(PushFilter subscription) {
+        this.subscription = subscription;
+    }
+
+    /**
+     * 设置压缩阈值，下次鉴权时生效
+     * @param threshold 超过该字节数的帧压缩发送，0表示不压缩
+     */
+    public void setCompressionThreshold(int threshold) {
+        this.compressionThreshold = threshold;
+    }
+
+    /**
+     * 压缩统计：压缩率、平均耗时、节省的字节数
+     */
+    public Map<String, Object> getCompressionStats() {
+        return frameCompressor.getStats();
     }
 }
@@ -1,6 +1,7 @@
 package cn.wildfirechat.client;
 
 import cn.wildfirechat.client.handler.MessageHandler;
+import cn.wildfirechat.client.protocol.PushFilter;
 import cn.wildfirechat.client.protocol.ResponseMessage;
 import cn.wildfirechat.pojos.*;
 import cn.wildfirechat.pojos.moments.CommentPojo;
@@ -10,6 +11,9 @@ import cn.wildfirechat.pojos.moments.MediaEntry;
 import cn.wildfirechat.pojos.moments.MomentProfilePojo;
 import cn.wildfirechat.sdk.model.IMResult;
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -19,8 +23,11 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * RobotService客户端实现
@@ -77,53 +84,95 @@ public class RobotServiceClient {
      * 执行远程调用
      */
     private <T> IMResult<T> invoke(String method, List<Object> params, Type resultType) {
+        ResponseMessage response = call(method, params);
+        if (!response.isSuccess()) {
+            return error(response.getCode(), response.getMsg());
+        }
+        try {
+            return GSON.fromJson(GSON.toJson(response.getResult()), resultType);
+        } catch (RuntimeException e) {
+            LOG.error("Request failed: {}", e.getMessage());
+            return error(-1, "Request failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 发送请求并等待响应
+     * @return 网关的响应，未连接、超时或发送失败时返回code为-1的响应
+     */
+    private ResponseMessage call(String method, List<Object> params) {
         if (!connectionManager.isConnected()) {
-            IMResult<T> result = new IMResult<>();
-            result.setCode(-1);
-            result.setMsg("Not connected to gateway");
-            return result;
+            return failure("Not connected to gateway");
         }
 
         try {
             CompletableFuture<ResponseMessage> future = connectionManager.getClient()
                     .sendRequest(method, params);
-            ResponseMessage response = future.get(defaultTimeout, TimeUnit.SECONDS);
-
-            if (response.isSuccess()) {
-                return GSON.fromJson(GSON.toJson(response.getResult()), resultType);
-            } else {
-                IMResult<T> result = new IMResult<>();
-                result.setCode(response.getCode());
-                result.setMsg(response.getMsg());
-                return result;
-            }
+            return future.get(defaultTimeout, TimeUnit.SECONDS);
         } catch (TimeoutException e) {
             LOG.error("Request timeout: {}", method);
-            IMResult<T> result = new IMResult<>();
-            result.setCode(-1);
-            result.setMsg("Request timeout");
-            return result;
+            return failure("Request timeout");
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
-            IMResult<T> result = new IMResult<>();
-            result.setCode(-1);
-            result.setMsg("Request interrupted");
-            return result;
+            return failure("Request interrupted");
         } catch (ExecutionException e) {
             LOG.error("Request execution failed: {}", e.getCause().getMessage());
-            IMResult<T> result = new IMResult<>();
-            result.setCode(-1);
-            result.setMsg("Request failed: " + e.getCause().getMessage());
-            return result;
+            return failure("Request failed: " + e.getCause().getMessage());
         } catch (Exception e) {
             LOG.error("Request failed: {}", e.getMessage());
-            IMResult<T> result = new IMResult<>();
-            result.setCode(-1);
-            result.setMsg("Request failed: " + e.getMessage());
-            return result;
+            return failure("Request failed: " + e.getMessage());
         }
     }
 
+    private static ResponseMessage failure(String msg) {
+        ResponseMessage response = new ResponseMessage();
+        response.setCode(-1);
+        response.setMsg(msg);
+        return response;
+    }
+
+    private static <T> IMResult<T> error(int code, String msg) {
+        IMResult<T> result = new IMResult<>();
+        result.setCode(code);
+        result.setMsg(msg);
+        return result;
+    }
+
+    /**
+     * 创建批量调用，多个调用在一个请求中发送
+     */
+    public RobotBatch newBatch() {
+        return new RobotBatch(this);
+    }
+
+    /**
+     * 执行批量调用，网关返回的结果列表按顺序转换为各自的结果类型
+     */
+    List<IMResult<?>> invokeBatch(List<Object> items, List<Type> resultTypes) {
+        if (items.isEmpty()) {
+            return new ArrayList<>();
+        }
+        ResponseMessage response = call("batch", items);
+        if (!response.isSuccess()) {
+            return new ArrayList<>(Collections.nCopies(items.size(), error(response.getCode(), response.getMsg())));
+        }
+        JsonElement tree = GSON.toJsonTree(response.getResult());
+        JsonArray responses = tree.isJsonArray() ? tree.getAsJsonArray() : new JsonArray();
+        List<IMResult<?>> results = new ArrayList<>(items.size());
+        for (int i = 0; i < items.size(); i++) {
+            JsonObject item = i < responses.size() && responses.get(i).isJsonObject()
+                    ? responses.get(i).getAsJsonObject() : null;
+            int code = item != null && item.has("code") ? item.get("code").getAsInt() : -1;
+            if (code == 0) {
+                results.add(GSON.fromJson(item.get("result"), resultTypes.get(i)));
+            } else {
+                String msg = item != null && item.has("msg") ? item.get("msg").getAsString() : "Missing batch result";
+                results.add(error(code, msg));
+            }
+        }
+        return results;
+    }
+
     // ==================== 消息相关 ====================
 
     public IMResult<SendMessageResult> sendMessage(Conversation conv, MessagePayload payload) {
@@ -329,6 +378,52 @@ public class RobotServiceClient {
                 new com.google.gson.reflect.TypeToken<IMResult<Void>>(){}.getType());
     }
 
+    /**
+     * 设置压缩阈值，在connect之前调用
+     * @param threshold 超过该字节数的帧压缩传输，0表示不压缩
+     */
+    public void setCompressionThreshold(int threshold) {
+        connectionManager.getClient().setCompressionThreshold(threshold);
+    }
+
+    /**
+     * 设置是否使用protobuf帧格式，在connect之前调用
+     * @param protobuf true时请求网关切换为protobuf信封（默认JSON），网关不支持时仍使用JSON
+     */
+    public void setProtobuf(boolean protobuf) {
+        connectionManager.getClient().setProtobuf(protobuf);
+    }
+
+    /**
+     * 设置推送订阅，在connect之前调用，重连时自动重新声明
+     * @param subscription 网关只推送满足条件的消息，在网关过滤，不占用带宽；为null时推送所有消息
+     */
+    public void setSubscription(PushFilter subscription) {
+        connectionManager.getClient().setSubscription(subscription);
+    }
+
+    /**
+     * 连接后修改推送订阅，之后重连时声明修改后的订阅
+     * @param subscription 为null时取消订阅
+     * @return 网关是否已接受
+     */
+    public boolean subscribe(PushFilter subscription) {
+        ResponseMessage response = call("subscribe", Collections.singletonList(subscription));
+        if (!response.isSuccess()) {
+            LOG.error("Subscribe failed: {}", response.getMsg());
+            return false;
+        }
+        connectionManager.getClient().setSubscription(subscription);
+        return true;
+    }
+
+    /**
+     * 压缩统计：压缩率、平均耗时、节省的字节数
+     */
+    public Map<String, Object> getCompressionStats() {
+        return connectionManager.getClient().getCompressionStats();
+    }
+
     public void close() {
         connectionManager.stop();
     }
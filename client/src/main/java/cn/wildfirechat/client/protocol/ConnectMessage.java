@@ -9,6 +9,9 @@ public class ConnectMessage {
     private String secret;
     private Integer code;
     private String msg;
+    private Boolean compress;
+    private String format;
+    private PushFilter subscription;
 
     public ConnectMessage() {
     }
@@ -69,6 +72,39 @@ public class ConnectMessage {
         this.msg = msg;
     }
 
+    /**
+     * 是否压缩超过阈值的帧：请求时表示客户端支持，响应时表示网关已启用
+     */
+    public Boolean getCompress() {
+        return compress;
+    }
+
+    public void setCompress(Boolean compress) {
+        this.compress = compress;
+    }
+
+    /**
+     * 帧格式："json"（默认）或"protobuf"：请求时表示客户端希望使用的格式，响应时表示网关已切换的格式
+     */
+    public String getFormat() {
+        return format;
+    }
+
+    public void setFormat(String format) {
+        this.format = format;
+    }
+
+    /**
+     * 推送订阅条件（仅请求时使用），不设置时网关推送所有消息
+     */
+    public PushFilter getSubscription() {
+        return subscription;
+    }
+
+    public void setSubscription(PushFilter subscription) {
+        this.subscription = subscription;
+    }
+
     public boolean isSuccess() {
         return code != null && code == 0;
     }
@@ -1,17 +1,301 @@
 package cn.wildfirechat.app;
 
+import cn.wildfirechat.app.gateway.AsyncImClient;
+import cn.wildfirechat.app.gateway.AuthHandler;
+import cn.wildfirechat.app.gateway.FrameCompressor;
+import cn.wildfirechat.app.gateway.ImConcurrencyLimiter;
+import cn.wildfirechat.app.gateway.ImReadCache;
+import cn.wildfirechat.app.gateway.MessageDeduplicator;
+import cn.wildfirechat.app.gateway.OfflineMessageStore;
+import cn.wildfirechat.app.gateway.PushSubscriptions;
+import cn.wildfirechat.app.gateway.RobotBulkheads;
+import cn.wildfirechat.app.gateway.RobotProxy;
+import cn.wildfirechat.app.gateway.RobotServiceFactory;
+import cn.wildfirechat.app.gateway.SessionManager;
+import cn.wildfirechat.app.protocol.MessageRoute;
 import cn.wildfirechat.pojos.OutputMessageData;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.pool.PoolStats;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 
 @RestController
 public class Controller {
     @Autowired
     private Service mService;
 
+    @Autowired
+    private SessionManager sessionManager;
+
+    @Autowired
+    private OfflineMessageStore offlineMessageStore;
+
+    @Autowired
+    private AuthHandler authHandler;
+
+    @Autowired
+    private RobotServiceFactory robotServiceFactory;
+
+    @Autowired
+    private AsyncImClient asyncImClient;
+
+    @Autowired
+    private FrameCompressor frameCompressor;
+
+    @Autowired
+    private RobotProxy robotProxy;
+
+    @Autowired
+    private ImReadCache readCache;
+
+    @Autowired
+    private ImConcurrencyLimiter limiter;
+
+    @Autowired
+    private RobotBulkheads bulkheads;
+
+    @Autowired
+    private IngestRing webhookIngest;
+
+    @Autowired
+    private MessageDeduplicator deduplicator;
+
+    @Autowired
+    private PushSubscriptions subscriptions;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private Map<String, Executor> executors;
+
+    @Autowired
+    private Map<String, KeyedExecutor> keyedExecutors;
+
+    /**
+     * 透传模式：只解析路由字段，原始消息体直接转发，不做完整的反序列化和再序列化
+     */
+    @Value("${gateway.push.passthrough:false}")
+    private boolean passthrough;
+
     @PostMapping(value = "/robot/recvmsg", produces = "application/json;charset=UTF-8"   )
-    public Object recvMsg(@RequestBody OutputMessageData messageData) {
-        mService.onReceiveMessage(messageData);
+    public Object recvMsg(@RequestBody byte[] body) {
+        try {
+            if (passthrough) {
+                mService.onReceiveRawMessage(MessageRoute.parse(body), body);
+            } else {
+                mService.onReceiveMessage(objectMapper.readValue(body, OutputMessageData.class));
+            }
+        } catch (IOException | IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid message body", e);
+        } catch (RejectedExecutionException e) {
+            // 接收缓冲或推送线程池已满，让IM服务稍后重试
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Gateway busy", e);
+        }
         return "ok";
     }
+
+    /**
+     * 批量接收IM回调，请求体为OutputMessageData的JSON数组
+     * 所有消息一起进入接收缓冲，缓冲空间不足时整批返回503，由IM服务重试
+     */
+    @PostMapping(value = "/robot/recvmsgs", produces = "application/json;charset=UTF-8")
+    public Object recvMsgs(@RequestBody byte[] body) {
+        try {
+            if (passthrough) {
+                List<byte[]> bodies = MessageRoute.splitArray(body);
+                List<MessageRoute> routes = new ArrayList<>(bodies.size());
+                for (byte[] element : bodies) {
+                    routes.add(MessageRoute.parse(element));
+                }
+                mService.onReceiveRawMessages(routes, bodies);
+            } else {
+                mService.onReceiveMessages(Arrays.asList(objectMapper.readValue(body, OutputMessageData[].class)));
+            }
+        } catch (IOException | IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid message body", e);
+        } catch (RejectedExecutionException e) {
+            // 接收缓冲或推送线程池已满，让IM服务稍后重试
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Gateway busy", e);
+        }
+        return "ok";
+    }
+
+    /**
+     * 网关运行状态统计
+     * GET /robot/stats
+     */
+    @GetMapping(value = "/robot/stats", produces = "application/json;charset=UTF-8")
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new HashMap<>();
+
+        Map<String, Object> sessions = new HashMap<>();
+        sessions.put("total", sessionManager.getSessionCount());
+        sessions.put("robots", sessionManager.getRobotCount());
+        sessions.put("robotLookups", sessionManager.getRobotLookupCount());
+        sessions.put("robotLookupMisses", sessionManager.getRobotLookupMissCount());
+        sessions.put("idleClosed", sessionManager.getIdleClosedCount());
+        sessions.put("pingsSent", sessionManager.getPingSentCount());
+        sessions.put("multiSessionRobots", sessionManager.getMultiSessionRobotCount());
+        sessions.put("protobuf", sessionManager.getProtobufSessionCount());
+        stats.put("sessions", sessions);
+
+        Map<String, Object> auth = new HashMap<>();
+        auth.put("cachedRobots", authHandler.getCachedRobotCount());
+        auth.put("cacheHits", authHandler.getCacheHitCount());
+        auth.put("negativeHits", authHandler.getNegativeHitCount());
+        auth.put("collapsed", authHandler.getCollapsedCount());
+        auth.put("imCalls", authHandler.getImCallCount());
+        stats.put("auth", auth);
+
+        PoolStats poolStats = robotServiceFactory.getPoolStats();
+        Map<String, Object> http = new HashMap<>();
+        http.put("sharedPool", robotServiceFactory.isSharedPoolSupported());
+        http.put("sharedPoolAttached", robotServiceFactory.getAttachedCount());
+        http.put("sharedPoolAttachFailures", robotServiceFactory.getAttachFailureCount());
+        http.put("leased", poolStats.getLeased());
+        http.put("available", poolStats.getAvailable());
+        http.put("pending", poolStats.getPending());
+        http.put("max", poolStats.getMax());
+        http.put("leases", robotServiceFactory.getLeaseCount());
+        http.put("leaseTimeouts", robotServiceFactory.getLeaseTimeoutCount());
+        http.put("avgLeaseWaitMillis", robotServiceFactory.getAvgLeaseWaitMillis());
+        http.put("maxLeaseWaitMillis", robotServiceFactory.getMaxLeaseWaitMillis());
+        http.put("connects", robotServiceFactory.getConnectCount());
+        http.put("reuseRatio", robotServiceFactory.getReuseRatio());
+        http.put("asyncInflight", asyncImClient.getInflightCount());
+        http.put("asyncCompleted", asyncImClient.getCompletedCount());
+        http.put("asyncFailed", asyncImClient.getFailedCount());
+        stats.put("http", http);
+
+        Map<String, Object> batch = new HashMap<>();
+        batch.put("batches", robotProxy.getBatchCount());
+        batch.put("items", robotProxy.getBatchItemCount());
+        stats.put("batch", batch);
+
+        Map<String, Object> cache = new HashMap<>();
+        cache.put("size", readCache.getSize());
+        cache.put("hits", readCache.getHitCount());
+        cache.put("misses", readCache.getMissCount());
+        cache.put("collapsed", readCache.getCollapsedCount());
+        cache.put("hitRate", readCache.getHitRate());
+        cache.put("invalidations", readCache.getInvalidationCount());
+        cache.put("evictions", readCache.getEvictionCount());
+        stats.put("readCache", cache);
+
+        Map<String, Object> limit = new HashMap<>();
+        limit.put("limit", limiter.getLimit());
+        limit.put("inflight", limiter.getInflight());
+        limit.put("rejected", limiter.getRejectedCount());
+        limit.put("decreases", limiter.getDecreaseCount());
+        stats.put("imLimiter", limit);
+        stats.put("bulkheads", bulkheads.getStatsByRobot());
+
+        Map<String, Object> outbound = new HashMap<>();
+        outbound.put("bufferedBytes", sessionManager.getOutboundBufferedBytes());
+        outbound.put("robots", sessionManager.getOutboundStatsByRobot());
+        stats.put("outbound", outbound);
+
+        Map<String, Object> compression = new HashMap<>();
+        compression.put("enabled", frameCompressor.isEnabled());
+        compression.put("compressedFrames", frameCompressor.getCompressedFrames());
+        compression.put("skippedFrames", frameCompressor.getSkippedFrames());
+        compression.put("ratio", frameCompressor.getCompressionRatio());
+        compression.put("savedBytes", frameCompressor.getSavedBytes());
+        compression.put("avgCompressMicros", frameCompressor.getAvgCompressMicros());
+        compression.put("inflatedFrames", frameCompressor.getInflatedFrames());
+        compression.put("inflateRatio", frameCompressor.getInflateRatio());
+        compression.put("avgInflateMicros", frameCompressor.getAvgInflateMicros());
+        stats.put("compression", compression);
+
+        Map<String, Object> pools = new HashMap<>();
+        for (Map.Entry<String, Executor> entry : executors.entrySet()) {
+            Map<String, Object> pool = new HashMap<>();
+            if (entry.getValue() instanceof ThreadPoolTaskExecutor) {
+                ThreadPoolExecutor executor = ((ThreadPoolTaskExecutor) entry.getValue()).getThreadPoolExecutor();
+                pool.put("poolSize", executor.getPoolSize());
+                pool.put("activeThreads", executor.getActiveCount());
+                pool.put("queueDepth", executor.getQueue().size());
+                pool.put("queueRemaining", executor.getQueue().remainingCapacity());
+                pool.put("completed", executor.getCompletedTaskCount());
+                if (executor.getRejectedExecutionHandler() instanceof RejectionCounter) {
+                    pool.put("rejected", ((RejectionCounter) executor.getRejectedExecutionHandler()).getRejectedCount());
+                }
+            } else if (entry.getValue() instanceof VirtualThreadTaskExecutor) {
+                VirtualThreadTaskExecutor executor = (VirtualThreadTaskExecutor) entry.getValue();
+                pool.put("virtualThreads", true);
+                pool.put("activeThreads", executor.getActiveCount());
+                pool.put("maxConcurrency", executor.getMaxConcurrency());
+                pool.put("completed", executor.getCompletedCount());
+                pool.put("rejected", executor.getRejectedCount());
+            } else {
+                continue;
+            }
+            pools.put(entry.getKey(), pool);
+        }
+        stats.put("executors", pools);
+
+        Map<String, Object> ordered = new HashMap<>();
+        for (Map.Entry<String, KeyedExecutor> entry : keyedExecutors.entrySet()) {
+            KeyedExecutor executor = entry.getValue();
+            Map<String, Object> keyed = new HashMap<>();
+            keyed.put("activeKeys", executor.getActiveKeys());
+            keyed.put("queuedTasks", executor.getQueuedTasks());
+            keyed.put("rejected", executor.getRejectedCount());
+            keyed.put("deepestKeys", executor.getDeepestKeys(10));
+            ordered.put(entry.getKey(), keyed);
+        }
+        stats.put("keyedExecutors", ordered);
+
+        Map<String, Object> ingest = new HashMap<>();
+        ingest.put("capacity", webhookIngest.getCapacity());
+        ingest.put("size", webhookIngest.getSize());
+        ingest.put("accepted", webhookIngest.getAcceptedCount());
+        ingest.put("shed", webhookIngest.getShedCount());
+        ingest.put("avgEnqueueMicros", webhookIngest.getAvgEnqueueMicros());
+        ingest.put("avgWaitMicros", webhookIngest.getAvgWaitMicros());
+        stats.put("ingest", ingest);
+
+        Map<String, Object> dedup = new HashMap<>();
+        dedup.put("robots", deduplicator.getRobotCount());
+        dedup.put("entries", deduplicator.getEntryCount());
+        dedup.put("memoryBytes", deduplicator.getMemoryBytes());
+        dedup.put("checked", deduplicator.getCheckedCount());
+        dedup.put("duplicates", deduplicator.getDuplicateCount());
+        stats.put("dedup", dedup);
+
+        Map<String, Object> subscription = new HashMap<>();
+        subscription.put("robots", subscriptions.getSubscribedRobotCount());
+        subscription.put("filteredFrames", subscriptions.getFilteredFrames());
+        subscription.put("filteredBytes", subscriptions.getFilteredBytes());
+        stats.put("subscriptions", subscription);
+
+        if (offlineMessageStore.isEnabled()) {
+            Map<String, Object> offline = new HashMap<>();
+            offline.put("queueDepth", offlineMessageStore.getQueueDepth());
+            offline.put("mappedBytes", offlineMessageStore.getMappedBytes());
+            offline.put("stored", offlineMessageStore.getStoredCount());
+            offline.put("dropped", offlineMessageStore.getDroppedCount());
+            offline.put("expired", offlineMessageStore.getExpiredCount());
+            offline.put("replayed", offlineMessageStore.getReplayedCount());
+            offline.put("replayThroughput", offlineMessageStore.getReplayThroughput());
+            stats.put("offline", offline);
+        }
+
+        return stats;
+    }
 }
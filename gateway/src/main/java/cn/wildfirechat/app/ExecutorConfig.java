@@ -1,21 +1,112 @@
 package cn.wildfirechat.app;
 
+import cn.wildfirechat.app.config.IngestConfig;
+import cn.wildfirechat.app.config.OutboundConfig;
+import cn.wildfirechat.app.config.ThreadPoolConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
-import java.util.concurrent.Executor;
-
 @Configuration
-@EnableAsync(proxyTargetClass = true)
 public class ExecutorConfig {
+    private static final Logger LOG = LoggerFactory.getLogger(ExecutorConfig.class);
+
+    /**
+     * IM回调消息推送线程池
+     */
+    @Bean
+    public TaskExecutor webhookExecutor(ThreadPoolConfig threadPoolConfig) {
+        return newBlockingExecutor("webhook", threadPoolConfig.getWebhook(), threadPoolConfig.isVirtualThreads());
+    }
+
+    /**
+     * 客户端RPC请求线程池
+     */
+    @Bean
+    public TaskExecutor requestExecutor(ThreadPoolConfig threadPoolConfig) {
+        return newBlockingExecutor("request", threadPoolConfig.getRequest(), threadPoolConfig.isVirtualThreads());
+    }
+
+    /**
+     * 客户端鉴权线程池
+     */
+    @Bean
+    public TaskExecutor authExecutor(ThreadPoolConfig threadPoolConfig) {
+        return newBlockingExecutor("auth", threadPoolConfig.getAuth(), threadPoolConfig.isVirtualThreads());
+    }
+
+    /**
+     * IM回调消息按（机器人, 会话）顺序推送
+     */
+    @Bean
+    public KeyedExecutor webhookKeyedExecutor(@Qualifier("webhookExecutor") TaskExecutor webhookExecutor,
+                                              ThreadPoolConfig threadPoolConfig) {
+        return new KeyedExecutor("webhook", webhookExecutor, threadPoolConfig.getMaxQueuePerKey());
+    }
 
+    /**
+     * IM回调消息的接收缓冲，分发到webhookKeyedExecutor
+     */
     @Bean
-    public Executor asyncExecutor() {
+    public IngestRing webhookIngest(@Qualifier("webhookKeyedExecutor") KeyedExecutor webhookKeyedExecutor,
+                                    IngestConfig ingestConfig) {
+        return new IngestRing("webhook", webhookKeyedExecutor, ingestConfig.getCapacity());
+    }
+
+    /**
+     * 客户端RPC请求按（会话, 目标会话）顺序执行
+     */
+    @Bean
+    public KeyedExecutor requestKeyedExecutor(@Qualifier("requestExecutor") TaskExecutor requestExecutor,
+                                              ThreadPoolConfig threadPoolConfig) {
+        return new KeyedExecutor("request", requestExecutor, threadPoolConfig.getMaxQueuePerKey());
+    }
+
+    /**
+     * BotFather消息处理线程池
+     */
+    @Bean
+    public ThreadPoolTaskExecutor botFatherExecutor(ThreadPoolConfig threadPoolConfig) {
+        return newExecutor("botfather", threadPoolConfig.getBotfather());
+    }
+
+    /**
+     * 会话发送线程池
+     * 每个会话同一时刻最多排队一个写任务，队列容量即同时等待写出的会话数上限
+     */
+    @Bean
+    public ThreadPoolTaskExecutor outboundExecutor(OutboundConfig outboundConfig) {
+        return newExecutor("outbound", new ThreadPoolConfig.Pool(outboundConfig.getWriterThreads(),
+                outboundConfig.getWriterThreads(), outboundConfig.getWriterQueueCapacity()));
+    }
+
+    /**
+     * 执行阻塞IM调用的线程池，开启虚拟线程且JVM支持时使用虚拟线程，
+     * 同时执行的任务数上限与线程池模式的容量（maxSize + queueCapacity）一致
+     */
+    private static TaskExecutor newBlockingExecutor(String name, ThreadPoolConfig.Pool pool, boolean virtualThreads) {
+        if (virtualThreads) {
+            if (VirtualThreadTaskExecutor.isSupported()) {
+                int maxConcurrency = (int) Math.min(Integer.MAX_VALUE, (long) pool.getMaxSize() + pool.getQueueCapacity());
+                LOG.info("Executor {} uses virtual threads, max concurrency {}", name, maxConcurrency);
+                return VirtualThreadTaskExecutor.create(name, maxConcurrency);
+            }
+            LOG.warn("Virtual threads require JDK 21+, executor {} falls back to thread pool", name);
+        }
+        return newExecutor(name, pool);
+    }
+
+    private static ThreadPoolTaskExecutor newExecutor(String name, ThreadPoolConfig.Pool pool) {
         ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(10);
-        executor.setMaxPoolSize(10);
+        executor.setCorePoolSize(pool.getCoreSize());
+        executor.setMaxPoolSize(Math.max(pool.getCoreSize(), pool.getMaxSize()));
+        executor.setQueueCapacity(pool.getQueueCapacity());
+        executor.setThreadNamePrefix(name + "-");
+        executor.setRejectedExecutionHandler(new RejectionCounter(name));
         executor.initialize();
         return executor;
     }
@@ -0,0 +1,264 @@
+package cn.wildfirechat.app;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 固定容量的接收缓冲
+ * 多个接收线程无锁写入环形数组，单个分发线程按顺序取出并提交到按key顺序执行的执行器。
+ * 执行器拒绝或排队的任务已达到缓冲容量时分发线程等待，积压回到缓冲中，缓冲写满后拒绝新任务，
+ * 接收到但尚未执行的任务总数不超过缓冲容量的两倍
+ */
+public class IngestRing {
+    private static final Logger LOG = LoggerFactory.getLogger(IngestRing.class);
+
+    /**
+     * 下游繁忙时分发线程的等待时间
+     */
+    private static final long BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final String name;
+    private final KeyedExecutor downstream;
+    private final int capacity;
+    private final int mask;
+
+    /**
+     * 每个槽位的序号：等于写入位置时可写，等于写入位置+1时可读
+     */
+    private final AtomicLongArray sequences;
+    private final AtomicReferenceArray<Entry> slots;
+
+    /**
+     * 下一个写入位置
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * 下一个读取位置，只由分发线程修改
+     */
+    private volatile long head;
+
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+    private volatile boolean sleeping;
+
+    private final AtomicLong acceptedCount = new AtomicLong();
+    private final AtomicLong shedCount = new AtomicLong();
+    private final AtomicLong enqueueNanos = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong polledCount = new AtomicLong();
+
+    public IngestRing(String name, KeyedExecutor downstream, int capacity) {
+        this.name = name;
+        this.downstream = downstream;
+        this.capacity = roundCapacity(capacity);
+        this.mask = this.capacity - 1;
+        this.sequences = new AtomicLongArray(this.capacity);
+        this.slots = new AtomicReferenceArray<>(this.capacity);
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+        }
+        dispatcher = new Thread(this::dispatchLoop, name + "-ingest");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * 容量向上取整为2的幂，最小为2：槽位序号用位置+1表示可读，只有一个槽位时无法区分可读和下一轮可写
+     */
+    static int roundCapacity(int capacity) {
+        return capacity <= 2 ? 2 : Integer.highestOneBit(capacity - 1) << 1;
+    }
+
+    /**
+     * 写入缓冲
+     * @param key 顺序key，含义与 {@link KeyedExecutor#execute(Object, Runnable)} 相同
+     * @throws RejectedExecutionException 缓冲已满
+     */
+    public void execute(Object key, Runnable task) {
+        long start = System.nanoTime();
+        Entry entry = new Entry(key, task, start);
+        long pos = tail.get();
+        while (true) {
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    slots.set(index, entry);
+                    sequences.set(index, pos + 1);
+                    break;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                // 上一轮写入的任务还未取出
+                shedCount.incrementAndGet();
+                throw new RejectedExecutionException("Ingest " + name + " is full");
+            } else {
+                pos = tail.get();
+            }
+        }
+        acceptedCount.incrementAndGet();
+        enqueueNanos.addAndGet(System.nanoTime() - start);
+        if (sleeping) {
+            LockSupport.unpark(dispatcher);
+        }
+    }
+
+    /**
+     * 一组任务连续写入缓冲，全部写入或全部拒绝
+     * 分发线程按位置顺序释放槽位，最后一个位置可写时之前的位置都已可写，一次CAS即可占用全部位置
+     * @param keys 每个任务的顺序key
+     * @throws RejectedExecutionException 缓冲剩余空间不足
+     */
+    public void executeAll(List<?> keys, List<Runnable> tasks) {
+        int count = tasks.size();
+        if (count == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        long pos = tail.get();
+        while (true) {
+            long last = pos + count - 1;
+            long diff = count > capacity ? -1 : sequences.get((int) (last & mask)) - last;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + count)) {
+                    break;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                shedCount.addAndGet(count);
+                throw new RejectedExecutionException("Ingest " + name + " has no room for " + count + " tasks");
+            } else {
+                pos = tail.get();
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            int index = (int) ((pos + i) & mask);
+            slots.set(index, new Entry(keys.get(i), tasks.get(i), start));
+            sequences.set(index, pos + i + 1);
+        }
+        acceptedCount.addAndGet(count);
+        enqueueNanos.addAndGet((System.nanoTime() - start) * count);
+        if (sleeping) {
+            LockSupport.unpark(dispatcher);
+        }
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            Entry entry = poll();
+            if (entry == null) {
+                sleeping = true;
+                // 设置标记后再检查一次，避免错过标记前写入的任务
+                if (isEmpty()) {
+                    LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+                }
+                sleeping = false;
+                continue;
+            }
+            waitNanos.addAndGet(System.nanoTime() - entry.enqueuedAt);
+            polledCount.incrementAndGet();
+            dispatch(entry);
+        }
+    }
+
+    private Entry poll() {
+        long pos = head;
+        int index = (int) (pos & mask);
+        if (sequences.get(index) != pos + 1) {
+            return null;
+        }
+        Entry entry = slots.get(index);
+        slots.set(index, null);
+        sequences.set(index, pos + capacity);
+        head = pos + 1;
+        return entry;
+    }
+
+    /**
+     * 提交到执行器，执行器繁忙时等待后重试，不丢弃已接收的任务
+     */
+    private void dispatch(Entry entry) {
+        while (running) {
+            if (downstream.getQueuedTasks() < capacity) {
+                try {
+                    downstream.execute(entry.key, entry.task);
+                    return;
+                } catch (RejectedExecutionException e) {
+                    LOG.debug("Ingest {} downstream busy: {}", name, e.getMessage());
+                } catch (RuntimeException e) {
+                    LOG.error("Ingest {} failed to dispatch task: {}", name, e.getMessage(), e);
+                    return;
+                }
+            }
+            LockSupport.parkNanos(this, BACKOFF_NANOS);
+        }
+    }
+
+    private boolean isEmpty() {
+        return tail.get() == head;
+    }
+
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(dispatcher);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 缓冲中等待分发的任务数
+     */
+    public int getSize() {
+        return (int) Math.max(0, tail.get() - head);
+    }
+
+    public long getAcceptedCount() {
+        return acceptedCount.get();
+    }
+
+    /**
+     * 缓冲已满被拒绝的任务数
+     */
+    public long getShedCount() {
+        return shedCount.get();
+    }
+
+    /**
+     * 平均写入耗时（微秒）
+     */
+    public double getAvgEnqueueMicros() {
+        long accepted = acceptedCount.get();
+        return accepted == 0 ? 0 : enqueueNanos.get() / 1000.0 / accepted;
+    }
+
+    /**
+     * 任务在缓冲中的平均等待时间（微秒）
+     */
+    public double getAvgWaitMicros() {
+        long polled = polledCount.get();
+        return polled == 0 ? 0 : waitNanos.get() / 1000.0 / polled;
+    }
+
+    private static class Entry {
+        private final Object key;
+        private final Runnable task;
+        private final long enqueuedAt;
+
+        Entry(Object key, Runnable task, long enqueuedAt) {
+            this.key = key;
+            this.task = task;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package cn.wildfirechat.app;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 按key顺序执行的执行器
+ * 相同key的任务按提交顺序依次执行，不同key的任务在底层线程池中并行执行
+ */
+public class KeyedExecutor {
+    private static final Logger LOG = LoggerFactory.getLogger(KeyedExecutor.class);
+
+    /**
+     * 单个key连续执行的任务数，超过后重新提交，避免热点key长期占用线程
+     */
+    private static final int BATCH_SIZE = 32;
+
+    /**
+     * 异步任务完成后线程池已满时，重新提交的间隔（毫秒）
+     */
+    private static final long RESUME_RETRY_MILLIS = 10;
+
+    /**
+     * 重新提交被拒绝的key，只负责提交，不执行任务
+     */
+    private static final ScheduledExecutorService RESUME_SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "keyed-executor-resume");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String name;
+    private final Executor delegate;
+    private final int maxQueuePerKey;
+
+    /**
+     * key: 顺序key
+     * value: 该key待执行的任务，队列为空时移除
+     */
+    private final Map<Object, KeyQueue> queues = new ConcurrentHashMap<>();
+
+    private final AtomicInteger queuedTasks = new AtomicInteger();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public KeyedExecutor(String name, Executor delegate, int maxQueuePerKey) {
+        this.name = name;
+        this.delegate = delegate;
+        this.maxQueuePerKey = maxQueuePerKey;
+    }
+
+    /**
+     * 提交任务
+     * @param key 顺序key，为null时直接交给底层线程池，不保证顺序
+     * @throws RejectedExecutionException 该key排队的任务超过上限或底层线程池拒绝
+     */
+    public void execute(Object key, Runnable task) {
+        if (key == null) {
+            delegate.execute(task);
+            return;
+        }
+
+        boolean[] schedule = new boolean[1];
+        boolean[] full = new boolean[1];
+        KeyQueue queue = queues.compute(key, (k, existing) -> {
+            KeyQueue q = existing != null ? existing : new KeyQueue(k);
+            if (q.tasks.size() >= maxQueuePerKey) {
+                full[0] = true;
+                return existing;
+            }
+            q.tasks.addLast(task);
+            if (!q.running) {
+                q.running = true;
+                schedule[0] = true;
+            }
+            return q;
+        });
+
+        if (full[0]) {
+            rejectedCount.incrementAndGet();
+            throw new RejectedExecutionException("Executor " + name + " queue of key " + key + " is full");
+        }
+        queuedTasks.incrementAndGet();
+
+        if (schedule[0]) {
+            try {
+                delegate.execute(() -> drain(queue));
+            } catch (RejectedExecutionException e) {
+                // 撤销本次提交；其他线程可能已在此期间追加了同一key的任务，这些任务保持排队，稍后重新提交
+                boolean[] remaining = new boolean[1];
+                queues.compute(key, (k, q) -> {
+                    q.tasks.removeLastOccurrence(task);
+                    if (q.tasks.isEmpty()) {
+                        q.running = false;
+                        return null;
+                    }
+                    remaining[0] = true;
+                    return q;
+                });
+                queuedTasks.decrementAndGet();
+                rejectedCount.incrementAndGet();
+                if (remaining[0]) {
+                    scheduleResume(queue);
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 提交异步任务
+     * 任务返回的future完成前，同一key的后续任务不会开始，但不占用线程
+     * @param key 顺序key，为null时直接交给底层线程池，不保证顺序
+     * @throws RejectedExecutionException 该key排队的任务超过上限或底层线程池拒绝
+     */
+    public void executeAsync(Object key, Supplier<? extends CompletableFuture<?>> task) {
+        execute(key, new AsyncTask(task));
+    }
+
+    private void drain(KeyQueue queue) {
+        while (true) {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                Runnable task = poll(queue);
+                if (task == null) {
+                    return;
+                }
+                try {
+                    if (task instanceof AsyncTask) {
+                        CompletableFuture<?> future = ((AsyncTask) task).start();
+                        if (future != null && !future.isDone()) {
+                            // 完成后继续执行该key的后续任务
+                            future.whenComplete((result, e) -> resume(queue));
+                            return;
+                        }
+                    } else {
+                        task.run();
+                    }
+                } catch (RuntimeException e) {
+                    LOG.error("Executor {} task of key {} failed: {}", name, queue.key, e.getMessage(), e);
+                }
+            }
+
+            // 让出线程给其他key，重新提交失败时继续在当前线程执行
+            try {
+                delegate.execute(() -> drain(queue));
+                return;
+            } catch (RejectedExecutionException e) {
+                // continue
+            }
+        }
+    }
+
+    /**
+     * 异步任务完成后重新调度
+     * 完成回调可能运行在IM客户端的IO线程上，不能在这里执行任务；线程池已满时该key保持执行中状态，
+     * 稍后再次提交，期间后续任务继续排队
+     */
+    private void resume(KeyQueue queue) {
+        try {
+            delegate.execute(() -> drain(queue));
+        } catch (RejectedExecutionException e) {
+            scheduleResume(queue);
+        }
+    }
+
+    private void scheduleResume(KeyQueue queue) {
+        try {
+            RESUME_SCHEDULER.schedule(() -> resume(queue), RESUME_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            LOG.error("Executor {} failed to resume key {}", name, queue.key);
+        }
+    }
+
+    /**
+     * 取出下一个任务，队列为空时结束该key的执行并移除
+     */
+    private Runnable poll(KeyQueue queue) {
+        Runnable[] next = new Runnable[1];
+        queues.compute(queue.key, (k, q) -> {
+            if (q == null) {
+                return null;
+            }
+            next[0] = q.tasks.pollFirst();
+            if (next[0] == null) {
+                q.running = false;
+                return null;
+            }
+            return q;
+        });
+        if (next[0] != null) {
+            queuedTasks.decrementAndGet();
+        }
+        return next[0];
+    }
+
+    /**
+     * 有待执行任务的key数量
+     */
+    public int getActiveKeys() {
+        return queues.size();
+    }
+
+    /**
+     * 所有key待执行的任务总数
+     */
+    public int getQueuedTasks() {
+        return queuedTasks.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * 排队最多的key及其队列深度
+     * @param limit 返回的最大数量
+     */
+    public Map<String, Integer> getDeepestKeys(int limit) {
+        List<KeyQueue> snapshot = new ArrayList<>(queues.values());
+        List<Map.Entry<String, Integer>> depths = new ArrayList<>(snapshot.size());
+        for (KeyQueue queue : snapshot) {
+            depths.add(new AbstractMap.SimpleEntry<>(String.valueOf(queue.key), queue.tasks.size()));
+        }
+        depths.sort((a, b) -> b.getValue() - a.getValue());
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (int i = 0; i < depths.size() && i < limit; i++) {
+            result.put(depths.get(i).getKey(), depths.get(i).getValue());
+        }
+        return result;
+    }
+
+    /**
+     * 异步任务，key为null时作为普通任务执行
+     */
+    private static class AsyncTask implements Runnable {
+        private final Supplier<? extends CompletableFuture<?>> task;
+
+        AsyncTask(Supplier<? extends CompletableFuture<?>> task) {
+            this.task = task;
+        }
+
+        CompletableFuture<?> start() {
+            return task.get();
+        }
+
+        @Override
+        public void run() {
+            task.get();
+        }
+    }
+
+    /**
+     * 单个key的任务队列，只在ConcurrentHashMap.compute中修改
+     */
+    private static class KeyQueue {
+        private final Object key;
+        private final Deque<Runnable> tasks = new ArrayDeque<>();
+        private boolean running;
+
+        KeyQueue(Object key) {
+            this.key = key;
+        }
+    }
+}
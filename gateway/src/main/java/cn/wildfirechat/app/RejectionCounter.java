@@ -0,0 +1,37 @@
+package cn.wildfirechat.app;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 线程池拒绝策略
+ * 统计拒绝次数后抛出RejectedExecutionException，由调用方决定如何响应
+ */
+public class RejectionCounter implements RejectedExecutionHandler {
+    private static final Logger LOG = LoggerFactory.getLogger(RejectionCounter.class);
+
+    private final String name;
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public RejectionCounter(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+        long count = rejectedCount.incrementAndGet();
+        if (count == 1 || count % 1000 == 0) {
+            LOG.warn("Executor {} saturated, {} tasks rejected so far", name, count);
+        }
+        throw new RejectedExecutionException("Executor " + name + " is saturated");
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+}
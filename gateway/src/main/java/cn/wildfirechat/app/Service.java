@@ -1,9 +1,32 @@
 package cn.wildfirechat.app;
 
 
+import cn.wildfirechat.app.protocol.MessageRoute;
 import cn.wildfirechat.pojos.OutputMessageData;
 import cn.wildfirechat.pojos.SendMessageData;
 
+import java.util.List;
+
 public interface Service {
     void onReceiveMessage(OutputMessageData messageData);
+
+    /**
+     * 透传模式：按路由字段转发，原始JSON直接推送给机器人客户端
+     * @param route 从请求体中解析出的路由信息
+     * @param body IM回调的原始请求体（UTF-8 JSON）
+     */
+    void onReceiveRawMessage(MessageRoute route, byte[] body);
+
+    /**
+     * 批量接收：同一会话的消息按数组顺序推送，推送给同一机器人的消息一起写出
+     * @param messages IM回调的消息数组
+     */
+    void onReceiveMessages(List<OutputMessageData> messages);
+
+    /**
+     * 透传模式的批量接收
+     * @param routes 每条消息的路由信息
+     * @param bodies 每条消息的原始JSON，与routes一一对应
+     */
+    void onReceiveRawMessages(List<MessageRoute> routes, List<byte[]> bodies);
 }
@@ -1,21 +1,36 @@
 package cn.wildfirechat.app;
 
 import cn.wildfirechat.app.config.BotFatherConfig;
+import cn.wildfirechat.app.config.IngestConfig;
+import cn.wildfirechat.app.gateway.MessageDeduplicator;
+import cn.wildfirechat.app.gateway.OfflineMessageStore;
+import cn.wildfirechat.app.gateway.PushSubscriptions;
+import cn.wildfirechat.app.gateway.RobotBulkheads;
+import cn.wildfirechat.app.gateway.RobotServiceFactory;
 import cn.wildfirechat.app.gateway.SessionManager;
+import cn.wildfirechat.app.protocol.MessageRoute;
 import cn.wildfirechat.app.protocol.PushMessage;
 import cn.wildfirechat.app.service.RobotCommandHandler;
 import cn.wildfirechat.common.ErrorCode;
 import cn.wildfirechat.pojos.*;
 import cn.wildfirechat.sdk.RobotService;
 import cn.wildfirechat.sdk.model.IMResult;
+import com.google.gson.Gson;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Qualifier;
 
 import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * 服务实现类
@@ -29,18 +44,46 @@ public class ServiceImpl implements Service {
     @Autowired
     private SessionManager sessionManager;
 
+    @Autowired
+    private OfflineMessageStore offlineMessageStore;
+
+    @Autowired
+    private RobotBulkheads bulkheads;
+
+    @Autowired
+    private MessageDeduplicator deduplicator;
+
+    @Autowired
+    private PushSubscriptions subscriptions;
+
     @Autowired
     private BotFatherConfig botFatherConfig;
 
     @Autowired
     private RobotCommandHandler robotCommandHandler;
 
-    @Value("${im.url}")
-    private String imUrl;
+    @Autowired
+    @Qualifier("botFatherExecutor")
+    private Executor botFatherExecutor;
+
+    @Autowired
+    @Qualifier("webhookKeyedExecutor")
+    private KeyedExecutor webhookKeyedExecutor;
+
+    @Autowired
+    private IngestRing webhookIngest;
+
+    @Autowired
+    private IngestConfig ingestConfig;
+
+    @Autowired
+    private RobotServiceFactory robotServiceFactory;
 
     // BotFather专用的RobotService实例
     private RobotService botFatherRobotService;
 
+    private final Gson gson = new Gson();
+
     @PostConstruct
     private void init() {
         // 初始化 BotFather 的 RobotService 实例
@@ -49,7 +92,7 @@ public class ServiceImpl implements Service {
                 String botFatherId = botFatherConfig.getRobotId();
                 String botFatherSecret = botFatherConfig.getRobot().getSecret();
                 if (botFatherId != null && !botFatherId.isEmpty()) {
-                    botFatherRobotService = new RobotService(imUrl, botFatherId, botFatherSecret);
+                    botFatherRobotService = robotServiceFactory.create(botFatherId, botFatherSecret);
                     LOG.info("BotFather RobotService initialized for robot: {}", botFatherId);
                 }
             } catch (Exception e) {
@@ -58,35 +101,255 @@ public class ServiceImpl implements Service {
         }
     }
 
+    /**
+     * 同一机器人同一会话的消息按到达顺序推送，不同会话并行
+     * @throws java.util.concurrent.RejectedExecutionException 接收缓冲或推送线程池已满
+     */
     @Override
-    @Async("asyncExecutor")
     public void onReceiveMessage(OutputMessageData messageData) {
+        String key = orderingKey(getTargetRobotId(messageData), MessageRoute.deliveryKey(messageData));
+        submit(key, () -> processMessage(messageData));
+    }
+
+    @Override
+    public void onReceiveRawMessage(MessageRoute route, byte[] body) {
+        String key = orderingKey(route.getTargetRobotId(), route.getDeliveryKey());
+        submit(key, () -> processRawMessage(route, body));
+    }
+
+    /**
+     * 按顺序key分组，每组一个任务，组内消息按数组顺序处理并一起推送；
+     * 所有分组一起写入接收缓冲，全部接收或全部拒绝，IM服务重试时不会重复推送已接收的部分
+     * @throws java.util.concurrent.RejectedExecutionException 接收缓冲或推送线程池已满
+     */
+    @Override
+    public void onReceiveMessages(List<OutputMessageData> messages) {
+        Map<String, List<OutputMessageData>> groups = new LinkedHashMap<>();
+        for (OutputMessageData messageData : messages) {
+            String key = orderingKey(getTargetRobotId(messageData), MessageRoute.deliveryKey(messageData));
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(messageData);
+        }
+        List<Runnable> tasks = new ArrayList<>(groups.size());
+        for (List<OutputMessageData> group : groups.values()) {
+            tasks.add(() -> processMessages(group));
+        }
+        submitAll(new ArrayList<>(groups.keySet()), tasks);
+    }
+
+    @Override
+    public void onReceiveRawMessages(List<MessageRoute> routes, List<byte[]> bodies) {
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < routes.size(); i++) {
+            MessageRoute route = routes.get(i);
+            String key = orderingKey(route.getTargetRobotId(), route.getDeliveryKey());
+            groups.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+        }
+        List<Runnable> tasks = new ArrayList<>(groups.size());
+        for (List<Integer> group : groups.values()) {
+            tasks.add(() -> processRawMessages(group, routes, bodies));
+        }
+        submitAll(new ArrayList<>(groups.keySet()), tasks);
+    }
+
+    /**
+     * 放入接收缓冲，由分发线程交给推送线程池；未启用缓冲时直接提交
+     */
+    private void submit(String key, Runnable task) {
+        if (ingestConfig.isEnabled()) {
+            webhookIngest.execute(key, task);
+        } else {
+            webhookKeyedExecutor.execute(key, task);
+        }
+    }
+
+    /**
+     * 未启用缓冲时逐个提交，线程池拒绝时已提交的任务仍会执行
+     */
+    private void submitAll(List<String> keys, List<Runnable> tasks) {
+        if (ingestConfig.isEnabled()) {
+            webhookIngest.executeAll(keys, tasks);
+        } else {
+            for (int i = 0; i < tasks.size(); i++) {
+                webhookKeyedExecutor.execute(keys.get(i), tasks.get(i));
+            }
+        }
+    }
+
+    /**
+     * 消息顺序key：机器人ID + 聊天对象（见 {@link MessageRoute#deliveryKey(int, String, String)}）
+     * 单聊的会话目标是机器人自己，按发送者区分，不同用户的单聊互不阻塞
+     */
+    private static String orderingKey(String robotId, String deliveryKey) {
+        if (robotId == null) {
+            return null;
+        }
+        return robotId + '|' + deliveryKey;
+    }
+
+    private void processMessage(OutputMessageData messageData) {
+        String targetRobotId = getTargetRobotId(messageData);
+        byte[] frame = prepareMessage(targetRobotId, messageData);
+        if (frame != null) {
+            deliverToRobot(targetRobotId, MessageRoute.deliveryKey(messageData), Collections.singletonList(frame));
+        }
+    }
+
+    /**
+     * 同一分组的消息属于同一机器人的同一聊天，按聊天对象推送
+     */
+    private void processMessages(List<OutputMessageData> group) {
+        String targetRobotId = getTargetRobotId(group.get(0));
+        List<byte[]> frames = new ArrayList<>(group.size());
+        for (OutputMessageData messageData : group) {
+            byte[] frame = prepareMessage(targetRobotId, messageData);
+            if (frame != null) {
+                frames.add(frame);
+            }
+        }
+        if (!frames.isEmpty()) {
+            deliverToRobot(targetRobotId, MessageRoute.deliveryKey(group.get(0)), frames);
+        }
+    }
+
+    /**
+     * @return 推送给机器人客户端的帧，无法确定目标机器人或由BotFather处理时返回null
+     */
+    private byte[] prepareMessage(String targetRobotId, OutputMessageData messageData) {
         LOG.info("Received message {} for conversation: {}",
                 messageData.getMessageId(),
                 messageData.getConv() != null ? messageData.getConv().getTarget() : "unknown");
 
-        // 获取目标机器人ID
-        String targetRobotId = getTargetRobotId(messageData);
-
         if (targetRobotId == null) {
             LOG.warn("Cannot determine target robot ID for message {}", messageData.getMessageId());
-            return;
+            return null;
+        }
+
+        // IM服务或负载均衡重试的消息只推送一次
+        if (deduplicator.isDuplicate(targetRobotId, messageData.getMessageId())) {
+            LOG.info("Message {} already delivered to robot {}, ignored", messageData.getMessageId(), targetRobotId);
+            return null;
         }
 
         // ========== BotFather 消息路由判断 ==========
         if (botFatherConfig.isEnabled() && isBotFatherMessage(targetRobotId)) {
             // 消息是发给 BotFather 的，走自动生成机器人业务
             LOG.info("Routing to BotFather service for robot: {}", targetRobotId);
-            handleBotFatherMessage(messageData);
-            return;
+            dispatchBotFatherMessage(messageData);
+            return null;
         }
         // ==========================================
 
+        // 不满足客户端订阅条件的消息不序列化
+        if (!subscriptions.accepts(targetRobotId, messageData)) {
+            LOG.debug("Message {} filtered by subscription of robot {}", messageData.getMessageId(), targetRobotId);
+            return null;
+        }
+
         // 原有的网关业务：转发给对应的机器人客户端
-        if (sessionManager.sendMessageToRobot(targetRobotId, PushMessage.message(messageData))) {
-            LOG.info("Message sent to robot {}", targetRobotId);
-        } else {
-            LOG.warn("Robot {} not connected, message not delivered", targetRobotId);
+        return gson.toJson(PushMessage.message(messageData)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void processRawMessage(MessageRoute route, byte[] body) {
+        byte[] frame = prepareRawMessage(route, body);
+        if (frame != null) {
+            deliverToRobot(route.getTargetRobotId(), route.getDeliveryKey(), Collections.singletonList(frame));
+        }
+    }
+
+    private void processRawMessages(List<Integer> group, List<MessageRoute> routes, List<byte[]> bodies) {
+        MessageRoute first = routes.get(group.get(0));
+        List<byte[]> frames = new ArrayList<>(group.size());
+        for (int index : group) {
+            byte[] frame = prepareRawMessage(routes.get(index), bodies.get(index));
+            if (frame != null) {
+                frames.add(frame);
+            }
+        }
+        if (!frames.isEmpty()) {
+            deliverToRobot(first.getTargetRobotId(), first.getDeliveryKey(), frames);
+        }
+    }
+
+    private byte[] prepareRawMessage(MessageRoute route, byte[] body) {
+        LOG.info("Received message {} for conversation: {}",
+                route.getMessageId(),
+                route.getConvTarget() != null ? route.getConvTarget() : "unknown");
+
+        String targetRobotId = route.getTargetRobotId();
+        if (targetRobotId == null) {
+            LOG.warn("Cannot determine target robot ID for message {}", route.getMessageId());
+            return null;
+        }
+
+        if (deduplicator.isDuplicate(targetRobotId, route.getMessageId())) {
+            LOG.info("Message {} already delivered to robot {}, ignored", route.getMessageId(), targetRobotId);
+            return null;
+        }
+
+        // BotFather 消息仍走类型化处理
+        if (botFatherConfig.isEnabled() && isBotFatherMessage(targetRobotId)) {
+            LOG.info("Routing to BotFather service for robot: {}", targetRobotId);
+            dispatchBotFatherMessage(gson.fromJson(new String(body, StandardCharsets.UTF_8), OutputMessageData.class));
+            return null;
+        }
+
+        if (!subscriptions.accepts(targetRobotId, route, body.length)) {
+            LOG.debug("Message {} filtered by subscription of robot {}", route.getMessageId(), targetRobotId);
+            return null;
+        }
+
+        return PushMessage.rawMessage(body);
+    }
+
+    /**
+     * 推送消息给机器人客户端，多条消息一起放入发送队列
+     * 机器人有离线积压时追加到队尾以保证顺序，未连接时写入离线队列
+     * @param deliveryKey 聊天对象，机器人有多个会话时按分发模式选择会话
+     */
+    private void deliverToRobot(String robotId, String deliveryKey, List<byte[]> frames) {
+        if (offlineMessageStore.hasBacklog(robotId)) {
+            queueOffline(robotId, frames, 0, "has pending offline messages");
+            return;
+        }
+
+        // 超出该机器人推送速率的消息转入离线队列，按补发速率发送；
+        // 离线队列未启用时不限速，否则消息会在回调已返回成功、messageId已记入去重后丢失
+        if (offlineMessageStore.isEnabled()) {
+            int bytes = 0;
+            for (byte[] frame : frames) {
+                bytes += frame.length;
+            }
+            if (!bulkheads.tryPush(robotId, bytes)) {
+                queueOffline(robotId, frames, 0, "exceeds push rate");
+                return;
+            }
+        }
+
+        int sent = sessionManager.sendRawMessagesToRobot(robotId, deliveryKey, frames);
+        if (sent > 0) {
+            LOG.info("{} message(s) sent to robot {}", sent, robotId);
+        }
+        if (sent < frames.size()) {
+            queueOffline(robotId, frames, sent, "not connected");
+        }
+    }
+
+    /**
+     * 从第from条开始写入离线队列，机器人已连接时启动补发
+     */
+    private void queueOffline(String robotId, List<byte[]> frames, int from, String reason) {
+        int stored = 0;
+        for (int i = from; i < frames.size(); i++) {
+            if (offlineMessageStore.offer(robotId, frames.get(i))) {
+                stored++;
+            }
+        }
+        if (stored > 0) {
+            LOG.info("Robot {} {}, {} message(s) queued", robotId, reason, stored);
+            offlineMessageStore.replay(robotId);
+        }
+        if (stored < frames.size() - from) {
+            LOG.warn("Robot {} {}, {} message(s) not delivered", robotId, reason, frames.size() - from - stored);
         }
     }
 
@@ -98,6 +361,17 @@ public class ServiceImpl implements Service {
         return botFatherId != null && botFatherId.equals(targetRobotId);
     }
 
+    /**
+     * 交给 BotFather 线程池处理，避免阻塞消息推送
+     */
+    private void dispatchBotFatherMessage(OutputMessageData messageData) {
+        try {
+            botFatherExecutor.execute(() -> handleBotFatherMessage(messageData));
+        } catch (RejectedExecutionException e) {
+            LOG.warn("BotFather is busy, message {} dropped", messageData.getMessageId());
+        }
+    }
+
     /**
      * 处理 BotFather 消息
      * 只支持单聊，群聊消息会被忽略
@@ -0,0 +1,110 @@
+package cn.wildfirechat.app;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 虚拟线程执行器（JDK 21+）
+ * 每个任务一个虚拟线程，阻塞的IM调用不再占用平台线程；用信号量限制同时执行的任务数，超出时拒绝。
+ * 通过反射创建，源码保持Java 8兼容
+ */
+public class VirtualThreadTaskExecutor implements TaskExecutor, DisposableBean {
+
+    private final String name;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int maxConcurrency;
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong completedCount = new AtomicLong();
+
+    private VirtualThreadTaskExecutor(String name, ExecutorService executor, int maxConcurrency) {
+        this.name = name;
+        this.executor = executor;
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    /**
+     * 当前JVM是否支持虚拟线程
+     */
+    public static boolean isSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 创建虚拟线程执行器
+     * @param name 线程名前缀
+     * @param maxConcurrency 最多同时执行的任务数
+     */
+    public static VirtualThreadTaskExecutor create(String name, int maxConcurrency) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + "-", 1L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            Method newExecutor = java.util.concurrent.Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            ExecutorService executor = (ExecutorService) newExecutor.invoke(null, factory);
+            return new VirtualThreadTaskExecutor(name, executor, Math.max(1, maxConcurrency));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads are not supported on this JVM", e);
+        }
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        if (!permits.tryAcquire()) {
+            rejectedCount.incrementAndGet();
+            throw new TaskRejectedException("Executor " + name + " is saturated");
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    completedCount.incrementAndGet();
+                    permits.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            permits.release();
+            rejectedCount.incrementAndGet();
+            throw new TaskRejectedException("Executor " + name + " rejected task", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    /**
+     * 正在执行的任务数
+     */
+    public int getActiveCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+}
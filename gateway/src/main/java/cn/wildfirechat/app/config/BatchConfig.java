@@ -0,0 +1,37 @@
+package cn.wildfirechat.app.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 批量请求配置
+ * 一个batch请求携带多个子请求，网关并行执行后在一个响应中返回每个子请求的结果
+ */
+@Component
+@ConfigurationProperties(prefix = "gateway.batch")
+public class BatchConfig {
+
+    // 单个batch请求最多包含的子请求数
+    private int maxSize = 1000;
+
+    // 单个batch请求同时执行的子请求数，针对同一会话的子请求始终按顺序执行
+    private int parallelism = 16;
+
+    // Getters and Setters
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+}
@@ -0,0 +1,147 @@
+package cn.wildfirechat.app.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 机器人隔离配置
+ * 每个机器人单独限制进行中的RPC请求数、RPC请求速率和推送字节速率，一个繁忙的机器人不影响其他机器人。
+ * 速率限制使用令牌桶，可以通过 gateway.bulkhead.robots.&lt;robotId&gt;.* 为单个机器人覆盖默认值
+ */
+@Component
+@ConfigurationProperties(prefix = "gateway.bulkhead")
+public class BulkheadConfig {
+
+    // 是否启用
+    private boolean enabled = true;
+
+    // 单个机器人进行中的RPC请求数上限，0表示不限制
+    private int maxInflight = 200;
+
+    // 单个机器人每秒RPC请求数（批量请求按子请求数计算），0表示不限制
+    private double rpcRate = 500;
+
+    // RPC令牌桶容量，允许的突发请求数
+    private int rpcBurst = 1000;
+
+    // 单个机器人每秒推送字节数，0表示不限制；超出的推送写入离线队列按补发速率发送，离线队列未启用时不限制
+    private long pushBytesRate = 4L * 1024 * 1024;
+
+    // 推送令牌桶容量（字节）
+    private long pushBytesBurst = 16L * 1024 * 1024;
+
+    // 按机器人覆盖的限制，未设置的项使用上面的默认值
+    private Map<String, Limits> robots = new HashMap<>();
+
+    /**
+     * 单个机器人的限制
+     */
+    public static class Limits {
+        private Integer maxInflight;
+        private Double rpcRate;
+        private Integer rpcBurst;
+        private Long pushBytesRate;
+        private Long pushBytesBurst;
+
+        public Integer getMaxInflight() {
+            return maxInflight;
+        }
+
+        public void setMaxInflight(Integer maxInflight) {
+            this.maxInflight = maxInflight;
+        }
+
+        public Double getRpcRate() {
+            return rpcRate;
+        }
+
+        public void setRpcRate(Double rpcRate) {
+            this.rpcRate = rpcRate;
+        }
+
+        public Integer getRpcBurst() {
+            return rpcBurst;
+        }
+
+        public void setRpcBurst(Integer rpcBurst) {
+            this.rpcBurst = rpcBurst;
+        }
+
+        public Long getPushBytesRate() {
+            return pushBytesRate;
+        }
+
+        public void setPushBytesRate(Long pushBytesRate) {
+            this.pushBytesRate = pushBytesRate;
+        }
+
+        public Long getPushBytesBurst() {
+            return pushBytesBurst;
+        }
+
+        public void setPushBytesBurst(Long pushBytesBurst) {
+            this.pushBytesBurst = pushBytesBurst;
+        }
+    }
+
+    // Getters and Setters
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxInflight() {
+        return maxInflight;
+    }
+
+    public void setMaxInflight(int maxInflight) {
+        this.maxInflight = maxInflight;
+    }
+
+    public double getRpcRate() {
+        return rpcRate;
+    }
+
+    public void setRpcRate(double rpcRate) {
+        this.rpcRate = rpcRate;
+    }
+
+    public int getRpcBurst() {
+        return rpcBurst;
+    }
+
+    public void setRpcBurst(int rpcBurst) {
+        this.rpcBurst = rpcBurst;
+    }
+
+    public long getPushBytesRate() {
+        return pushBytesRate;
+    }
+
+    public void setPushBytesRate(long pushBytesRate) {
+        this.pushBytesRate = pushBytesRate;
+    }
+
+    public long getPushBytesBurst() {
+        return pushBytesBurst;
+    }
+
+    public void setPushBytesBurst(long pushBytesBurst) {
+        this.pushBytesBurst = pushBytesBurst;
+    }
+
+    public Map<String, Limits> getRobots() {
+        return robots;
+    }
+
+    public void setRobots(Map<String, Limits> robots) {
+        this.robots = robots;
+    }
+}
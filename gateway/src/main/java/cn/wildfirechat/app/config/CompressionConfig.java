@@ -0,0 +1,61 @@
+package cn.wildfirechat.app.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.zip.Deflater;
+
+/**
+ * 帧压缩配置
+ * 客户端在鉴权消息中声明支持压缩后，超过阈值的帧以deflate压缩后的二进制帧发送
+ */
+@Component
+@ConfigurationProperties(prefix = "gateway.compression")
+public class CompressionConfig {
+
+    // 是否允许客户端协商压缩
+    private boolean enabled = true;
+
+    // 超过该字节数的帧才压缩
+    private int threshold = 1024;
+
+    // 压缩级别（1-9）
+    private int level = Deflater.DEFAULT_COMPRESSION;
+
+    // 解压后的最大字节数，防止压缩炸弹
+    private int maxInflatedBytes = 16 * 1024 * 1024;
+
+    // Getters and Setters
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public void setThreshold(int threshold) {
+        this.threshold = threshold;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public void setLevel(int level) {
+        this.level = level;
+    }
+
+    public int getMaxInflatedBytes() {
+        return maxInflatedBytes;
+    }
+
+    public void setMaxInflatedBytes(int maxInflatedBytes) {
+        this.maxInflatedBytes = maxInflatedBytes;
+    }
+}
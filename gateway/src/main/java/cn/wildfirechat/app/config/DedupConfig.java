@@ -0,0 +1,48 @@
+package cn.wildfirechat.app.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * IM回调消息去重配置
+ * 按机器人记录最近推送过的messageId，IM服务或负载均衡重试时不会重复推送给机器人
+ */
+@Component
+@ConfigurationProperties(prefix = "gateway.dedup")
+public class DedupConfig {
+
+    // 是否启用
+    private boolean enabled = true;
+
+    // 去重时间窗口（秒），实际保留窗口到两倍窗口之间的messageId
+    private int windowSeconds = 300;
+
+    // 单个机器人每个窗口最多记录的messageId数，超出时提前进入下一个窗口
+    private int maxEntriesPerRobot = 65536;
+
+    // Getters and Setters
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getWindowSeconds() {
+        return windowSeconds;
+    }
+
+    public void setWindowSeconds(int windowSeconds) {
+        this.windowSeconds = windowSeconds;
+    }
+
+    public int getMaxEntriesPerRobot() {
+        return maxEntriesPerRobot;
+    }
+
+    public void setMaxEntriesPerRobot(int maxEntriesPerRobot) {
+        this.maxEntriesPerRobot = maxEntriesPerRobot;
+    }
+}
@@ -0,0 +1,60 @@
+package cn.wildfirechat.app.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 推送分发配置
+ * 同一机器人可以有多个客户端会话同时在线，推送消息按分发模式选择会话
+ */
+@Component
+@ConfigurationProperties(prefix = "gateway.delivery")
+public class DeliveryConfig {
+
+    /**
+     * 分发模式
+     */
+    public enum Mode {
+        // 推送给所有会话
+        BROADCAST,
+        // 轮流推送给各会话，同一会话（聊天）的消息可能由不同客户端处理
+        ROUND_ROBIN,
+        // 按聊天对象哈希选择会话，同一聊天的消息始终由同一客户端处理，客户端增减时只迁移部分聊天
+        STICKY
+    }
+
+    // 默认分发模式
+    private Mode mode = Mode.STICKY;
+
+    // 按机器人覆盖的分发模式
+    private Map<String, Mode> robots = new HashMap<>();
+
+    /**
+     * 机器人使用的分发模式
+     */
+    public Mode modeOf(String robotId) {
+        Mode robotMode = robots.get(robotId);
+        return robotMode != null ? robotMode : mode;
+    }
+
+    // Getters and Setters
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public Map<String, Mode> getRobots() {
+        return robots;
+    }
+
+    public void setRobots(Map<String, Mode> robots) {
+        this.robots = robots;
+    }
+}
@@ -0,0 +1,114 @@
+package cn.wildfirechat.app.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * IM服务HTTP连接池配置
+ * 所有RobotService共用一个长连接池
+ */
+@Component
+@ConfigurationProperties(prefix = "gateway.http")
+public class ImHttpConfig {
+
+    // 连接池最大连接数
+    private int maxTotal = 400;
+
+    // 单个路由（IM服务地址）最大连接数
+    private int maxPerRoute = 200;
+
+    // 建立连接超时（毫秒）
+    private int connectTimeoutMs = 5000;
+
+    // 读取超时（毫秒）
+    private int socketTimeoutMs = 15000;
+
+    // 从连接池获取连接的超时（毫秒）
+    private int leaseTimeoutMs = 3000;
+
+    // 空闲连接保留时间（秒）
+    private int idleTimeoutSeconds = 60;
+
+    // 连接空闲超过该时间后复用前先检查（毫秒）
+    private int validateAfterInactivityMs = 1000;
+
+    // 已支持的RPC方法使用非阻塞HTTP客户端调用IM服务，其余方法仍使用RobotService
+    private boolean asyncEnabled = true;
+
+    // 非阻塞HTTP客户端的IO线程数
+    private int asyncIoThreads = 2;
+
+    // Getters and Setters
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public void setMaxTotal(int maxTotal) {
+        this.maxTotal = maxTotal;
+    }
+
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    public void setMaxPerRoute(int maxPerRoute) {
+        this.maxPerRoute = maxPerRoute;
+    }
+
+    public int getConnectTimeoutMs() {
+        return connectTimeoutMs;
+    }
+
+    public void setConnectTimeoutMs(int connectTimeoutMs) {
+        this.connectTimeoutMs = connectTimeoutMs;
+    }
+
+    public int getSocketTimeoutMs() {
+        return socketTimeoutMs;
+    }
+
+    public void setSocketTimeoutMs(int socketTimeoutMs) {
+        this.socketTimeoutMs = socketTimeoutMs;
+    }
+
+    public int getLeaseTimeoutMs() {
+        return leaseTimeoutMs;
+    }
+
+    public void setLeaseTimeoutMs(int leaseTimeoutMs) {
+        this.leaseTimeoutMs = leaseTimeoutMs;
+    }
+
+    public int getIdleTimeoutSeconds() {
+        return idleTimeoutSeconds;
+    }
+
+    public void setIdleTimeoutSeconds(int idleTimeoutSeconds) {
+        this.idleTimeoutSeconds = idleTimeoutSeconds;
+    }
+
+    public int getValidateAfterInactivityMs() {
+        return validateAfterInactivityMs;
+    }
+
+    public void setValidateAfterInactivityMs(int validateAfterInactivityMs) {
+        this.validateAfterInactivityMs = validateAfterInactivityMs;
+    }
+
+    public boolean isAsyncEnabled() {
+        return asyncEnabled;
+    }
+
+    public void setAsyncEnabled(boolean asyncEnabled) {
+        this.asyncEnabled = asyncEnabled;
+    }
+
+    public int getAsyncIoThreads() {
+        return asyncIoThreads;
+    }
+
+    public void setAsyncIoThreads(int asyncIoThreads) {
+        this.asyncIoThreads = asyncIoThreads;
+    }
+}
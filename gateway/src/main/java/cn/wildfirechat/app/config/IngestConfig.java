@@ -0,0 +1,38 @@
+package cn.wildfirechat.app.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * IM回调接收缓冲配置
+ * /robot/recvmsg 收到的消息先放入固定容量的环形缓冲，由分发线程交给推送线程池；
+ * 缓冲已满时返回503，由IM服务稍后重试
+ */
+@Component
+@ConfigurationProperties(prefix = "gateway.ingest")
+public class IngestConfig {
+
+    // 是否启用，关闭时直接提交到推送线程池
+    private boolean enabled = true;
+
+    // 缓冲容量，向上取整为2的幂
+    private int capacity = 8192;
+
+    // Getters and Setters
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+}
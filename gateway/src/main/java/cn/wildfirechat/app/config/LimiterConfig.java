@@ -0,0 +1,82 @@
+package cn.wildfirechat.app.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * IM调用并发限制配置
+ * 并发上限按IM服务的响应时间自适应调整（AIMD）：调用成功且未超过延迟阈值时缓慢增加，
+ * 超过阈值或调用异常时按比例减小
+ */
+@Component
+@ConfigurationProperties(prefix = "gateway.limiter")
+public class LimiterConfig {
+
+    // 是否启用，关闭时只统计并发数不拒绝请求
+    private boolean enabled = true;
+
+    // 初始并发上限
+    private int initialLimit = 200;
+
+    // 并发上限的最小值
+    private int minLimit = 20;
+
+    // 并发上限的最大值
+    private int maxLimit = 1000;
+
+    // 延迟阈值（毫秒），IM调用超过此时间视为过载
+    private long latencyThresholdMs = 1000;
+
+    // 过载时并发上限乘以此比例
+    private double backoffRatio = 0.9;
+
+    // Getters and Setters
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    public void setInitialLimit(int initialLimit) {
+        this.initialLimit = initialLimit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public void setMinLimit(int minLimit) {
+        this.minLimit = minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public void setMaxLimit(int maxLimit) {
+        this.maxLimit = maxLimit;
+    }
+
+    public long getLatencyThresholdMs() {
+        return latencyThresholdMs;
+    }
+
+    public void setLatencyThresholdMs(long latencyThresholdMs) {
+        this.latencyThresholdMs = latencyThresholdMs;
+    }
+
+    public double getBackoffRatio() {
+        return backoffRatio;
+    }
+
+    public void setBackoffRatio(double backoffRatio) {
+        this.backoffRatio = backoffRatio;
+    }
+}
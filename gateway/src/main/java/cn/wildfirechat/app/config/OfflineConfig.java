@@ -0,0 +1,114 @@
+package cn.wildfirechat.app.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 离线消息队列配置
+ * 机器人未连接时缓存推送消息，重连鉴权成功后按顺序补发
+ */
+@Component
+@ConfigurationProperties(prefix = "gateway.offline")
+public class OfflineConfig {
+
+    // 功能开关
+    private boolean enabled = false;
+
+    // 存储目录，每个机器人一个子目录
+    private String dir = "offline";
+
+    // 单个段文件大小（字节）
+    private int segmentSize = 4 * 1024 * 1024;
+
+    // 单个机器人最多占用的字节数，超出后丢弃最旧的段
+    private long maxBytesPerRobot = 64L * 1024 * 1024;
+
+    // 所有机器人最多占用的字节数，超出后写入的机器人丢弃自己最旧的段，没有可丢弃的段时拒绝写入
+    private long maxTotalBytes = 1024L * 1024 * 1024;
+
+    // 消息保留时间（秒），过期的消息不再补发
+    private long ttlSeconds = 24 * 3600;
+
+    // 清理过期消息并将写入落盘的间隔（秒）
+    private long sweepIntervalSeconds = 60;
+
+    // 补发速率（条/秒）
+    private int replayRate = 200;
+
+    // 补发线程数
+    private int replayThreads = 2;
+
+    // Getters and Setters
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getDir() {
+        return dir;
+    }
+
+    public void setDir(String dir) {
+        this.dir = dir;
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public long getMaxBytesPerRobot() {
+        return maxBytesPerRobot;
+    }
+
+    public void setMaxBytesPerRobot(long maxBytesPerRobot) {
+        this.maxBytesPerRobot = maxBytesPerRobot;
+    }
+
+    public long getMaxTotalBytes() {
+        return maxTotalBytes;
+    }
+
+    public void setMaxTotalBytes(long maxTotalBytes) {
+        this.maxTotalBytes = maxTotalBytes;
+    }
+
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    public void setTtlSeconds(long ttlSeconds) {
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    public long getSweepIntervalSeconds() {
+        return sweepIntervalSeconds;
+    }
+
+    public void setSweepIntervalSeconds(long sweepIntervalSeconds) {
+        this.sweepIntervalSeconds = sweepIntervalSeconds;
+    }
+
+    public int getReplayRate() {
+        return replayRate;
+    }
+
+    public void setReplayRate(int replayRate) {
+        this.replayRate = replayRate;
+    }
+
+    public int getReplayThreads() {
+        return replayThreads;
+    }
+
+    public void setReplayThreads(int replayThreads) {
+        this.replayThreads = replayThreads;
+    }
+}
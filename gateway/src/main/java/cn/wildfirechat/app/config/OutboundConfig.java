@@ -0,0 +1,83 @@
+package cn.wildfirechat.app.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 会话发送队列配置
+ * 每个WebSocket会话一个发送队列，由单个写线程按顺序发送
+ */
+@Component
+@ConfigurationProperties(prefix = "gateway.outbound")
+public class OutboundConfig {
+
+    /**
+     * 队列溢出时的处理策略
+     * 丢弃只针对推送消息，RPC响应等不可丢弃的消息放不下时断开连接
+     */
+    public enum OverflowPolicy {
+        // 丢弃最旧的消息
+        DROP_OLDEST,
+        // 丢弃新消息
+        DROP_NEW,
+        // 断开连接
+        DISCONNECT
+    }
+
+    // 单个会话最多缓存的消息数
+    private int maxBufferedMessages = 1000;
+
+    // 单个会话最多缓存的字节数
+    private long maxBufferedBytes = 8L * 1024 * 1024;
+
+    // 溢出策略
+    private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+
+    // 写线程数
+    private int writerThreads = 8;
+
+    // 等待写线程的会话数上限，每个会话同一时刻最多排队一个写任务，超出时该次发送失败
+    private int writerQueueCapacity = 10000;
+
+    // Getters and Setters
+
+    public int getMaxBufferedMessages() {
+        return maxBufferedMessages;
+    }
+
+    public void setMaxBufferedMessages(int maxBufferedMessages) {
+        this.maxBufferedMessages = maxBufferedMessages;
+    }
+
+    public long getMaxBufferedBytes() {
+        return maxBufferedBytes;
+    }
+
+    public void setMaxBufferedBytes(long maxBufferedBytes) {
+        this.maxBufferedBytes = maxBufferedBytes;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public int getWriterThreads() {
+        return writerThreads;
+    }
+
+    public void setWriterThreads(int writerThreads) {
+        this.writerThreads = writerThreads;
+    }
+
+    public int getWriterQueueCapacity() {
+        return writerQueueCapacity;
+    }
+
+    public void setWriterQueueCapacity(int writerQueueCapacity) {
+        this.writerQueueCapacity = writerQueueCapacity;
+    }
+}
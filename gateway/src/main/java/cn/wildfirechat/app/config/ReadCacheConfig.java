@@ -0,0 +1,49 @@
+package cn.wildfirechat.app.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 查询结果缓存配置
+ * getUserInfo、getGroupInfo、getGroupMembers、getGroupMember的成功结果在网关缓存，
+ * 经网关的群组修改操作会使对应群组的缓存失效
+ */
+@Component
+@ConfigurationProperties(prefix = "gateway.cache")
+public class ReadCacheConfig {
+
+    // 是否启用
+    private boolean enabled = true;
+
+    // 缓存有效期（秒）
+    private int ttlSeconds = 60;
+
+    // 最多缓存的结果数，超出时先清理过期结果，仍超出则随机淘汰
+    private int maxEntries = 10000;
+
+    // Getters and Setters
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    public void setTtlSeconds(int ttlSeconds) {
+        this.ttlSeconds = ttlSeconds;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+}
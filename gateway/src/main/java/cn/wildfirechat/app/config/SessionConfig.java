@@ -0,0 +1,59 @@
+package cn.wildfirechat.app.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 会话存活检测配置
+ * 任何入站帧（请求、心跳、pong）都视为活跃，超过空闲时间的会话被关闭
+ */
+@Component
+@ConfigurationProperties(prefix = "gateway.session")
+public class SessionConfig {
+
+    // 空闲超时（秒），超过该时间没有收到任何帧则关闭会话
+    private int idleTimeoutSeconds = 600;
+
+    // 连接后必须完成鉴权的时间（秒）
+    private int authTimeoutSeconds = 30;
+
+    // 会话空闲超过该时间（秒）后发送WebSocket ping，客户端自动回复pong即视为活跃；0表示不发送
+    private int pingIntervalSeconds = 60;
+
+    // 时间轮刻度（毫秒）
+    private int reaperTickMillis = 1000;
+
+    // Getters and Setters
+
+    public int getIdleTimeoutSeconds() {
+        return idleTimeoutSeconds;
+    }
+
+    public void setIdleTimeoutSeconds(int idleTimeoutSeconds) {
+        this.idleTimeoutSeconds = idleTimeoutSeconds;
+    }
+
+    public int getAuthTimeoutSeconds() {
+        return authTimeoutSeconds;
+    }
+
+    public void setAuthTimeoutSeconds(int authTimeoutSeconds) {
+        this.authTimeoutSeconds = authTimeoutSeconds;
+    }
+
+    public int getPingIntervalSeconds() {
+        return pingIntervalSeconds;
+    }
+
+    public void setPingIntervalSeconds(int pingIntervalSeconds) {
+        this.pingIntervalSeconds = pingIntervalSeconds;
+    }
+
+    public int getReaperTickMillis() {
+        return reaperTickMillis;
+    }
+
+    public void setReaperTickMillis(int reaperTickMillis) {
+        this.reaperTickMillis = reaperTickMillis;
+    }
+}
@@ -0,0 +1,123 @@
+package cn.wildfirechat.app.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 线程池配置
+ * 不同用途使用独立的有界线程池，队列满时拒绝新任务，避免互相影响
+ */
+@Component
+@ConfigurationProperties(prefix = "gateway.executor")
+public class ThreadPoolConfig {
+
+    // 使用虚拟线程执行推送、RPC请求和鉴权（需要JDK 21+，否则回退到线程池）
+    private boolean virtualThreads = false;
+
+    // 同一会话（机器人+会话）最多排队的任务数
+    private int maxQueuePerKey = 1000;
+
+    // IM回调消息推送
+    private Pool webhook = new Pool(10, 20, 10000);
+
+    // 客户端RPC请求
+    private Pool request = new Pool(20, 50, 5000);
+
+    // 客户端鉴权
+    private Pool auth = new Pool(4, 16, 2000);
+
+    // BotFather消息处理
+    private Pool botfather = new Pool(2, 4, 1000);
+
+    // Getters and Setters
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    public int getMaxQueuePerKey() {
+        return maxQueuePerKey;
+    }
+
+    public void setMaxQueuePerKey(int maxQueuePerKey) {
+        this.maxQueuePerKey = maxQueuePerKey;
+    }
+
+    public Pool getWebhook() {
+        return webhook;
+    }
+
+    public void setWebhook(Pool webhook) {
+        this.webhook = webhook;
+    }
+
+    public Pool getRequest() {
+        return request;
+    }
+
+    public void setRequest(Pool request) {
+        this.request = request;
+    }
+
+    public Pool getAuth() {
+        return auth;
+    }
+
+    public void setAuth(Pool auth) {
+        this.auth = auth;
+    }
+
+    public Pool getBotfather() {
+        return botfather;
+    }
+
+    public void setBotfather(Pool botfather) {
+        this.botfather = botfather;
+    }
+
+    /**
+     * 线程池参数内部类
+     */
+    public static class Pool {
+        private int coreSize;
+        private int maxSize;
+        private int queueCapacity;
+
+        public Pool() {
+        }
+
+        public Pool(int coreSize, int maxSize, int queueCapacity) {
+            this.coreSize = coreSize;
+            this.maxSize = maxSize;
+            this.queueCapacity = queueCapacity;
+        }
+
+        public int getCoreSize() {
+            return coreSize;
+        }
+
+        public void setCoreSize(int coreSize) {
+            this.coreSize = coreSize;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package cn.wildfirechat.app.gateway;
+
+import cn.wildfirechat.app.config.ImHttpConfig;
+import cn.wildfirechat.sdk.RobotService;
+import cn.wildfirechat.sdk.model.IMResult;
+import cn.wildfirechat.sdk.utilities.HttpUtils;
+import cn.wildfirechat.sdk.utilities.RobotHttpUtils;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 非阻塞IM服务客户端
+ * 按RobotHttpUtils的协议（签名头 + JSON POST）调用IM服务，等待响应时不占用线程，
+ * 响应解析复用SDK的HttpUtils.handleResponse
+ */
+@Component
+public class AsyncImClient {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncImClient.class);
+
+    @Autowired
+    private ImHttpConfig imHttpConfig;
+
+    @Autowired
+    private RobotServiceFactory robotServiceFactory;
+
+    private CloseableHttpAsyncClient httpClient;
+
+    private final AtomicInteger inflightCount = new AtomicInteger();
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        if (!imHttpConfig.isAsyncEnabled()) {
+            LOG.info("Async IM client disabled");
+            return;
+        }
+        try {
+            IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                    .setIoThreadCount(imHttpConfig.getAsyncIoThreads())
+                    .setConnectTimeout(imHttpConfig.getConnectTimeoutMs())
+                    .setSoTimeout(imHttpConfig.getSocketTimeoutMs())
+                    .build();
+            PoolingNHttpClientConnectionManager connectionManager =
+                    new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig));
+            connectionManager.setMaxTotal(imHttpConfig.getMaxTotal());
+            connectionManager.setDefaultMaxPerRoute(imHttpConfig.getMaxPerRoute());
+
+            RequestConfig requestConfig = RequestConfig.custom()
+                    .setConnectTimeout(imHttpConfig.getConnectTimeoutMs())
+                    .setSocketTimeout(imHttpConfig.getSocketTimeoutMs())
+                    .setConnectionRequestTimeout(imHttpConfig.getLeaseTimeoutMs())
+                    .build();
+            httpClient = HttpAsyncClients.custom()
+                    .setConnectionManager(connectionManager)
+                    .setDefaultRequestConfig(requestConfig)
+                    .build();
+            httpClient.start();
+            LOG.info("Async IM client started, {} io threads", imHttpConfig.getAsyncIoThreads());
+        } catch (IOReactorException e) {
+            LOG.error("Failed to start async IM client, falling back to RobotService: {}", e.getMessage());
+            httpClient = null;
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (httpClient != null) {
+            try {
+                httpClient.close();
+            } catch (IOException e) {
+                LOG.error("Failed to close async IM client: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 是否可以使用非阻塞调用
+     */
+    public boolean isAvailable(RobotService robotService) {
+        return httpClient != null && robotServiceFactory.httpUtilsOf(robotService) != null;
+    }
+
+    /**
+     * 以RobotService的机器人身份调用IM服务
+     * @param path 接口路径，与RobotService中对应方法一致
+     * @param body 请求体，null时发送空内容
+     * @param resultType 结果类型
+     */
+    public <T> CompletableFuture<IMResult<T>> post(RobotService robotService, String path, Object body, Class<T> resultType) {
+        CompletableFuture<IMResult<T>> future = new CompletableFuture<>();
+        RobotHttpUtils robot = robotServiceFactory.httpUtilsOf(robotService);
+        if (httpClient == null || robot == null) {
+            future.completeExceptionally(new IllegalStateException("Async IM client not available"));
+            return future;
+        }
+
+        String url = robotServiceFactory.getImUrl().trim() + path;
+        String json = body == null ? "" : HttpUtils.GSON.toJson(body);
+        HttpPost post = new HttpPost(url);
+        sign(post, robot.getRobotId(), robot.getRobotSecret());
+        StringEntity entity = new StringEntity(json, StandardCharsets.UTF_8);
+        entity.setContentEncoding(StandardCharsets.UTF_8.name());
+        entity.setContentType("application/json");
+        post.setEntity(entity);
+
+        inflightCount.incrementAndGet();
+        httpClient.execute(post, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                inflightCount.decrementAndGet();
+                try {
+                    IMResult<T> result = ResponseParser.parse(response, resultType, url, json);
+                    completedCount.incrementAndGet();
+                    future.complete(result);
+                } catch (Exception e) {
+                    failedCount.incrementAndGet();
+                    future.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                inflightCount.decrementAndGet();
+                failedCount.incrementAndGet();
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                inflightCount.decrementAndGet();
+                failedCount.incrementAndGet();
+                future.completeExceptionally(new CancellationException("IM request cancelled"));
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 与RobotHttpUtils相同的签名头
+     */
+    private static void sign(HttpPost post, String robotId, String secret) {
+        int nonce = (int) (ThreadLocalRandom.current().nextDouble() * 100000 + 3);
+        long timestamp = System.currentTimeMillis();
+        String sign = DigestUtils.sha1Hex(nonce + "|" + secret + "|" + timestamp);
+        post.setHeader("Content-type", "application/json; charset=utf-8");
+        post.setHeader("Connection", "Keep-Alive");
+        post.setHeader("nonce", nonce + "");
+        post.setHeader("timestamp", "" + timestamp);
+        post.setHeader("rid", robotId);
+        post.setHeader("sign", sign);
+    }
+
+    /**
+     * 等待响应中的请求数
+     */
+    public int getInflightCount() {
+        return inflightCount.get();
+    }
+
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * 通过子类访问HttpUtils.handleResponse，保证与同步调用的结果解析一致
+     */
+    private static class ResponseParser extends HttpUtils {
+        static <T> IMResult<T> parse(HttpResponse response, Class<T> resultType, String url, String body) throws Exception {
+            return handleResponse(response, resultType, url, body);
+        }
+    }
+}
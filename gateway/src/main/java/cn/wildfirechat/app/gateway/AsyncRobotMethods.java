@@ -0,0 +1,126 @@
+package cn.wildfirechat.app.gateway;
+
+import cn.wildfirechat.pojos.Conversation;
+import cn.wildfirechat.pojos.InputGetGroup;
+import cn.wildfirechat.pojos.InputGetGroupMember;
+import cn.wildfirechat.pojos.InputGetUserInfo;
+import cn.wildfirechat.pojos.InputOutputUserInfo;
+import cn.wildfirechat.pojos.MessagePayload;
+import cn.wildfirechat.pojos.OutputGroupMemberList;
+import cn.wildfirechat.pojos.OutputRobot;
+import cn.wildfirechat.pojos.PojoGroupInfo;
+import cn.wildfirechat.pojos.PojoGroupMember;
+import cn.wildfirechat.pojos.RecallMessageData;
+import cn.wildfirechat.pojos.ReplyMessageData;
+import cn.wildfirechat.pojos.SendMessageData;
+import cn.wildfirechat.pojos.SendMessageResult;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * 已支持非阻塞调用的RobotService方法
+ * 每个方法记录IM接口路径、请求体的构造方式和结果类型，与RobotService中的实现保持一致；
+ * 未列出的方法仍通过RobotService同步调用
+ */
+final class AsyncRobotMethods {
+
+    /**
+     * key: 方法名/参数个数，与RobotMethodTable一致
+     */
+    private static final Map<String, Call> CALLS = new HashMap<>();
+
+    static {
+        register("sendMessage", 3, "/robot/message/send", SendMessageResult.class, AsyncRobotMethods::sendMessageData);
+        register("sendMessage", 4, "/robot/message/send", SendMessageResult.class, AsyncRobotMethods::sendMessageData);
+        register("replyMessage", 3, "/robot/message/reply", SendMessageResult.class, args -> {
+            ReplyMessageData data = new ReplyMessageData();
+            data.setMessageUid((Long) args[0]);
+            data.setOnly2Sender((Boolean) args[2]);
+            data.setPayload((MessagePayload) args[1]);
+            return data;
+        });
+        register("recallMessage", 1, "/robot/message/recall", String.class, args -> {
+            RecallMessageData data = new RecallMessageData();
+            data.setMessageUid((Long) args[0]);
+            return data;
+        });
+        register("getUserInfo", 1, "/robot/user_info", InputOutputUserInfo.class,
+                args -> new InputGetUserInfo((String) args[0], null, null));
+        register("getProfile", 0, "/robot/profile", OutputRobot.class, args -> null);
+        register("getGroupInfo", 1, "/robot/group/get_info", PojoGroupInfo.class, args -> {
+            InputGetGroup input = new InputGetGroup();
+            input.setGroupId((String) args[0]);
+            return input;
+        });
+        register("getGroupMembers", 1, "/robot/group/member/list", OutputGroupMemberList.class, args -> {
+            InputGetGroup input = new InputGetGroup();
+            input.setGroupId((String) args[0]);
+            return input;
+        });
+        register("getGroupMember", 2, "/robot/group/member/get", PojoGroupMember.class, args -> {
+            InputGetGroupMember input = new InputGetGroupMember();
+            input.setGroupId((String) args[0]);
+            input.setMemberId((String) args[1]);
+            return input;
+        });
+    }
+
+    private AsyncRobotMethods() {
+    }
+
+    /**
+     * 查找方法对应的非阻塞调用
+     * @return 未支持时返回null
+     */
+    static Call find(String methodName, int arity) {
+        return CALLS.get(methodName + '/' + arity);
+    }
+
+    private static void register(String methodName, int arity, String path, Class<?> resultType,
+                                 Function<Object[], Object> body) {
+        CALLS.put(methodName + '/' + arity, new Call(path, resultType, body));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object sendMessageData(Object[] args) {
+        SendMessageData data = new SendMessageData();
+        data.setSender((String) args[0]);
+        data.setConv((Conversation) args[1]);
+        data.setToUsers(args.length > 3 ? (List<String>) args[3] : null);
+        data.setPayload((MessagePayload) args[2]);
+        return data;
+    }
+
+    /**
+     * 一个IM接口调用
+     */
+    static final class Call {
+        private final String path;
+        private final Class<?> resultType;
+        private final Function<Object[], Object> body;
+
+        Call(String path, Class<?> resultType, Function<Object[], Object> body) {
+            this.path = path;
+            this.resultType = resultType;
+            this.body = body;
+        }
+
+        String getPath() {
+            return path;
+        }
+
+        Class<?> getResultType() {
+            return resultType;
+        }
+
+        /**
+         * 根据已转换的参数构造请求体
+         */
+        Object buildBody(Object[] args) {
+            return body.apply(args);
+        }
+    }
+}
@@ -1,23 +1,111 @@
 package cn.wildfirechat.app.gateway;
 
+import cn.wildfirechat.app.config.ImHttpConfig;
 import cn.wildfirechat.sdk.RobotService;
 import cn.wildfirechat.sdk.model.IMResult;
 import cn.wildfirechat.pojos.OutputRobot;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * 机器人鉴权处理器
+ * 鉴权结果按 (robotId, 密钥摘要) 缓存，同一机器人的并发鉴权合并为一次IM调用，
+ * 同一机器人的所有会话共享一个RobotService实例
  */
 @Component
 public class AuthHandler {
 
     private static final Logger LOG = LoggerFactory.getLogger(AuthHandler.class);
 
-    @Value("${im.url}")
-    public String im_url;
+    @Autowired
+    private RobotServiceFactory robotServiceFactory;
+
+    @Autowired
+    private ImConcurrencyLimiter limiter;
+
+    @Autowired
+    private ImHttpConfig imHttpConfig;
+
+    /**
+     * 鉴权成功的缓存时间（秒）
+     */
+    @Value("${gateway.auth.cacheTtlSeconds:300}")
+    private long cacheTtlSeconds;
+
+    /**
+     * 鉴权失败的缓存时间（秒）
+     */
+    @Value("${gateway.auth.negativeTtlSeconds:10}")
+    private long negativeTtlSeconds;
+
+    /**
+     * 当前使用的RobotService
+     * key: robotId
+     */
+    private final Map<String, RobotEntry> robots = new ConcurrentHashMap<>();
+
+    /**
+     * 所有仍被会话引用的RobotService，包括密钥变更后被替换的旧实例
+     * key: RobotService实例
+     */
+    private final Map<RobotService, RobotEntry> leases = new ConcurrentHashMap<>();
+
+    /**
+     * 鉴权失败缓存
+     * key: robotId|密钥摘要
+     */
+    private final Map<String, FailedAuth> failures = new ConcurrentHashMap<>();
+
+    /**
+     * 进行中的鉴权
+     * key: robotId|密钥摘要
+     */
+    private final Map<String, CompletableFuture<AuthResult>> inflight = new ConcurrentHashMap<>();
+
+    private final AtomicLong cacheHitCount = new AtomicLong();
+    private final AtomicLong negativeHitCount = new AtomicLong();
+    private final AtomicLong collapsedCount = new AtomicLong();
+    private final AtomicLong imCallCount = new AtomicLong();
+
+    private ScheduledExecutorService sweeper;
+
+    @PostConstruct
+    public void init() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "auth-cache-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, 60, 60, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        sweeper.shutdownNow();
+        for (RobotService robotService : leases.keySet()) {
+            closeRobotService(robotService);
+        }
+        leases.clear();
+        robots.clear();
+    }
 
     /**
      * 验证机器人凭据
@@ -31,10 +119,24 @@ public class AuthHandler {
             LOG.info("Authenticating robot: {}", robotId);
 
             // 创建临时RobotService实例进行验证
-            robotService = new RobotService(im_url, robotId, secret);
+            robotService = robotServiceFactory.create(robotId, secret);
+
+            ImConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+            if (permit == null) {
+                LOG.warn("Robot {} authentication rejected: IM server overloaded", robotId);
+                closeRobotService(robotService);
+                return null;
+            }
 
             // 调用getProfile验证凭据是否正确
-            IMResult<OutputRobot> result = robotService.getProfile();
+            IMResult<OutputRobot> result;
+            boolean failed = true;
+            try {
+                result = robotService.getProfile();
+                failed = false;
+            } finally {
+                permit.release(failed);
+            }
 
             if (result.getCode() == 0) {
                 LOG.info("Robot {} authenticated successfully", robotId);
@@ -59,39 +161,264 @@ public class AuthHandler {
 
     /**
      * 验证机器人凭据并返回结果信息
+     * 成功时返回的RobotService由同一机器人的会话共享，会话结束时需调用 {@link #release(RobotService)}
      * @param robotId 机器人ID
      * @param secret 机器人密钥
      * @return [是否成功, 错误码, 错误消息]
      */
     public AuthResult authenticateWithResult(String robotId, String secret) {
+        if (robotId == null || secret == null) {
+            return new AuthResult(false, null, 400, "robotId and secret are required");
+        }
+
+        String secretHash = DigestUtils.sha256Hex(secret);
+        String key = robotId + '|' + secretHash;
+        long now = System.currentTimeMillis();
+
+        // 鉴权成功缓存
+        AuthResult cached = acquireVerified(robotId, secretHash, now);
+        if (cached != null) {
+            cacheHitCount.incrementAndGet();
+            LOG.info("Robot {} authenticated from cache", robotId);
+            return cached;
+        }
+
+        // 鉴权失败缓存
+        FailedAuth failed = failures.get(key);
+        if (failed != null) {
+            if (failed.expiresAt > now) {
+                negativeHitCount.incrementAndGet();
+                return new AuthResult(false, null, failed.code, failed.msg);
+            }
+            failures.remove(key, failed);
+        }
+
+        // 合并同一机器人的并发鉴权
+        CompletableFuture<AuthResult> future = new CompletableFuture<>();
+        CompletableFuture<AuthResult> existing = inflight.putIfAbsent(key, future);
+        if (existing != null) {
+            collapsedCount.incrementAndGet();
+            AuthResult result;
+            try {
+                // 等待时间不超过一次IM调用的最长耗时，IM服务无响应时不会一直占着鉴权线程
+                result = existing.get(imCallTimeoutMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new AuthResult(false, null, 500, "Authentication interrupted");
+            } catch (TimeoutException e) {
+                LOG.warn("Robot {} authentication timed out waiting for a concurrent verification", robotId);
+                return new AuthResult(false, null, 504, "Authentication timed out");
+            } catch (ExecutionException e) {
+                return new AuthResult(false, null, 500, "Authentication error: " + e.getCause().getMessage());
+            }
+            if (!result.isSuccess()) {
+                return result;
+            }
+            // 共享刚验证过的实例；已被替换时自己验证一次
+            AuthResult acquired = acquire(result.entry);
+            return acquired != null ? acquired : verifyAndAcquire(robotId, secret, secretHash);
+        }
+
+        AuthResult result;
+        try {
+            result = verify(robotId, secret, secretHash);
+        } finally {
+            inflight.remove(key, future);
+        }
+        future.complete(result);
+
+        if (!result.isSuccess()) {
+            return result;
+        }
+        AuthResult acquired = acquire(result.entry);
+        return acquired != null ? acquired : verifyAndAcquire(robotId, secret, secretHash);
+    }
+
+    /**
+     * 不合并的单次验证，成功时增加引用
+     */
+    private AuthResult verifyAndAcquire(String robotId, String secret, String secretHash) {
+        AuthResult result = verify(robotId, secret, secretHash);
+        if (!result.isSuccess()) {
+            return result;
+        }
+        AuthResult acquired = acquire(result.entry);
+        return acquired != null ? acquired : new AuthResult(false, null, 500, "Authentication error: robot service was replaced");
+    }
+
+    /**
+     * 一次IM调用的最长耗时：获取连接、建立连接和读取超时之和
+     */
+    private long imCallTimeoutMillis() {
+        return (long) imHttpConfig.getLeaseTimeoutMs() + imHttpConfig.getConnectTimeoutMs() + imHttpConfig.getSocketTimeoutMs();
+    }
+
+    /**
+     * 调用IM服务验证凭据，成功后更新缓存
+     */
+    private AuthResult verify(String robotId, String secret, String secretHash) {
+        RobotEntry entry = robots.get(robotId);
+        boolean reuse = entry != null && entry.secretHash.equals(secretHash);
         RobotService robotService = null;
         try {
             LOG.info("Authenticating robot: {}", robotId);
 
-            robotService = new RobotService(im_url, robotId, secret);
-            IMResult<OutputRobot> result = robotService.getProfile();
+            robotService = reuse ? entry.robotService : robotServiceFactory.create(robotId, secret);
+            // IM服务过载时立即拒绝，不写入失败缓存
+            ImConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+            if (permit == null) {
+                if (!reuse) {
+                    closeRobotService(robotService);
+                }
+                return new AuthResult(false, null, ImConcurrencyLimiter.OVERLOADED_CODE, ImConcurrencyLimiter.OVERLOADED_MSG);
+            }
+            imCallCount.incrementAndGet();
+            IMResult<OutputRobot> result;
+            boolean failed = true;
+            try {
+                result = robotService.getProfile();
+                failed = false;
+            } finally {
+                permit.release(failed);
+            }
 
             if (result.getCode() == 0) {
                 LOG.info("Robot {} authenticated successfully", robotId);
-                return new AuthResult(true, robotService, 0, "success");
+                long verifiedUntil = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(cacheTtlSeconds);
+                RobotEntry verified = entry;
+                if (reuse) {
+                    entry.verifiedUntil = verifiedUntil;
+                } else {
+                    verified = new RobotEntry(robotService, secretHash, verifiedUntil);
+                    leases.put(robotService, verified);
+                    RobotEntry old = robots.put(robotId, verified);
+                    if (old != null) {
+                        retire(old);
+                    }
+                }
+                AuthResult authResult = new AuthResult(true, robotService, 0, "success");
+                authResult.entry = verified;
+                return authResult;
             } else {
                 LOG.warn("Robot {} authentication failed: code={}, msg={}",
                         robotId, result.getCode(), result.getMsg());
-                // 鉴权失败，关闭RobotService资源
-                closeRobotService(robotService);
+                failures.put(robotId + '|' + secretHash, new FailedAuth(result.getCode(), result.getMsg(),
+                        System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(negativeTtlSeconds)));
+                if (reuse) {
+                    // 原密钥已失效
+                    entry.verifiedUntil = 0;
+                } else {
+                    // 鉴权失败，关闭RobotService资源
+                    closeRobotService(robotService);
+                }
                 return new AuthResult(false, null, result.getCode(), result.getMsg());
             }
 
         } catch (Exception e) {
             LOG.error("Error authenticating robot {}: {}", robotId, e.getMessage(), e);
-            // 异常情况，关闭RobotService资源
-            if (robotService != null) {
+            // 异常情况，关闭RobotService资源；网络异常不写入失败缓存
+            if (robotService != null && !reuse) {
                 closeRobotService(robotService);
             }
             return new AuthResult(false, null, 500, "Authentication error: " + e.getMessage());
         }
     }
 
+    /**
+     * 缓存有效时增加引用并返回共享的RobotService
+     */
+    private AuthResult acquireVerified(String robotId, String secretHash, long now) {
+        RobotEntry entry = robots.get(robotId);
+        if (entry == null || !entry.secretHash.equals(secretHash) || entry.verifiedUntil <= now) {
+            return null;
+        }
+        return acquire(entry);
+    }
+
+    /**
+     * 增加引用并返回共享的RobotService，不检查缓存时间，缓存时间为0时刚验证的实例同样计数，
+     * 保证每次成功鉴权与 {@link #release(RobotService)} 一一对应
+     * @return 实例已停用返回null
+     */
+    private AuthResult acquire(RobotEntry entry) {
+        synchronized (entry) {
+            if (entry.retired) {
+                return null;
+            }
+            entry.sessions.incrementAndGet();
+        }
+        return new AuthResult(true, entry.robotService, 0, "success");
+    }
+
+    /**
+     * 会话结束，释放共享的RobotService
+     */
+    public void release(RobotService robotService) {
+        if (robotService == null) {
+            return;
+        }
+        RobotEntry entry = leases.get(robotService);
+        if (entry == null) {
+            return;
+        }
+        boolean close;
+        synchronized (entry) {
+            close = entry.sessions.decrementAndGet() <= 0 && entry.retired;
+        }
+        if (close && leases.remove(robotService, entry)) {
+            closeRobotService(robotService);
+        }
+    }
+
+    /**
+     * 密钥变更或缓存过期后不再分配旧实例，最后一个会话释放后关闭
+     */
+    private void retire(RobotEntry entry) {
+        boolean close;
+        synchronized (entry) {
+            entry.retired = true;
+            close = entry.sessions.get() <= 0;
+        }
+        if (close && leases.remove(entry.robotService, entry)) {
+            closeRobotService(entry.robotService);
+        }
+    }
+
+    /**
+     * 定期清理：过期且无会话使用的RobotService、过期的失败缓存
+     */
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Map.Entry<String, RobotEntry>> it = robots.entrySet().iterator(); it.hasNext(); ) {
+            RobotEntry entry = it.next().getValue();
+            if (entry.verifiedUntil <= now && entry.sessions.get() <= 0) {
+                it.remove();
+                retire(entry);
+            }
+        }
+        failures.values().removeIf(failed -> failed.expiresAt <= now);
+    }
+
+    public int getCachedRobotCount() {
+        return robots.size();
+    }
+
+    public long getCacheHitCount() {
+        return cacheHitCount.get();
+    }
+
+    public long getNegativeHitCount() {
+        return negativeHitCount.get();
+    }
+
+    public long getCollapsedCount() {
+        return collapsedCount.get();
+    }
+
+    public long getImCallCount() {
+        return imCallCount.get();
+    }
+
     /**
      * 安全关闭RobotService
      */
@@ -105,6 +432,38 @@ public class AuthHandler {
         }
     }
 
+    /**
+     * 共享的RobotService及其鉴权状态
+     */
+    private static class RobotEntry {
+        private final RobotService robotService;
+        private final String secretHash;
+        private volatile long verifiedUntil;
+        private final AtomicInteger sessions = new AtomicInteger();
+        private boolean retired;
+
+        RobotEntry(RobotService robotService, String secretHash, long verifiedUntil) {
+            this.robotService = robotService;
+            this.secretHash = secretHash;
+            this.verifiedUntil = verifiedUntil;
+        }
+    }
+
+    /**
+     * 鉴权失败缓存
+     */
+    private static class FailedAuth {
+        private final int code;
+        private final String msg;
+        private final long expiresAt;
+
+        FailedAuth(int code, String msg, long expiresAt) {
+            this.code = code;
+            this.msg = msg;
+            this.expiresAt = expiresAt;
+        }
+    }
+
     /**
      * 鉴权结果
      */
@@ -114,6 +473,11 @@ public class AuthHandler {
         private final int code;
         private final String msg;
 
+        /**
+         * 验证成功时对应的共享实例，尚未增加引用
+         */
+        private RobotEntry entry;
+
         public AuthResult(boolean success, RobotService robotService, int code, String msg) {
             this.success = success;
             this.robotService = robotService;
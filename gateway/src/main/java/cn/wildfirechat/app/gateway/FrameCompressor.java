@@ -0,0 +1,181 @@
+package cn.wildfirechat.app.gateway;
+
+import cn.wildfirechat.app.config.CompressionConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 帧压缩
+ * 使用zlib格式的deflate压缩，每个线程复用一个Deflater/Inflater；统计压缩率和耗时用于调整阈值
+ */
+@Component
+public class FrameCompressor {
+
+    @Autowired
+    private CompressionConfig compressionConfig;
+
+    private final ThreadLocal<Deflater> deflaters = new ThreadLocal<>();
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+    private final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[8192]);
+
+    private final AtomicLong compressedFrames = new AtomicLong();
+    private final AtomicLong skippedFrames = new AtomicLong();
+    private final AtomicLong compressInBytes = new AtomicLong();
+    private final AtomicLong compressOutBytes = new AtomicLong();
+    private final AtomicLong compressNanos = new AtomicLong();
+    private final AtomicLong inflatedFrames = new AtomicLong();
+    private final AtomicLong inflateInBytes = new AtomicLong();
+    private final AtomicLong inflateOutBytes = new AtomicLong();
+    private final AtomicLong inflateNanos = new AtomicLong();
+
+    /**
+     * 帧是否达到压缩阈值，未达到时计入跳过数
+     */
+    public boolean shouldCompress(int length) {
+        if (length >= compressionConfig.getThreshold()) {
+            return true;
+        }
+        skippedFrames.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * 压缩帧内容
+     */
+    public byte[] compress(byte[] data) {
+        long start = System.nanoTime();
+        Deflater deflater = deflaters.get();
+        if (deflater == null) {
+            deflater = new Deflater(compressionConfig.getLevel());
+            deflaters.set(deflater);
+        }
+        byte[] buffer = buffers.get();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 4));
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+        } finally {
+            deflater.reset();
+        }
+        byte[] compressed = out.toByteArray();
+
+        compressedFrames.incrementAndGet();
+        compressInBytes.addAndGet(data.length);
+        compressOutBytes.addAndGet(compressed.length);
+        compressNanos.addAndGet(System.nanoTime() - start);
+        return compressed;
+    }
+
+    /**
+     * 解压客户端发来的二进制帧
+     * @throws IOException 数据格式错误或解压后超过上限
+     */
+    public byte[] inflate(ByteBuffer data) throws IOException {
+        long start = System.nanoTime();
+        int inLength = data.remaining();
+        byte[] input = new byte[inLength];
+        data.get(input);
+
+        Inflater inflater = inflaters.get();
+        byte[] buffer = buffers.get();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(inLength * 4);
+        try {
+            inflater.setInput(input);
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated compressed frame");
+                }
+                out.write(buffer, 0, n);
+                if (out.size() > compressionConfig.getMaxInflatedBytes()) {
+                    throw new IOException("Inflated frame exceeds " + compressionConfig.getMaxInflatedBytes() + " bytes");
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid compressed frame: " + e.getMessage(), e);
+        } finally {
+            inflater.reset();
+        }
+        byte[] inflated = out.toByteArray();
+
+        inflatedFrames.incrementAndGet();
+        inflateInBytes.addAndGet(inLength);
+        inflateOutBytes.addAndGet(inflated.length);
+        inflateNanos.addAndGet(System.nanoTime() - start);
+        return inflated;
+    }
+
+    public boolean isEnabled() {
+        return compressionConfig.isEnabled();
+    }
+
+    public long getCompressedFrames() {
+        return compressedFrames.get();
+    }
+
+    /**
+     * 未达到阈值而未压缩的帧数
+     */
+    public long getSkippedFrames() {
+        return skippedFrames.get();
+    }
+
+    /**
+     * 压缩率：压缩后字节数 / 压缩前字节数
+     */
+    public double getCompressionRatio() {
+        long in = compressInBytes.get();
+        return in == 0 ? 0 : (double) compressOutBytes.get() / in;
+    }
+
+    /**
+     * 压缩节省的字节数
+     */
+    public long getSavedBytes() {
+        return compressInBytes.get() - compressOutBytes.get();
+    }
+
+    /**
+     * 平均每帧压缩耗时（微秒）
+     */
+    public double getAvgCompressMicros() {
+        long frames = compressedFrames.get();
+        return frames == 0 ? 0 : compressNanos.get() / 1e3 / frames;
+    }
+
+    /**
+     * 压缩总耗时（毫秒）
+     */
+    public long getCompressMillis() {
+        return compressNanos.get() / 1_000_000;
+    }
+
+    public long getInflatedFrames() {
+        return inflatedFrames.get();
+    }
+
+    public double getInflateRatio() {
+        long out = inflateOutBytes.get();
+        return out == 0 ? 0 : (double) inflateInBytes.get() / out;
+    }
+
+    /**
+     * 平均每帧解压耗时（微秒）
+     */
+    public double getAvgInflateMicros() {
+        long frames = inflatedFrames.get();
+        return frames == 0 ? 0 : inflateNanos.get() / 1e3 / frames;
+    }
+}
@@ -0,0 +1,133 @@
+package cn.wildfirechat.app.gateway;
+
+import cn.wildfirechat.app.config.LimiterConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * IM调用的自适应并发限制
+ * 所有发往IM服务的调用（RPC请求和鉴权）先取得许可，并发数达到上限时立即拒绝，避免IM服务变慢时继续堆积请求。
+ * 上限按AIMD调整：调用在延迟阈值内成功且并发已用到上限的一半以上时每个窗口约加1；
+ * 超过延迟阈值或调用异常时乘以退避比例，上次减小之前发出的调用不再重复减小
+ */
+@Component
+public class ImConcurrencyLimiter {
+    private static final Logger LOG = LoggerFactory.getLogger(ImConcurrencyLimiter.class);
+
+    /**
+     * 超过并发上限时返回的错误码，与单个机器人超出限制的429区分
+     */
+    public static final int OVERLOADED_CODE = 529;
+
+    public static final String OVERLOADED_MSG = "IM server overloaded, please retry later";
+
+    @Autowired
+    private LimiterConfig limiterConfig;
+
+    private final AtomicInteger inflight = new AtomicInteger();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong decreaseCount = new AtomicLong();
+
+    /**
+     * 当前并发上限，只在持有锁时修改
+     */
+    private volatile double limit;
+
+    private long lastDecreaseNanos;
+
+    @PostConstruct
+    public void init() {
+        limit = Math.max(limiterConfig.getMinLimit(), Math.min(limiterConfig.getMaxLimit(), limiterConfig.getInitialLimit()));
+        lastDecreaseNanos = System.nanoTime();
+    }
+
+    /**
+     * 取得一次IM调用的许可
+     * @return 并发数已达上限时返回null，调用方应返回 {@link #OVERLOADED_CODE}
+     */
+    public Permit tryAcquire() {
+        while (true) {
+            int current = inflight.get();
+            if (limiterConfig.isEnabled() && current >= (int) limit) {
+                rejectedCount.incrementAndGet();
+                return null;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                return new Permit(current + 1);
+            }
+        }
+    }
+
+    private void onComplete(Permit permit, boolean failed) {
+        inflight.decrementAndGet();
+        long now = System.nanoTime();
+        boolean overloaded = failed || now - permit.startNanos > TimeUnit.MILLISECONDS.toNanos(limiterConfig.getLatencyThresholdMs());
+        synchronized (this) {
+            double current = limit;
+            if (overloaded) {
+                // 同一次过载期间发出的调用只减小一次
+                if (permit.startNanos - lastDecreaseNanos < 0) {
+                    return;
+                }
+                lastDecreaseNanos = now;
+                limit = Math.max(limiterConfig.getMinLimit(), current * limiterConfig.getBackoffRatio());
+                decreaseCount.incrementAndGet();
+                LOG.debug("IM concurrency limit decreased to {}", (int) limit);
+            } else if (permit.inflightAtStart * 2 >= current) {
+                // 并发未用到一半时上限不是瓶颈，不增加
+                limit = Math.min(limiterConfig.getMaxLimit(), current + 1 / current);
+            }
+        }
+    }
+
+    /**
+     * 当前并发上限
+     */
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * 正在进行的IM调用数
+     */
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * 因过载减小上限的次数
+     */
+    public long getDecreaseCount() {
+        return decreaseCount.get();
+    }
+
+    /**
+     * 一次IM调用的许可，调用结束后必须释放一次
+     */
+    public class Permit {
+        private final long startNanos = System.nanoTime();
+        private final int inflightAtStart;
+
+        private Permit(int inflightAtStart) {
+            this.inflightAtStart = inflightAtStart;
+        }
+
+        /**
+         * @param failed 调用是否异常（如超时、连接失败），IM返回的业务错误码不算异常
+         */
+        public void release(boolean failed) {
+            onComplete(this, failed);
+        }
+    }
+}
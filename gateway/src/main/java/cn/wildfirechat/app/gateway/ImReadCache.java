@@ -0,0 +1,337 @@
+package cn.wildfirechat.app.gateway;
+
+import cn.wildfirechat.app.config.ReadCacheConfig;
+import cn.wildfirechat.app.protocol.ResponseMessage;
+import cn.wildfirechat.common.ErrorCode;
+import cn.wildfirechat.sdk.model.IMResult;
+import com.google.gson.JsonElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * IM查询结果缓存
+ * 缓存getUserInfo、getGroupInfo、getGroupMembers、getGroupMember的成功结果，相同的并发查询只调用一次IM服务。
+ * 用户信息与机器人无关，所有机器人共享；群组信息可能受机器人是否在群中影响，按机器人分别缓存，
+ * 但同一群组的缓存放在一起，经网关的群组修改操作完成后整组失效
+ */
+@Component
+public class ImReadCache {
+    private static final Logger LOG = LoggerFactory.getLogger(ImReadCache.class);
+
+    /**
+     * 修改群组的方法，第一个参数是群组ID
+     */
+    private static final Set<String> GROUP_MUTATIONS = new HashSet<>(Arrays.asList(
+            "addGroupMembers", "kickoffGroupMembers", "modifyGroupInfo", "dismissGroup", "transferGroup",
+            "quitGroup", "setGroupManager", "muteGroupMember", "allowGroupMember",
+            "setGroupMemberAlias", "setGroupMemberExtra"));
+
+    @Autowired
+    private ReadCacheConfig readCacheConfig;
+
+    /**
+     * key: 范围（"user|userId" 或 "group|groupId"）
+     * value: 该范围内的缓存结果，失效时整体移除
+     */
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * 正在执行的查询，相同的并发查询共享结果
+     * key: 范围 + '#' + 范围内的key
+     */
+    private final Map<String, CompletableFuture<ResponseMessage>> inflight = new ConcurrentHashMap<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong collapsedCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    private ScheduledExecutorService sweeper;
+
+    @PostConstruct
+    public void init() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "read-cache-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, 30, 30, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * 查询，缓存未命中时调用loader并缓存成功的结果
+     * @param robotId 发起查询的机器人
+     * @param loader 调用IM服务
+     * @return 不是可缓存的查询时返回null，由调用方直接调用IM服务
+     */
+    public CompletableFuture<ResponseMessage> get(String robotId, String method, List<JsonElement> params,
+                                                  Supplier<CompletableFuture<ResponseMessage>> loader) {
+        if (!readCacheConfig.isEnabled() || robotId == null) {
+            return null;
+        }
+        String[] scopeAndKey = scopeAndKey(robotId, method, params);
+        if (scopeAndKey == null) {
+            return null;
+        }
+        String scope = scopeAndKey[0];
+        String key = scopeAndKey[1];
+
+        Bucket bucket = buckets.get(scope);
+        Entry entry = bucket != null ? bucket.entries.get(key) : null;
+        if (entry != null && entry.expireAt > System.currentTimeMillis()) {
+            hitCount.incrementAndGet();
+            return CompletableFuture.completedFuture(ResponseMessage.success(null, entry.result));
+        }
+        missCount.incrementAndGet();
+
+        String flightKey = scope + '#' + key;
+        CompletableFuture<ResponseMessage> mine = new CompletableFuture<>();
+        CompletableFuture<ResponseMessage> existing = inflight.putIfAbsent(flightKey, mine);
+        if (existing != null) {
+            collapsedCount.incrementAndGet();
+            return existing.thenApply(ImReadCache::copy);
+        }
+
+        // 查询期间该范围失效时不缓存结果，避免写回修改前的数据
+        Bucket target = buckets.computeIfAbsent(scope, s -> new Bucket());
+        CompletableFuture<ResponseMessage> load;
+        try {
+            load = loader.get();
+        } catch (RuntimeException e) {
+            load = new CompletableFuture<>();
+            load.completeExceptionally(e);
+        }
+        load.whenComplete((response, e) -> {
+            if (e == null && isCacheable(response)) {
+                store(target, key, response.getResult());
+            }
+            inflight.remove(flightKey, mine);
+            if (e != null) {
+                mine.completeExceptionally(e);
+            } else {
+                mine.complete(response);
+            }
+        });
+        return mine.thenApply(ImReadCache::copy);
+    }
+
+    /**
+     * 请求执行完成后调用，群组修改操作使该群组的缓存失效，机器人修改资料使其用户信息失效
+     */
+    public void onInvoked(String robotId, String method, List<JsonElement> params) {
+        if ("updateProfile".equals(method)) {
+            invalidate("user|" + robotId);
+        } else if (GROUP_MUTATIONS.contains(method)) {
+            String groupId = stringParam(params, 0);
+            if (groupId != null) {
+                invalidate("group|" + groupId);
+            }
+        }
+    }
+
+    /**
+     * 可缓存的查询的范围和key，同一个key在不同机器人之间共享时不包含机器人ID
+     */
+    private static String[] scopeAndKey(String robotId, String method, List<JsonElement> params) {
+        int arity = params != null ? params.size() : 0;
+        switch (method) {
+            case "getUserInfo": {
+                String userId = arity == 1 ? stringParam(params, 0) : null;
+                return userId != null ? new String[]{"user|" + userId, method} : null;
+            }
+            case "getGroupInfo":
+            case "getGroupMembers": {
+                String groupId = arity == 1 ? stringParam(params, 0) : null;
+                return groupId != null ? new String[]{"group|" + groupId, robotId + '|' + method} : null;
+            }
+            case "getGroupMember": {
+                String groupId = arity == 2 ? stringParam(params, 0) : null;
+                String memberId = arity == 2 ? stringParam(params, 1) : null;
+                return groupId != null && memberId != null
+                        ? new String[]{"group|" + groupId, robotId + '|' + method + '|' + memberId} : null;
+            }
+            default:
+                return null;
+        }
+    }
+
+    private static String stringParam(List<JsonElement> params, int index) {
+        if (params == null || params.size() <= index) {
+            return null;
+        }
+        JsonElement param = params.get(index);
+        return param != null && param.isJsonPrimitive() ? param.getAsString() : null;
+    }
+
+    /**
+     * 只缓存IM服务返回成功的结果
+     */
+    private static boolean isCacheable(ResponseMessage response) {
+        if (response == null || response.getCode() != 0 || !(response.getResult() instanceof IMResult)) {
+            return false;
+        }
+        IMResult<?> result = (IMResult<?>) response.getResult();
+        return result.getErrorCode() == ErrorCode.ERROR_CODE_SUCCESS && result.getResult() != null;
+    }
+
+    /**
+     * 合并的查询各自得到独立的响应对象，调用方会设置自己的requestId
+     */
+    private static ResponseMessage copy(ResponseMessage response) {
+        return new ResponseMessage(null, response.getCode(), response.getMsg(), response.getResult());
+    }
+
+    private void store(Bucket bucket, String key, Object result) {
+        if (size.get() >= readCacheConfig.getMaxEntries()) {
+            makeRoom();
+        }
+        Entry entry = new Entry(result, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(readCacheConfig.getTtlSeconds()));
+        synchronized (bucket) {
+            // 已失效或作为空范围被清理
+            if (bucket.removed) {
+                return;
+            }
+            if (bucket.entries.put(key, entry) == null) {
+                size.incrementAndGet();
+            }
+        }
+    }
+
+    private void invalidate(String scope) {
+        Bucket bucket = buckets.remove(scope);
+        if (bucket != null) {
+            removeBucket(bucket);
+            invalidationCount.incrementAndGet();
+            LOG.debug("Read cache of {} invalidated", scope);
+        }
+    }
+
+    private void removeBucket(Bucket bucket) {
+        synchronized (bucket) {
+            if (!bucket.removed) {
+                bucket.removed = true;
+                size.addAndGet(-bucket.entries.size());
+            }
+        }
+    }
+
+    /**
+     * 缓存已满：先清理过期结果，仍超出上限的90%时随机淘汰整组
+     */
+    private void makeRoom() {
+        sweep();
+        int target = readCacheConfig.getMaxEntries() * 9 / 10;
+        for (Iterator<Map.Entry<String, Bucket>> it = buckets.entrySet().iterator(); it.hasNext() && size.get() > target; ) {
+            Bucket bucket = it.next().getValue();
+            it.remove();
+            int evicted = bucket.entries.size();
+            removeBucket(bucket);
+            evictionCount.addAndGet(evicted);
+        }
+    }
+
+    /**
+     * 清理过期结果和空范围
+     */
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Map.Entry<String, Bucket>> it = buckets.entrySet().iterator(); it.hasNext(); ) {
+            Bucket bucket = it.next().getValue();
+            synchronized (bucket) {
+                if (bucket.removed) {
+                    continue;
+                }
+                int before = bucket.entries.size();
+                bucket.entries.values().removeIf(entry -> entry.expireAt <= now);
+                size.addAndGet(bucket.entries.size() - before);
+                if (bucket.entries.isEmpty()) {
+                    bucket.removed = true;
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * 当前缓存的结果数
+     */
+    public int getSize() {
+        return size.get();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * 与正在执行的相同查询合并的次数，包含在未命中次数中
+     */
+    public long getCollapsedCount() {
+        return collapsedCount.get();
+    }
+
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * 命中率，合并的查询不算命中
+     */
+    public double getHitRate() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * 同一范围（用户或群组）的缓存结果
+     */
+    private static class Bucket {
+        private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+        private boolean removed;
+    }
+
+    private static class Entry {
+        private final Object result;
+        private final long expireAt;
+
+        Entry(Object result, long expireAt) {
+            this.result = result;
+            this.expireAt = expireAt;
+        }
+    }
+}
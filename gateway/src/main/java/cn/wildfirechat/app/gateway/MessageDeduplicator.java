@@ -0,0 +1,242 @@
+package cn.wildfirechat.app.gateway;
+
+import cn.wildfirechat.app.config.DedupConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * IM回调消息去重
+ * 每个机器人两代messageId集合：新消息记入当前代，当前代超过时间窗口或数量上限时成为上一代，原上一代清空复用。
+ * 集合是long开放寻址哈希表，不装箱，每个messageId占8字节，表按需扩容
+ */
+@Component
+public class MessageDeduplicator {
+
+    @Autowired
+    private DedupConfig dedupConfig;
+
+    /**
+     * key: robotId
+     */
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    private final AtomicLong checkedCount = new AtomicLong();
+    private final AtomicLong duplicateCount = new AtomicLong();
+
+    private ScheduledExecutorService sweeper;
+
+    @PostConstruct
+    public void init() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "dedup-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, 60, 60, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * 记录一条将要推送给机器人的消息
+     * @return 窗口内已推送过相同messageId时返回true，调用方应丢弃该消息
+     */
+    public boolean isDuplicate(String robotId, long messageId) {
+        if (!dedupConfig.isEnabled() || robotId == null || messageId == 0) {
+            return false;
+        }
+        checkedCount.incrementAndGet();
+        Window window = windows.computeIfAbsent(robotId, id -> new Window());
+        long windowMillis = TimeUnit.SECONDS.toMillis(dedupConfig.getWindowSeconds());
+        boolean duplicate;
+        synchronized (window) {
+            duplicate = window.checkAndAdd(messageId, System.currentTimeMillis(), windowMillis, dedupConfig.getMaxEntriesPerRobot());
+        }
+        if (duplicate) {
+            duplicateCount.incrementAndGet();
+        }
+        return duplicate;
+    }
+
+    /**
+     * 移除两个窗口内没有消息的机器人
+     */
+    private void sweep() {
+        long expireBefore = System.currentTimeMillis() - 2 * TimeUnit.SECONDS.toMillis(dedupConfig.getWindowSeconds());
+        for (Iterator<Window> it = windows.values().iterator(); it.hasNext(); ) {
+            Window window = it.next();
+            synchronized (window) {
+                if (window.lastAddedAt < expireBefore) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * 记录messageId的机器人数
+     */
+    public int getRobotCount() {
+        return windows.size();
+    }
+
+    /**
+     * 当前记录的messageId数
+     */
+    public long getEntryCount() {
+        long entries = 0;
+        for (Window window : windows.values()) {
+            synchronized (window) {
+                entries += window.current.size + window.previous.size;
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * 哈希表占用的内存（字节）
+     */
+    public long getMemoryBytes() {
+        long bytes = 0;
+        for (Window window : windows.values()) {
+            synchronized (window) {
+                bytes += 8L * (window.current.capacity() + window.previous.capacity());
+            }
+        }
+        return bytes;
+    }
+
+    public long getCheckedCount() {
+        return checkedCount.get();
+    }
+
+    /**
+     * 被丢弃的重复消息数
+     */
+    public long getDuplicateCount() {
+        return duplicateCount.get();
+    }
+
+    /**
+     * 单个机器人的两代集合，只在持有锁时访问
+     */
+    static class Window {
+        private LongSet current = new LongSet();
+        private LongSet previous = new LongSet();
+        private long rotatedAt = System.currentTimeMillis();
+        private long lastAddedAt;
+
+        boolean checkAndAdd(long messageId, long now, long windowMillis, int maxEntries) {
+            if (now - rotatedAt >= 2 * windowMillis) {
+                // 空闲超过两个窗口，两代都已过期，不能把过期的当前代轮换为上一代继续参与判断
+                previous.clear(0);
+                current.clear(0);
+                rotatedAt = now;
+            }
+            if (current.contains(messageId) || previous.contains(messageId)) {
+                return true;
+            }
+            if (now - rotatedAt >= windowMillis || current.size >= maxEntries) {
+                // 上一代已超出窗口，清空后作为新的当前代
+                LongSet recycled = previous;
+                recycled.clear(current.size);
+                previous = current;
+                current = recycled;
+                rotatedAt = now;
+            }
+            current.add(messageId);
+            lastAddedAt = now;
+            return false;
+        }
+    }
+
+    /**
+     * long开放寻址哈希表，0表示空槽位（messageId为0的消息不去重），负载超过一半时扩容
+     */
+    static class LongSet {
+        private static final int INITIAL_CAPACITY = 64;
+
+        private long[] table = new long[INITIAL_CAPACITY];
+        private int size;
+
+        boolean contains(long value) {
+            int mask = table.length - 1;
+            for (int i = index(value, mask); ; i = (i + 1) & mask) {
+                long slot = table[i];
+                if (slot == value) {
+                    return true;
+                }
+                if (slot == 0) {
+                    return false;
+                }
+            }
+        }
+
+        int capacity() {
+            return table.length;
+        }
+
+        void add(long value) {
+            if ((size + 1) * 2 > table.length) {
+                resize(table.length * 2);
+            }
+            insert(table, value);
+            size++;
+        }
+
+        /**
+         * 清空并按预计的数量重新确定容量，一次突发之后不会长期占用大表
+         * @param expected 预计记录的数量，取刚结束的一代的数量
+         */
+        void clear(int expected) {
+            int capacity = INITIAL_CAPACITY;
+            while (capacity < expected * 2) {
+                capacity <<= 1;
+            }
+            if (capacity < table.length) {
+                table = new long[capacity];
+            } else {
+                Arrays.fill(table, 0);
+            }
+            size = 0;
+        }
+
+        private void resize(int capacity) {
+            long[] resized = new long[capacity];
+            for (long value : table) {
+                if (value != 0) {
+                    insert(resized, value);
+                }
+            }
+            table = resized;
+        }
+
+        private static void insert(long[] table, long value) {
+            int mask = table.length - 1;
+            int i = index(value, mask);
+            while (table[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            table[i] = value;
+        }
+
+        private static int index(long value, int mask) {
+            long hash = value * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package cn.wildfirechat.app.gateway;
+
+import cn.wildfirechat.app.config.OfflineConfig;
+import cn.wildfirechat.app.protocol.MessageRoute;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 离线消息存储
+ * 机器人未连接时，推送消息按机器人写入本地段文件；机器人鉴权成功后按顺序、限速补发。
+ * 定期清理过期消息，所有机器人的段文件总大小不超过maxTotalBytes
+ */
+@Component
+public class OfflineMessageStore {
+    private static final Logger LOG = LoggerFactory.getLogger(OfflineMessageStore.class);
+
+    @Autowired
+    private OfflineConfig offlineConfig;
+
+    @Autowired
+    private SessionManager sessionManager;
+
+    @Autowired
+    private PushSubscriptions subscriptions;
+
+    /**
+     * key: robotId
+     * value: 该机器人的离线队列
+     */
+    private final Map<String, OfflineQueue> queues = new ConcurrentHashMap<>();
+
+    /**
+     * 所有队列的段文件总字节数
+     */
+    private final AtomicLong totalBytes = new AtomicLong();
+
+    private File baseDir;
+
+    /**
+     * 执行补发和定期清理，补发限速时重新调度而不是占着线程等待
+     */
+    private ScheduledExecutorService replayExecutor;
+
+    private final AtomicLong storedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+    private final AtomicLong replayedCount = new AtomicLong();
+    private final AtomicLong replayNanos = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        if (!offlineConfig.isEnabled()) {
+            LOG.info("Offline message store disabled");
+            return;
+        }
+
+        baseDir = new File(offlineConfig.getDir());
+        if (!baseDir.isDirectory() && !baseDir.mkdirs()) {
+            LOG.error("Failed to create offline message dir {}", baseDir.getAbsolutePath());
+        }
+
+        File[] robotDirs = baseDir.listFiles(File::isDirectory);
+        if (robotDirs != null) {
+            for (File robotDir : robotDirs) {
+                String robotId = decodeDirName(robotDir.getName());
+                if (robotId == null) {
+                    continue;
+                }
+                OfflineQueue queue = newQueue(robotId, robotDir);
+                try {
+                    queue.load();
+                } catch (IOException | RuntimeException e) {
+                    LOG.error("Failed to load offline messages of robot {}: {}", robotId, e.getMessage());
+                    continue;
+                }
+                if (!queue.isEmpty()) {
+                    queues.put(robotId, queue);
+                }
+            }
+        }
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        replayExecutor = Executors.newScheduledThreadPool(Math.max(1, offlineConfig.getReplayThreads()), r -> {
+            Thread thread = new Thread(r, "offline-replay-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        long sweepInterval = Math.max(1, offlineConfig.getSweepIntervalSeconds());
+        replayExecutor.scheduleWithFixedDelay(this::sweep, sweepInterval, sweepInterval, TimeUnit.SECONDS);
+
+        LOG.info("Offline message store initialized at {}, {} robots with pending messages",
+                baseDir.getAbsolutePath(), queues.size());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (replayExecutor != null) {
+            replayExecutor.shutdownNow();
+            try {
+                replayExecutor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (OfflineQueue queue : queues.values()) {
+            queue.flush();
+        }
+    }
+
+    public boolean isEnabled() {
+        return offlineConfig.isEnabled();
+    }
+
+    /**
+     * 机器人是否有待补发的消息
+     * 有积压时新消息应追加到队尾，保证顺序
+     */
+    public boolean hasBacklog(String robotId) {
+        OfflineQueue queue = queues.get(robotId);
+        return queue != null && !queue.isEmpty();
+    }
+
+    /**
+     * 缓存一条推送消息
+     * @param frame 完整的推送帧JSON
+     * @return 是否写入成功
+     */
+    public boolean offer(String robotId, byte[] frame) {
+        if (!isEnabled()) {
+            return false;
+        }
+        int dropped;
+        while (true) {
+            OfflineQueue queue = queues.computeIfAbsent(robotId, id -> newQueue(id, new File(baseDir, encodeDirName(id))));
+            dropped = queue.append(frame, System.currentTimeMillis());
+            if (dropped != OfflineQueue.CLOSED) {
+                break;
+            }
+            // 队列刚被清理关闭，换新队列写入
+            queues.remove(robotId, queue);
+        }
+        if (dropped < 0) {
+            droppedCount.incrementAndGet();
+            return false;
+        }
+        droppedCount.addAndGet(dropped);
+        storedCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * 机器人已连接时启动补发，已在补发中则忽略
+     */
+    public void replay(String robotId) {
+        if (!isEnabled()) {
+            return;
+        }
+        OfflineQueue queue = queues.get(robotId);
+        if (queue == null || queue.isEmpty() || sessionManager.getSessionByRobotId(robotId) == null) {
+            return;
+        }
+        if (queue.replaying.compareAndSet(false, true)) {
+            replayExecutor.execute(new Replay(queue));
+        }
+    }
+
+    /**
+     * 一次补发过程
+     * 按速率逐条发送，下一条未到发送时间时重新调度自身，不占用补发线程
+     */
+    private final class Replay implements Runnable {
+        private final OfflineQueue queue;
+        private final long intervalNanos;
+        private final long ttlMillis;
+        private final long start = System.nanoTime();
+        private final long[] expired = new long[1];
+        private long next = start;
+        private int sent;
+
+        Replay(OfflineQueue queue) {
+            this.queue = queue;
+            this.intervalNanos = offlineConfig.getReplayRate() > 0 ? TimeUnit.SECONDS.toNanos(1) / offlineConfig.getReplayRate() : 0;
+            this.ttlMillis = TimeUnit.SECONDS.toMillis(offlineConfig.getTtlSeconds());
+        }
+
+        @Override
+        public void run() {
+            String robotId = queue.getRobotId();
+            boolean drained = false;
+
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    if (sessionManager.getSessionByRobotId(robotId) == null) {
+                        break;
+                    }
+                    OfflineQueue.Record record = queue.peek(System.currentTimeMillis() - ttlMillis, expired);
+                    if (record == null) {
+                        drained = true;
+                        break;
+                    }
+                    // 重连后声明的订阅同样适用于离线期间缓存的消息，过滤掉的不占用补发速率
+                    byte[] frame = record.getFrame();
+                    MessageRoute route = parseRoute(frame);
+                    if (route != null && !subscriptions.accepts(robotId, route, frame.length)) {
+                        queue.commit(record);
+                        continue;
+                    }
+                    long wait = next - System.nanoTime();
+                    if (wait > 0) {
+                        // 未提交的记录下次重新读取
+                        replayExecutor.schedule(this, wait, TimeUnit.NANOSECONDS);
+                        return;
+                    }
+                    // 机器人有多个会话时与实时推送一样按聊天对象选择会话
+                    if (!sessionManager.sendRawMessageToRobot(robotId, route != null ? route.getDeliveryKey() : null, frame)) {
+                        break;
+                    }
+                    queue.commit(record);
+                    sent++;
+                    next += intervalNanos;
+                }
+            } catch (RuntimeException e) {
+                // 包括停止时重新调度被拒绝
+                LOG.error("Failed to replay offline messages of robot {}: {}", robotId, e.getMessage(), e);
+            }
+
+            queue.replaying.set(false);
+            replayedCount.addAndGet(sent);
+            replayNanos.addAndGet(System.nanoTime() - start);
+            expiredCount.addAndGet(expired[0]);
+            if (sent > 0 || expired[0] > 0) {
+                LOG.info("Replayed {} offline messages to robot {}, {} expired, {} remaining",
+                        sent, robotId, expired[0], queue.getDepth());
+            }
+
+            // 取空之后、标记结束之前又有新消息入队
+            if (drained) {
+                replay(robotId);
+            }
+        }
+    }
+
+    /**
+     * 定期清理：丢弃所有队列中的过期消息并删除对应段文件，空队列关闭并移除，
+     * 同时将各队列最后一个段的写入落盘
+     */
+    private void sweep() {
+        long expireBefore = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(offlineConfig.getTtlSeconds());
+        long expired = 0;
+        int removed = 0;
+        try {
+            for (OfflineQueue queue : queues.values()) {
+                expired += queue.expire(expireBefore);
+                if (!queue.replaying.get() && queue.closeIfEmpty()) {
+                    queues.remove(queue.getRobotId(), queue);
+                    removed++;
+                }
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Failed to sweep offline messages: {}", e.getMessage(), e);
+        }
+        expiredCount.addAndGet(expired);
+        if (expired > 0 || removed > 0) {
+            LOG.info("Offline sweep expired {} messages, removed {} empty queues, {} bytes mapped",
+                    expired, removed, totalBytes.get());
+        }
+    }
+
+    private static MessageRoute parseRoute(byte[] frame) {
+        try {
+            return MessageRoute.parsePushFrame(frame);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private OfflineQueue newQueue(String robotId, File dir) {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            LOG.error("Failed to create offline message dir {}", dir.getAbsolutePath());
+        }
+        return new OfflineQueue(robotId, dir, offlineConfig.getSegmentSize(), offlineConfig.getMaxBytesPerRobot(),
+                totalBytes, offlineConfig.getMaxTotalBytes());
+    }
+
+    /**
+     * 机器人ID编码为十六进制作为目录名，避免非法字符
+     */
+    private static String encodeDirName(String robotId) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : robotId.getBytes(StandardCharsets.UTF_8)) {
+            sb.append(String.format("%02x", b & 0xff));
+        }
+        return sb.toString();
+    }
+
+    private static String decodeDirName(String name) {
+        if (name.isEmpty() || name.length() % 2 != 0) {
+            return null;
+        }
+        byte[] bytes = new byte[name.length() / 2];
+        try {
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) Integer.parseInt(name.substring(i * 2, i * 2 + 2), 16);
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 所有机器人待补发的消息总数
+     */
+    public long getQueueDepth() {
+        long depth = 0;
+        for (OfflineQueue queue : queues.values()) {
+            depth += queue.getDepth();
+        }
+        return depth;
+    }
+
+    /**
+     * 指定机器人待补发的消息数
+     */
+    public long getQueueDepth(String robotId) {
+        OfflineQueue queue = queues.get(robotId);
+        return queue != null ? queue.getDepth() : 0;
+    }
+
+    /**
+     * 段文件映射占用的总字节数
+     */
+    public long getMappedBytes() {
+        return totalBytes.get();
+    }
+
+    public long getStoredCount() {
+        return storedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    public long getReplayedCount() {
+        return replayedCount.get();
+    }
+
+    /**
+     * 补发吞吐量（条/秒），按累计补发耗时计算
+     */
+    public double getReplayThroughput() {
+        long nanos = replayNanos.get();
+        return nanos > 0 ? replayedCount.get() * 1e9 / nanos : 0;
+    }
+}
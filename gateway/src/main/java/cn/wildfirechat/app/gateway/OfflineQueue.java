@@ -0,0 +1,292 @@
+package cn.wildfirechat.app.gateway;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个机器人的离线消息队列
+ * 由若干段文件组成，写入追加到最后一个段，读取从第一个段开始，段内消息全部投递后删除段文件
+ */
+class OfflineQueue {
+    private static final Logger LOG = LoggerFactory.getLogger(OfflineQueue.class);
+
+    /**
+     * 队列已关闭，调用方应重新获取队列后写入
+     */
+    static final int CLOSED = -2;
+
+    private final String robotId;
+    private final File dir;
+    private final int segmentSize;
+    private final long maxBytes;
+
+    /**
+     * 所有机器人的段文件共用的字节数，不超过maxTotalBytes
+     */
+    private final AtomicLong totalBytes;
+    private final long maxTotalBytes;
+
+    private final Deque<OfflineSegment> segments = new ArrayDeque<>();
+    private long nextSeq;
+    private long mappedBytes;
+    private long depth;
+    private boolean closed;
+
+    /**
+     * 是否正在补发
+     */
+    final AtomicBoolean replaying = new AtomicBoolean(false);
+
+    OfflineQueue(String robotId, File dir, int segmentSize, long maxBytes, AtomicLong totalBytes, long maxTotalBytes) {
+        this.robotId = robotId;
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.maxBytes = maxBytes;
+        this.totalBytes = totalBytes;
+        this.maxTotalBytes = maxTotalBytes;
+    }
+
+    /**
+     * 加载目录中已有的段文件
+     */
+    synchronized void load() throws IOException {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".seg"));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            long baseSeq = Long.parseLong(file.getName().substring(0, file.getName().length() - 4));
+            OfflineSegment segment = OfflineSegment.open(file, baseSeq);
+            if (segment.getPending() == 0) {
+                segment.delete();
+                continue;
+            }
+            segments.addLast(segment);
+            // 启动时已有的数据即使超出总量上限也保留，之后的写入会被拒绝
+            mappedBytes += segment.getCapacity();
+            totalBytes.addAndGet(segment.getCapacity());
+            depth += segment.getPending();
+            nextSeq = baseSeq + 1;
+        }
+    }
+
+    /**
+     * 追加消息，超出本机器人或整个存储的容量时丢弃本机器人最旧的段
+     * @return 丢弃的消息数量，写入失败返回-1，队列已关闭返回 {@link #CLOSED}
+     */
+    synchronized int append(byte[] frame, long now) {
+        if (closed) {
+            return CLOSED;
+        }
+        int dropped = 0;
+        OfflineSegment tail = segments.peekLast();
+        if (tail == null || !tail.hasRoom(frame.length)) {
+            if (tail != null) {
+                // 写满的段落盘，进程崩溃时最多丢失当前段的数据
+                tail.flush();
+            }
+            int size = Math.max(segmentSize, OfflineSegment.HEADER_SIZE + frame.length);
+            while (!segments.isEmpty() && mappedBytes + size > maxBytes) {
+                dropped += dropHead();
+            }
+            if (mappedBytes + size > maxBytes) {
+                return -1;
+            }
+            while (!reserve(size)) {
+                if (segments.isEmpty()) {
+                    LOG.warn("Offline store is full, dropped message of robot {}", robotId);
+                    return -1;
+                }
+                dropped += dropHead();
+            }
+            try {
+                tail = OfflineSegment.create(dir, nextSeq++, size);
+            } catch (IOException e) {
+                totalBytes.addAndGet(-size);
+                LOG.error("Failed to create offline segment for robot {}: {}", robotId, e.getMessage());
+                return -1;
+            }
+            segments.addLast(tail);
+            mappedBytes += size;
+        }
+        tail.append(frame, now);
+        depth++;
+        return dropped;
+    }
+
+    /**
+     * 从整个存储的容量中预留新段的空间
+     */
+    private boolean reserve(int size) {
+        while (true) {
+            long current = totalBytes.get();
+            if (current + size > maxTotalBytes) {
+                return false;
+            }
+            if (totalBytes.compareAndSet(current, current + size)) {
+                return true;
+            }
+        }
+    }
+
+    private int dropHead() {
+        OfflineSegment head = segments.pollFirst();
+        int dropped = head.getPending();
+        depth -= dropped;
+        release(head);
+        LOG.warn("Offline queue of robot {} is full, dropped {} oldest messages", robotId, dropped);
+        return dropped;
+    }
+
+    /**
+     * 删除已移出队列的段，释放映射和容量
+     */
+    private void release(OfflineSegment segment) {
+        mappedBytes -= segment.getCapacity();
+        totalBytes.addAndGet(-segment.getCapacity());
+        segment.delete();
+    }
+
+    /**
+     * 获取下一条待投递消息，过期消息直接丢弃
+     * @param expireBefore 早于该时间写入的消息视为过期
+     * @param expiredCounter 统计过期丢弃的数量
+     * @return 没有待投递消息返回null
+     */
+    synchronized Record peek(long expireBefore, long[] expiredCounter) {
+        while (true) {
+            OfflineSegment head = segments.peekFirst();
+            if (head == null) {
+                return null;
+            }
+            int pos = head.peekPosition();
+            if (pos < 0) {
+                if (head == segments.peekLast() && head.hasRoom(0)) {
+                    // 最后一个段仍可写入，保留
+                    return null;
+                }
+                segments.pollFirst();
+                release(head);
+                continue;
+            }
+            if (head.timestampAt(pos) < expireBefore) {
+                if (head.consume(pos)) {
+                    depth--;
+                    expiredCounter[0]++;
+                }
+                continue;
+            }
+            return new Record(head, pos, head.readAt(pos));
+        }
+    }
+
+    /**
+     * 确认消息已投递
+     */
+    synchronized void commit(Record record) {
+        // peek和commit之间不持有锁，期间该记录可能已被过期清理消费
+        if (segments.contains(record.segment) && record.segment.consume(record.position)) {
+            depth--;
+        }
+        OfflineSegment head = segments.peekFirst();
+        if (head != null && head.getPending() == 0 && segments.size() == 1) {
+            // 全部投递完成，释放映射和文件
+            segments.pollFirst();
+            release(head);
+        }
+    }
+
+    /**
+     * 丢弃过期消息，全部过期的段直接删除，并将最后一个段的写入落盘
+     * 机器人长期不重连时由定期清理调用，避免过期数据一直占用磁盘和映射
+     * @param expireBefore 早于该时间写入的消息视为过期
+     * @return 丢弃的消息数量
+     */
+    synchronized long expire(long expireBefore) {
+        long expired = 0;
+        OfflineSegment head;
+        while ((head = segments.peekFirst()) != null && head.getLastWriteTime() < expireBefore) {
+            segments.pollFirst();
+            expired += head.getPending();
+            depth -= head.getPending();
+            release(head);
+        }
+        if (head != null) {
+            int pos;
+            while ((pos = head.peekPosition()) >= 0 && head.timestampAt(pos) < expireBefore) {
+                if (head.consume(pos)) {
+                    depth--;
+                    expired++;
+                }
+            }
+            segments.peekLast().flush();
+        }
+        return expired;
+    }
+
+    /**
+     * 队列为空时删除所有段并关闭，之后的写入返回 {@link #CLOSED}
+     * @return 是否已关闭
+     */
+    synchronized boolean closeIfEmpty() {
+        if (depth > 0) {
+            return false;
+        }
+        OfflineSegment segment;
+        while ((segment = segments.pollFirst()) != null) {
+            release(segment);
+        }
+        closed = true;
+        return true;
+    }
+
+    synchronized boolean isEmpty() {
+        return depth == 0;
+    }
+
+    synchronized long getDepth() {
+        return depth;
+    }
+
+    synchronized long getMappedBytes() {
+        return mappedBytes;
+    }
+
+    synchronized void flush() {
+        for (OfflineSegment segment : segments) {
+            segment.flush();
+        }
+    }
+
+    String getRobotId() {
+        return robotId;
+    }
+
+    /**
+     * 待投递的消息
+     */
+    static class Record {
+        private final OfflineSegment segment;
+        private final int position;
+        private final byte[] frame;
+
+        Record(OfflineSegment segment, int position, byte[] frame) {
+            this.segment = segment;
+            this.position = position;
+            this.frame = frame;
+        }
+
+        byte[] getFrame() {
+            return frame;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package cn.wildfirechat.app.gateway;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 离线消息段文件
+ * 固定大小、只追加、通过内存映射读写
+ *
+ * 记录格式：[int 长度][long 写入时间][消息字节]
+ * 长度为0表示段内数据结束，长度为负表示该记录已投递
+ */
+class OfflineSegment {
+    static final int HEADER_SIZE = 4 + 8;
+
+    private final File file;
+    private final long baseSeq;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    private int writePos;
+    private int readPos;
+    private int pending;
+    private int pendingBytes;
+    private long lastWriteTime;
+
+    /**
+     * 上次force之后是否有写入
+     */
+    private boolean dirty;
+
+    private OfflineSegment(File file, long baseSeq, MappedByteBuffer buffer) {
+        this.file = file;
+        this.baseSeq = baseSeq;
+        this.buffer = buffer;
+        this.capacity = buffer.capacity();
+    }
+
+    /**
+     * 创建新的段文件
+     */
+    static OfflineSegment create(File dir, long baseSeq, int size) throws IOException {
+        File file = new File(dir, String.format("%020d.seg", baseSeq));
+        return new OfflineSegment(file, baseSeq, map(file, size));
+    }
+
+    /**
+     * 打开已有的段文件，扫描恢复读写位置
+     */
+    static OfflineSegment open(File file, long baseSeq) throws IOException {
+        OfflineSegment segment = new OfflineSegment(file, baseSeq, map(file, (int) file.length()));
+        segment.recover();
+        return segment;
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private void recover() {
+        int pos = 0;
+        readPos = -1;
+        while (pos + HEADER_SIZE <= capacity) {
+            int len = buffer.getInt(pos);
+            if (len == 0) {
+                break;
+            }
+            int size = Math.abs(len);
+            if (pos + HEADER_SIZE + size > capacity) {
+                // 写入不完整的记录，截断
+                break;
+            }
+            if (len > 0) {
+                if (readPos < 0) {
+                    readPos = pos;
+                }
+                pending++;
+                pendingBytes += size;
+            }
+            lastWriteTime = buffer.getLong(pos + 4);
+            pos += HEADER_SIZE + size;
+        }
+        writePos = pos;
+        if (readPos < 0) {
+            readPos = writePos;
+        }
+    }
+
+    /**
+     * 追加一条记录
+     * @return 空间不足返回false
+     */
+    boolean append(byte[] data, long timestamp) {
+        if (writePos + HEADER_SIZE + data.length > capacity) {
+            return false;
+        }
+        int pos = writePos;
+        buffer.putLong(pos + 4, timestamp);
+        ByteBuffer view = buffer.duplicate();
+        view.position(pos + HEADER_SIZE);
+        view.put(data);
+        // 最后写入长度，保证记录完整后才对恢复过程可见
+        buffer.putInt(pos, data.length);
+        writePos = pos + HEADER_SIZE + data.length;
+        pending++;
+        pendingBytes += data.length;
+        lastWriteTime = timestamp;
+        dirty = true;
+        return true;
+    }
+
+    /**
+     * 跳过已投递的记录，返回下一条待投递记录的位置
+     * @return 没有待投递记录返回-1
+     */
+    int peekPosition() {
+        while (readPos < writePos) {
+            int len = buffer.getInt(readPos);
+            if (len > 0) {
+                return readPos;
+            }
+            readPos += HEADER_SIZE - len;
+        }
+        return -1;
+    }
+
+    long timestampAt(int pos) {
+        return buffer.getLong(pos + 4);
+    }
+
+    byte[] readAt(int pos) {
+        int len = buffer.getInt(pos);
+        byte[] data = new byte[len];
+        ByteBuffer view = buffer.duplicate();
+        view.position(pos + HEADER_SIZE);
+        view.get(data);
+        return data;
+    }
+
+    /**
+     * 标记记录已投递
+     * @return 记录此前是否未被消费；补发与过期清理可能先后消费同一条记录
+     */
+    boolean consume(int pos) {
+        int len = buffer.getInt(pos);
+        if (len <= 0) {
+            return false;
+        }
+        buffer.putInt(pos, -len);
+        pending--;
+        pendingBytes -= len;
+        if (pos == readPos) {
+            readPos += HEADER_SIZE + len;
+        }
+        return true;
+    }
+
+    /**
+     * 剩余空间是否还能容纳指定大小的消息
+     */
+    boolean hasRoom(int dataLength) {
+        return writePos + HEADER_SIZE + dataLength <= capacity;
+    }
+
+    int getPending() {
+        return pending;
+    }
+
+    int getPendingBytes() {
+        return pendingBytes;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    long getBaseSeq() {
+        return baseSeq;
+    }
+
+    long getLastWriteTime() {
+        return lastWriteTime;
+    }
+
+    void flush() {
+        if (dirty) {
+            buffer.force();
+            dirty = false;
+        }
+    }
+
+    /**
+     * 释放映射并删除段文件，之后不得再访问该段
+     */
+    void delete() {
+        unmap(buffer);
+        if (!file.delete() && file.exists()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * 立即释放映射，不等缓冲区被GC回收
+     * JDK 9+ 使用Unsafe.invokeCleaner，JDK 8 使用DirectByteBuffer.cleaner()，都不可用时等待GC
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner;
+            try {
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (NoSuchMethodException e) {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+                return;
+            }
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // 映射在缓冲区被回收后释放
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package cn.wildfirechat.app.gateway;
+
+import cn.wildfirechat.app.config.OutboundConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.Session;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 会话发送队列
+ * 所有发往同一会话的消息先入队，再由单个写任务按顺序写出，
+ * 避免多线程并发写同一会话，慢客户端也不会阻塞业务线程
+ */
+class OutboundQueue {
+    private static final Logger LOG = LoggerFactory.getLogger(OutboundQueue.class);
+
+    private final WebSocketSession session;
+    private final Executor writer;
+    private final int maxMessages;
+    private final long maxBytes;
+    private final OutboundConfig.OverflowPolicy policy;
+
+    private final Deque<Frame> queue = new ArrayDeque<>();
+    private long bufferedBytes;
+    private boolean writing;
+    private CloseStatus pendingClose;
+    private boolean closed;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * 写线程一次最多取出的消息数
+     */
+    private static final int MAX_BATCH = 64;
+
+    OutboundQueue(WebSocketSession session, Executor writer, OutboundConfig config) {
+        this.session = session;
+        this.writer = writer;
+        this.maxMessages = config.getMaxBufferedMessages();
+        this.maxBytes = config.getMaxBufferedBytes();
+        this.policy = config.getOverflowPolicy();
+    }
+
+    /**
+     * 消息入队
+     * @param droppable 是否为可丢弃的推送帧；RPC响应等不可丢弃的帧丢失后客户端的请求永远不会完成
+     * @return 是否入队成功
+     */
+    boolean send(WebSocketMessage<?> message, boolean droppable) {
+        synchronized (this) {
+            Boolean enqueued = enqueueLocked(message, droppable);
+            if (enqueued != null) {
+                return enqueued && scheduleLocked();
+            }
+        }
+        disconnectSlowConsumer();
+        return false;
+    }
+
+    /**
+     * 多条推送帧一起入队，写线程可以一次写出
+     * 溢出处理与逐条调用 {@link #send} 相同，遇到第一条未入队的消息时停止
+     * @return 从头开始入队成功的消息数
+     */
+    int sendAll(List<? extends WebSocketMessage<?>> messages) {
+        synchronized (this) {
+            int count = 0;
+            boolean disconnect = false;
+            for (WebSocketMessage<?> message : messages) {
+                Boolean enqueued = enqueueLocked(message, true);
+                if (enqueued == null) {
+                    disconnect = true;
+                    break;
+                }
+                if (!enqueued) {
+                    break;
+                }
+                count++;
+            }
+            if (!disconnect) {
+                // 调度失败时最后一条消息已被移除
+                return count == 0 || scheduleLocked() ? count : count - 1;
+            }
+        }
+        disconnectSlowConsumer();
+        return 0;
+    }
+
+    /**
+     * 按溢出策略入队
+     * DROP_OLDEST只丢弃推送帧：放不下时先丢弃最旧的推送帧，仍放不下时新的推送帧被丢弃，
+     * 不可丢弃的帧按DISCONNECT处理；DROP_NEW对不可丢弃的帧同样按DISCONNECT处理
+     * @return 是否入队；需要断开连接时返回null，队列已清空，调用方在锁外关闭会话
+     */
+    private Boolean enqueueLocked(WebSocketMessage<?> message, boolean droppable) {
+        int size = message.getPayloadLength();
+        if (closed || pendingClose != null) {
+            return false;
+        }
+        if (!fits(size)) {
+            switch (policy) {
+                case DROP_NEW:
+                    if (droppable) {
+                        droppedCount.incrementAndGet();
+                        return false;
+                    }
+                    return disconnectLocked();
+                case DISCONNECT:
+                    return disconnectLocked();
+                case DROP_OLDEST:
+                default:
+                    Iterator<Frame> it = queue.iterator();
+                    while (!fits(size) && it.hasNext()) {
+                        Frame frame = it.next();
+                        if (frame.droppable) {
+                            it.remove();
+                            bufferedBytes -= frame.message.getPayloadLength();
+                            droppedCount.incrementAndGet();
+                        }
+                    }
+                    if (!fits(size)) {
+                        if (droppable) {
+                            droppedCount.incrementAndGet();
+                            return false;
+                        }
+                        return disconnectLocked();
+                    }
+                    break;
+            }
+        }
+        queue.addLast(new Frame(message, droppable));
+        bufferedBytes += size;
+        return true;
+    }
+
+    private boolean fits(int size) {
+        return queue.size() + 1 <= maxMessages && bufferedBytes + size <= maxBytes;
+    }
+
+    private Boolean disconnectLocked() {
+        droppedCount.addAndGet(queue.size() + 1);
+        discardLocked();
+        return null;
+    }
+
+    private void disconnectSlowConsumer() {
+        LOG.warn("Session {} outbound buffer overflow, disconnecting slow consumer", session.getId());
+        closeQuietly(CloseStatus.SESSION_NOT_RELIABLE.withReason("Outbound buffer overflow"));
+    }
+
+    /**
+     * 发送完已入队的消息后关闭会话
+     */
+    void close(CloseStatus status) {
+        synchronized (this) {
+            if (closed || pendingClose != null) {
+                return;
+            }
+            if (!queue.isEmpty() || writing) {
+                pendingClose = status;
+                return;
+            }
+            closed = true;
+        }
+        closeQuietly(status);
+    }
+
+    /**
+     * 会话已移除，丢弃未发送的消息
+     */
+    synchronized void discard() {
+        discardLocked();
+    }
+
+    private void discardLocked() {
+        closed = true;
+        queue.clear();
+        bufferedBytes = 0;
+    }
+
+    private boolean scheduleLocked() {
+        if (writing) {
+            return true;
+        }
+        writing = true;
+        try {
+            writer.execute(this::drain);
+            return true;
+        } catch (RejectedExecutionException e) {
+            writing = false;
+            bufferedBytes -= queue.pollLast().message.getPayloadLength();
+            droppedCount.incrementAndGet();
+            LOG.error("Outbound writer rejected session {}", session.getId());
+            return false;
+        }
+    }
+
+    /**
+     * 每次取出队列中已有的消息（最多MAX_BATCH条）一起写出
+     */
+    private void drain() {
+        List<WebSocketMessage<?>> batch = new ArrayList<>();
+        while (true) {
+            CloseStatus close = null;
+            synchronized (this) {
+                Frame frame;
+                while (batch.size() < MAX_BATCH && (frame = queue.pollFirst()) != null) {
+                    bufferedBytes -= frame.message.getPayloadLength();
+                    batch.add(frame.message);
+                }
+                if (batch.isEmpty()) {
+                    writing = false;
+                    if (pendingClose != null) {
+                        close = pendingClose;
+                        pendingClose = null;
+                        closed = true;
+                    }
+                }
+            }
+            if (batch.isEmpty()) {
+                if (close != null) {
+                    closeQuietly(close);
+                }
+                return;
+            }
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * 多条消息时开启容器的批量发送，帧先写入发送缓冲，最后一次刷出，减少写socket的次数
+     */
+    private void write(List<WebSocketMessage<?>> batch) {
+        if (!session.isOpen()) {
+            return;
+        }
+        RemoteEndpoint.Basic remote = batch.size() > 1 ? basicRemote() : null;
+        try {
+            if (remote != null) {
+                remote.setBatchingAllowed(true);
+            }
+            for (WebSocketMessage<?> message : batch) {
+                try {
+                    session.sendMessage(message);
+                } catch (IOException | RuntimeException e) {
+                    LOG.error("Failed to send message to session {}: {}", session.getId(), e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            LOG.error("Failed to enable batching for session {}: {}", session.getId(), e.getMessage());
+        } finally {
+            if (remote != null) {
+                try {
+                    remote.flushBatch();
+                    remote.setBatchingAllowed(false);
+                } catch (IOException | RuntimeException e) {
+                    LOG.error("Failed to flush messages to session {}: {}", session.getId(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    private RemoteEndpoint.Basic basicRemote() {
+        if (session instanceof NativeWebSocketSession) {
+            Session nativeSession = ((NativeWebSocketSession) session).getNativeSession(Session.class);
+            if (nativeSession != null && nativeSession.isOpen()) {
+                return nativeSession.getBasicRemote();
+            }
+        }
+        return null;
+    }
+
+    private void closeQuietly(CloseStatus status) {
+        try {
+            if (session.isOpen()) {
+                session.close(status);
+            }
+        } catch (IOException e) {
+            LOG.error("Failed to close session {}: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    synchronized int getBufferedMessages() {
+        return queue.size();
+    }
+
+    synchronized long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * 队列中的帧
+     */
+    private static final class Frame {
+        private final WebSocketMessage<?> message;
+
+        /**
+         * 推送帧可以在溢出时丢弃
+         */
+        private final boolean droppable;
+
+        Frame(WebSocketMessage<?> message, boolean droppable) {
+            this.message = message;
+            this.droppable = droppable;
+        }
+    }
+}
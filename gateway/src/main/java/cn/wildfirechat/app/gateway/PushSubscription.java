@@ -0,0 +1,106 @@
+package cn.wildfirechat.app.gateway;
+
+import cn.wildfirechat.app.protocol.PushFilter;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 校验后的推送订阅条件，不可变，由同一机器人的会话共享
+ * 会话类型编译为位图，发送者白名单编译为HashSet，每条消息的判断不分配对象
+ */
+public final class PushSubscription {
+
+    /**
+     * 支持的最大会话类型
+     */
+    private static final int MAX_CONV_TYPE = 63;
+
+    /**
+     * 允许的会话类型位图，-1表示不限制
+     */
+    private final long convTypes;
+    private final int minPayloadType;
+    private final int maxPayloadType;
+    private final boolean mentionsOnly;
+
+    /**
+     * 发送者白名单，null表示不限制
+     */
+    private final Set<String> senders;
+
+    private PushSubscription(long convTypes, int minPayloadType, int maxPayloadType, boolean mentionsOnly, Set<String> senders) {
+        this.convTypes = convTypes;
+        this.minPayloadType = minPayloadType;
+        this.maxPayloadType = maxPayloadType;
+        this.mentionsOnly = mentionsOnly;
+        this.senders = senders;
+    }
+
+    /**
+     * 校验客户端声明的订阅条件
+     * @return 没有任何条件时返回null，表示推送所有消息
+     * @throws IllegalArgumentException 条件无效
+     */
+    public static PushSubscription of(PushFilter filter) {
+        if (filter == null) {
+            return null;
+        }
+        long convTypes = -1L;
+        if (filter.getConvTypes() != null && !filter.getConvTypes().isEmpty()) {
+            convTypes = 0;
+            for (Integer type : filter.getConvTypes()) {
+                if (type == null || type < 0 || type > MAX_CONV_TYPE) {
+                    throw new IllegalArgumentException("Invalid conversation type: " + type);
+                }
+                convTypes |= 1L << type;
+            }
+        }
+        int minPayloadType = filter.getMinPayloadType() != null ? filter.getMinPayloadType() : Integer.MIN_VALUE;
+        int maxPayloadType = filter.getMaxPayloadType() != null ? filter.getMaxPayloadType() : Integer.MAX_VALUE;
+        if (minPayloadType > maxPayloadType) {
+            throw new IllegalArgumentException("Invalid payload type range: " + minPayloadType + " > " + maxPayloadType);
+        }
+        boolean mentionsOnly = Boolean.TRUE.equals(filter.getMentionsOnly());
+        Set<String> senders = null;
+        if (filter.getSenders() != null && !filter.getSenders().isEmpty()) {
+            senders = Collections.unmodifiableSet(new HashSet<>(filter.getSenders()));
+        }
+
+        if (convTypes == -1L && minPayloadType == Integer.MIN_VALUE && maxPayloadType == Integer.MAX_VALUE
+                && !mentionsOnly && senders == null) {
+            return null;
+        }
+        return new PushSubscription(convTypes, minPayloadType, maxPayloadType, mentionsOnly, senders);
+    }
+
+    /**
+     * 消息是否满足订阅条件
+     * @param mentioned 消息是否@了该机器人或@所有人，见 {@link #isMentioned}
+     */
+    public boolean accepts(int convType, int payloadType, boolean mentioned, String sender) {
+        if (convType < 0 || convType > MAX_CONV_TYPE ? convTypes != -1L : (convTypes & 1L << convType) == 0) {
+            return false;
+        }
+        if (payloadType < minPayloadType || payloadType > maxPayloadType) {
+            return false;
+        }
+        // 单聊消息本身就是发给机器人的
+        if (mentionsOnly && convType != 0 && !mentioned) {
+            return false;
+        }
+        return senders == null || senders.contains(sender);
+    }
+
+    /**
+     * 消息是否@了机器人：@所有人，或@部分成员且包含该机器人
+     */
+    public static boolean isMentioned(String robotId, int mentionedType, List<String> mentionedTarget) {
+        if (mentionedType == 2) {
+            return true;
+        }
+        return mentionedType == 1 && mentionedTarget != null && mentionedTarget.contains(robotId);
+    }
+}
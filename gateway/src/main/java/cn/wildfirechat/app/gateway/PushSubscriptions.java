@@ -0,0 +1,117 @@
+package cn.wildfirechat.app.gateway;
+
+import cn.wildfirechat.app.protocol.MessageRoute;
+import cn.wildfirechat.app.protocol.PushFilter;
+import cn.wildfirechat.pojos.MessagePayload;
+import cn.wildfirechat.pojos.OutputMessageData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 客户端声明的推送订阅
+ * 客户端在鉴权消息的subscription字段或subscribe请求中声明订阅条件，网关在序列化之前过滤掉不满足条件的消息，
+ * 不必推送给客户端后再由客户端丢弃。订阅属于机器人，机器人所有会话断开后失效，重连时重新声明
+ */
+@Component
+public class PushSubscriptions {
+    private static final Logger LOG = LoggerFactory.getLogger(PushSubscriptions.class);
+
+    /**
+     * 设置订阅的请求方法名
+     */
+    public static final String SUBSCRIBE_METHOD = "subscribe";
+
+    @Autowired
+    private SessionManager sessionManager;
+
+    private final AtomicLong filteredFrames = new AtomicLong();
+    private final AtomicLong filteredBytes = new AtomicLong();
+
+    /**
+     * 设置机器人的推送订阅
+     * @param filter 为null时取消订阅，推送所有消息
+     * @return 机器人没有已鉴权的会话时返回false
+     * @throws IllegalArgumentException 订阅条件无效
+     */
+    public boolean subscribe(String robotId, PushFilter filter) {
+        return subscribe(robotId, PushSubscription.of(filter));
+    }
+
+    /**
+     * 设置已校验的订阅，见 {@link PushSubscription#of}
+     */
+    public boolean subscribe(String robotId, PushSubscription subscription) {
+        boolean set = sessionManager.setSubscription(robotId, subscription);
+        if (set) {
+            LOG.info("Robot {} {}", robotId, subscription != null ? "subscribed with push filter" : "cleared push filter");
+        }
+        return set;
+    }
+
+    /**
+     * IM回调的消息是否推送给机器人，在序列化之前调用
+     * 消息体大小未知，只计入过滤的帧数
+     */
+    public boolean accepts(String robotId, OutputMessageData messageData) {
+        PushSubscription subscription = sessionManager.getSubscription(robotId);
+        if (subscription == null) {
+            return true;
+        }
+        MessagePayload payload = messageData.getPayload();
+        boolean mentioned = payload != null
+                && PushSubscription.isMentioned(robotId, payload.getMentionedType(), payload.getMentionedTarget());
+        boolean accepted = subscription.accepts(messageData.getConv() != null ? messageData.getConv().getType() : 0,
+                payload != null ? payload.getType() : 0, mentioned, messageData.getSender());
+        if (!accepted) {
+            recordFiltered(0);
+        }
+        return accepted;
+    }
+
+    /**
+     * 透传的消息或离线补发的帧是否推送给机器人
+     * @param bytes 不再推送的消息体或帧的字节数
+     */
+    public boolean accepts(String robotId, MessageRoute route, int bytes) {
+        PushSubscription subscription = sessionManager.getSubscription(robotId);
+        if (subscription == null) {
+            return true;
+        }
+        boolean mentioned = PushSubscription.isMentioned(robotId, route.getMentionedType(), route.getMentionedTarget());
+        boolean accepted = subscription.accepts(route.getConvType(), route.getPayloadType(), mentioned, route.getSender());
+        if (!accepted) {
+            recordFiltered(bytes);
+        }
+        return accepted;
+    }
+
+    private void recordFiltered(int bytes) {
+        filteredFrames.incrementAndGet();
+        filteredBytes.addAndGet(bytes);
+    }
+
+    /**
+     * 设置了订阅的机器人数量
+     */
+    public int getSubscribedRobotCount() {
+        return sessionManager.getSubscribedRobotCount();
+    }
+
+    /**
+     * 过滤掉、不再推送的消息数
+     */
+    public long getFilteredFrames() {
+        return filteredFrames.get();
+    }
+
+    /**
+     * 过滤掉的消息体字节数，只统计透传模式和离线补发的消息
+     */
+    public long getFilteredBytes() {
+        return filteredBytes.get();
+    }
+}
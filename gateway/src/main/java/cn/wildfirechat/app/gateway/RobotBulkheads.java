@@ -0,0 +1,186 @@
+package cn.wildfirechat.app.gateway;
+
+import cn.wildfirechat.app.config.BulkheadConfig;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按机器人隔离的请求和推送限制
+ * RPC请求在进入请求线程池之前取得许可，超过该机器人的并发上限或速率时立即拒绝；
+ * 推送超过该机器人的字节速率时由调用方转入离线队列，按补发速率发送；离线队列未启用时调用方不限制推送
+ */
+@Component
+public class RobotBulkheads {
+
+    /**
+     * 超过机器人的并发上限或请求速率时返回的错误码，IM服务整体过载时返回的是 {@link ImConcurrencyLimiter#OVERLOADED_CODE}
+     */
+    public static final int REJECTED_CODE = 429;
+
+    public static final String REJECTED_MSG = "Too many requests, please retry later";
+
+    @Autowired
+    private BulkheadConfig bulkheadConfig;
+
+    /**
+     * key: robotId
+     */
+    private final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+
+    /**
+     * 取得一次RPC请求的许可
+     * @param cost 消耗的令牌数，批量请求为子请求数
+     * @return 超过限制时返回null
+     */
+    public Permit tryAcquireRpc(String robotId, int cost) {
+        if (!bulkheadConfig.isEnabled() || robotId == null) {
+            return Permit.NONE;
+        }
+        Bulkhead bulkhead = bulkheadOf(robotId);
+        int maxInflight = bulkhead.maxInflight;
+        while (true) {
+            int current = bulkhead.inflight.get();
+            if (maxInflight > 0 && current >= maxInflight) {
+                bulkhead.inflightRejected.incrementAndGet();
+                return null;
+            }
+            if (bulkhead.inflight.compareAndSet(current, current + 1)) {
+                break;
+            }
+        }
+        if (bulkhead.rpcBucket != null && !bulkhead.rpcBucket.tryTake(cost)) {
+            bulkhead.inflight.decrementAndGet();
+            bulkhead.rateRejected.incrementAndGet();
+            return null;
+        }
+        return new Permit(bulkhead);
+    }
+
+    /**
+     * 推送一帧前调用
+     * @return 是否在该机器人的推送速率之内
+     */
+    public boolean tryPush(String robotId, int bytes) {
+        if (!bulkheadConfig.isEnabled() || robotId == null) {
+            return true;
+        }
+        Bulkhead bulkhead = bulkheadOf(robotId);
+        if (bulkhead.pushBucket == null || bulkhead.pushBucket.tryTake(bytes)) {
+            return true;
+        }
+        bulkhead.pushThrottled.incrementAndGet();
+        bulkhead.pushThrottledBytes.addAndGet(bytes);
+        return false;
+    }
+
+    private Bulkhead bulkheadOf(String robotId) {
+        Bulkhead bulkhead = bulkheads.get(robotId);
+        return bulkhead != null ? bulkhead : bulkheads.computeIfAbsent(robotId, this::newBulkhead);
+    }
+
+    private Bulkhead newBulkhead(String robotId) {
+        BulkheadConfig.Limits limits = bulkheadConfig.getRobots().get(robotId);
+        if (limits == null) {
+            limits = new BulkheadConfig.Limits();
+        }
+        int maxInflight = limits.getMaxInflight() != null ? limits.getMaxInflight() : bulkheadConfig.getMaxInflight();
+        double rpcRate = limits.getRpcRate() != null ? limits.getRpcRate() : bulkheadConfig.getRpcRate();
+        int rpcBurst = limits.getRpcBurst() != null ? limits.getRpcBurst() : bulkheadConfig.getRpcBurst();
+        long pushBytesRate = limits.getPushBytesRate() != null ? limits.getPushBytesRate() : bulkheadConfig.getPushBytesRate();
+        long pushBytesBurst = limits.getPushBytesBurst() != null ? limits.getPushBytesBurst() : bulkheadConfig.getPushBytesBurst();
+        return new Bulkhead(maxInflight,
+                rpcRate > 0 ? new TokenBucket(rpcRate, rpcBurst) : null,
+                pushBytesRate > 0 ? new TokenBucket(pushBytesRate, pushBytesBurst) : null);
+    }
+
+    /**
+     * 按机器人统计进行中的请求数和拒绝数
+     * key: robotId
+     */
+    public Map<String, Map<String, Long>> getStatsByRobot() {
+        Map<String, Map<String, Long>> stats = new HashMap<>();
+        for (Map.Entry<String, Bulkhead> entry : bulkheads.entrySet()) {
+            Bulkhead bulkhead = entry.getValue();
+            Map<String, Long> robot = new HashMap<>();
+            robot.put("inflight", (long) bulkhead.inflight.get());
+            robot.put("inflightRejected", bulkhead.inflightRejected.get());
+            robot.put("rateRejected", bulkhead.rateRejected.get());
+            robot.put("pushThrottled", bulkhead.pushThrottled.get());
+            robot.put("pushThrottledBytes", bulkhead.pushThrottledBytes.get());
+            stats.put(entry.getKey(), robot);
+        }
+        return stats;
+    }
+
+    /**
+     * 一次RPC请求的许可，请求完成（响应已发送或失败）后释放一次
+     */
+    public static class Permit {
+        static final Permit NONE = new Permit(null);
+
+        private final Bulkhead bulkhead;
+
+        private Permit(Bulkhead bulkhead) {
+            this.bulkhead = bulkhead;
+        }
+
+        public void release() {
+            if (bulkhead != null) {
+                bulkhead.inflight.decrementAndGet();
+            }
+        }
+    }
+
+    private static class Bulkhead {
+        private final int maxInflight;
+        private final TokenBucket rpcBucket;
+        private final TokenBucket pushBucket;
+        private final AtomicInteger inflight = new AtomicInteger();
+        private final AtomicLong inflightRejected = new AtomicLong();
+        private final AtomicLong rateRejected = new AtomicLong();
+        private final AtomicLong pushThrottled = new AtomicLong();
+        private final AtomicLong pushThrottledBytes = new AtomicLong();
+
+        Bulkhead(int maxInflight, TokenBucket rpcBucket, TokenBucket pushBucket) {
+            this.maxInflight = maxInflight;
+            this.rpcBucket = rpcBucket;
+            this.pushBucket = pushBucket;
+        }
+    }
+
+    /**
+     * 令牌桶，按经过的时间补充令牌，最多积累到容量
+     * 单次消耗超过容量时按容量计算，避免大批量请求永远无法通过
+     */
+    private static class TokenBucket {
+        private final double ratePerNano;
+        private final double capacity;
+        private double tokens;
+        private long refilledAt = System.nanoTime();
+
+        TokenBucket(double ratePerSecond, double capacity) {
+            this.ratePerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = Math.max(1, capacity);
+            this.tokens = this.capacity;
+        }
+
+        synchronized boolean tryTake(double cost) {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * ratePerNano);
+            refilledAt = now;
+            cost = Math.min(cost, capacity);
+            if (tokens < cost) {
+                return false;
+            }
+            tokens -= cost;
+            return true;
+        }
+    }
+}
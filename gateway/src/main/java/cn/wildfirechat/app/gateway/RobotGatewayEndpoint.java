@@ -1,20 +1,31 @@
 package cn.wildfirechat.app.gateway;
 
+import cn.wildfirechat.app.KeyedExecutor;
 import cn.wildfirechat.app.protocol.ConnectMessage;
+import cn.wildfirechat.app.protocol.InboundFrame;
+import cn.wildfirechat.app.protocol.ProtobufEnvelope;
 import cn.wildfirechat.app.protocol.RequestMessage;
 import cn.wildfirechat.app.protocol.ResponseMessage;
-import com.google.gson.Gson;
-import com.google.gson.JsonSyntaxException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PongMessage;
 import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
 /**
  * 机器人网关WebSocket端点
  * 处理客户端的WebSocket连接、鉴权和消息
@@ -33,7 +44,31 @@ public class RobotGatewayEndpoint extends TextWebSocketHandler {
     @Autowired
     private AuthHandler authHandler;
 
-    private final Gson gson = new Gson();
+    @Autowired
+    private OfflineMessageStore offlineMessageStore;
+
+    @Autowired
+    private FrameCompressor frameCompressor;
+
+    @Autowired
+    private RobotBulkheads bulkheads;
+
+    @Autowired
+    private PushSubscriptions subscriptions;
+
+    /**
+     * 是否允许客户端在鉴权时协商protobuf帧格式
+     */
+    @Value("${gateway.protobuf.enabled:true}")
+    private boolean protobufEnabled;
+
+    @Autowired
+    @Qualifier("authExecutor")
+    private Executor authExecutor;
+
+    @Autowired
+    @Qualifier("requestKeyedExecutor")
+    private KeyedExecutor requestKeyedExecutor;
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
@@ -43,17 +78,91 @@ public class RobotGatewayEndpoint extends TextWebSocketHandler {
     }
 
     @Override
-    @Async("asyncExecutor") // 使用异步线程池处理消息
     protected void handleTextMessage(WebSocketSession session, TextMessage message) {
         String payload = message.getPayload();
+        LOG.debug("Received message from {}: {}", session.getId(), payload);
+        InboundFrame frame;
+        try {
+            frame = InboundFrame.parse(payload);
+        } catch (IOException e) {
+            LOG.error("Failed to parse message: {}", e.getMessage());
+            sessionManager.updateHeartbeatTime(session.getId());
+            sessionManager.sendMessage(session, ConnectMessage.error(400, "Invalid JSON format: " + e.getMessage()));
+            return;
+        }
+        handleFrame(session, frame);
+    }
+
+    /**
+     * 二进制帧：协商protobuf格式后为信封（可能被压缩），只协商压缩时为压缩后的JSON
+     */
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
+        String sessionId = session.getId();
+        boolean protobuf = sessionManager.isProtobuf(sessionId);
+        boolean compression = sessionManager.isCompression(sessionId);
+        if (!protobuf && !compression) {
+            sessionManager.closeSession(session, CloseStatus.NOT_ACCEPTABLE.withReason("Binary messages not supported"));
+            return;
+        }
+
+        byte[] data = toArray(message.getPayload());
+        if (!protobuf || !ProtobufEnvelope.isEnvelope(data)) {
+            if (!compression) {
+                sessionManager.closeSession(session, CloseStatus.BAD_DATA.withReason("Invalid envelope"));
+                return;
+            }
+            try {
+                data = frameCompressor.inflate(ByteBuffer.wrap(data));
+            } catch (IOException e) {
+                LOG.error("Failed to inflate frame from session {}: {}", sessionId, e.getMessage());
+                sessionManager.closeSession(session, CloseStatus.BAD_DATA.withReason("Invalid compressed frame"));
+                return;
+            }
+        }
+
+        InboundFrame frame;
+        try {
+            frame = protobuf ? InboundFrame.parse(data) : InboundFrame.parse(new String(data, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            LOG.error("Failed to parse binary frame from session {}: {}", sessionId, e.getMessage());
+            sessionManager.updateHeartbeatTime(sessionId);
+            sessionManager.sendMessage(session, ConnectMessage.error(400, "Invalid frame: " + e.getMessage()));
+            return;
+        }
+        handleFrame(session, frame);
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        byte[] data = new byte[buffer.remaining()];
+        buffer.duplicate().get(data);
+        return data;
+    }
+
+    /**
+     * 在WebSocket接收线程上完成校验，鉴权和RPC请求分别交给独立的线程池处理
+     */
+    private void handleFrame(WebSocketSession session, InboundFrame frame) {
         String sessionId = session.getId();
-        LOG.debug("Received message from {}: {}", sessionId, payload);
+
+        // 任何入站帧都视为活跃
+        sessionManager.updateHeartbeatTime(sessionId);
 
         try {
-            // 尝试解析为鉴权消息
-            ConnectMessage connectMsg = parseConnectMessage(payload);
-            if (connectMsg != null) {
-                handleConnectMessage(session, connectMsg);
+            // 一次解析区分鉴权、心跳和RPC请求
+            InboundFrame.Kind kind = frame.getKind();
+
+            if (kind == InboundFrame.Kind.CONNECT) {
+                ConnectMessage connectMsg = frame.toConnectMessage();
+                try {
+                    authExecutor.execute(() -> handleConnectMessage(session, connectMsg));
+                } catch (RejectedExecutionException e) {
+                    sessionManager.sendMessage(session, ConnectMessage.error(503, "Server busy, please retry later"));
+                }
                 return;
             }
 
@@ -61,15 +170,12 @@ public class RobotGatewayEndpoint extends TextWebSocketHandler {
             if (!sessionManager.isAuthenticated(sessionId)) {
                 ConnectMessage error = ConnectMessage.error(401, "Not authenticated. Please send connect message first.");
                 sessionManager.sendMessage(session, error);
-                session.close(CloseStatus.NOT_ACCEPTABLE.withReason("Not authenticated"));
+                sessionManager.closeSession(session, CloseStatus.NOT_ACCEPTABLE.withReason("Not authenticated"));
                 return;
             }
 
-            // 解析为普通请求
-            RequestMessage request = gson.fromJson(payload, RequestMessage.class);
-
             // 验证请求格式
-            if (request.getRequestId() == null || request.getMethod() == null) {
+            if (frame.getRequestId() == null || frame.getMethod() == null) {
                 ResponseMessage error = ResponseMessage.error(
                         null,
                         400,
@@ -80,22 +186,33 @@ public class RobotGatewayEndpoint extends TextWebSocketHandler {
             }
 
             // 检查是否为心跳消息
-            if ("heartbeat".equals(request.getMethod())) {
-                handleHeartbeat(session, request);
+            if (kind == InboundFrame.Kind.HEARTBEAT) {
+                handleHeartbeat(session, frame.getRequestId());
                 return;
             }
 
-            // 处理请求
-            ResponseMessage response = robotProxy.handleRequest(session, request);
-            response.setRequestId(request.getRequestId());
-
-            // 发送响应
-            sessionManager.sendMessage(session, response);
+            // 处理请求，先取得该机器人的许可，超出限制时不进入请求线程池
+            RequestMessage request = frame.toRequestMessage();
+            RobotBulkheads.Permit permit = bulkheads.tryAcquireRpc(sessionManager.getRobotId(sessionId), requestCost(request));
+            if (permit == null) {
+                sessionManager.sendMessage(session, ResponseMessage.error(request.getRequestId(),
+                        RobotBulkheads.REJECTED_CODE, RobotBulkheads.REJECTED_MSG));
+                return;
+            }
+            try {
+                requestKeyedExecutor.executeAsync(orderingKey(session, request), () -> {
+                    CompletableFuture<?> pending = handleRequest(session, request);
+                    if (pending == null) {
+                        permit.release();
+                        return null;
+                    }
+                    return pending.whenComplete((result, e) -> permit.release());
+                });
+            } catch (RejectedExecutionException e) {
+                permit.release();
+                sessionManager.sendMessage(session, ResponseMessage.error(request.getRequestId(), 503, "Server busy, please retry later"));
+            }
 
-        } catch (JsonSyntaxException e) {
-            LOG.error("Failed to parse message: {}", e.getMessage());
-            ConnectMessage error = ConnectMessage.error(400, "Invalid JSON format: " + e.getMessage());
-            sessionManager.sendMessage(session, error);
         } catch (Exception e) {
             LOG.error("Failed to handle message: {}", e.getMessage(), e);
             ConnectMessage error = ConnectMessage.error(500, "Internal server error: " + e.getMessage());
@@ -104,16 +221,45 @@ public class RobotGatewayEndpoint extends TextWebSocketHandler {
     }
 
     /**
-     * 尝试解析为鉴权消息
+     * 请求顺序key：同一会话中针对同一目标会话（参数中的Conversation）的请求按顺序执行，
+     * 不涉及会话的请求不保证顺序
      */
-    private ConnectMessage parseConnectMessage(String payload) {
+    private static String orderingKey(WebSocketSession session, RequestMessage request) {
+        String conversation = RobotProxy.conversationKey(request.getParams());
+        return conversation != null ? session.getId() + '|' + conversation : null;
+    }
+
+    /**
+     * 请求消耗的速率令牌数，批量请求按子请求数计算
+     */
+    private static int requestCost(RequestMessage request) {
+        if (RobotProxy.BATCH_METHOD.equals(request.getMethod()) && request.getParams() != null) {
+            return Math.max(1, request.getParams().size());
+        }
+        return 1;
+    }
+
+    /**
+     * 处理RPC请求并发送响应
+     * @return 非阻塞调用时返回IM调用完成的future，同步处理时返回null
+     */
+    private CompletableFuture<?> handleRequest(WebSocketSession session, RequestMessage request) {
         try {
-            // 检查是否包含type字段且为"connect"
-            if (payload.contains("\"type\"") && payload.contains("\"connect\"")) {
-                return gson.fromJson(payload, ConnectMessage.class);
+            // 已支持的方法不阻塞线程，IM调用完成后发送响应
+            CompletableFuture<ResponseMessage> pending = robotProxy.handleRequestAsync(session, request);
+            if (pending != null) {
+                return pending.thenAccept(response -> {
+                    response.setRequestId(request.getRequestId());
+                    sessionManager.sendMessage(session, response);
+                });
             }
-        } catch (JsonSyntaxException e) {
-            // 不是鉴权消息
+
+            ResponseMessage response = robotProxy.handleRequest(session, request);
+            response.setRequestId(request.getRequestId());
+            sessionManager.sendMessage(session, response);
+        } catch (Exception e) {
+            LOG.error("Failed to handle request {}: {}", request.getRequestId(), e.getMessage(), e);
+            sessionManager.sendMessage(session, ResponseMessage.error(request.getRequestId(), 500, "Internal server error: " + e.getMessage()));
         }
         return null;
     }
@@ -135,15 +281,48 @@ public class RobotGatewayEndpoint extends TextWebSocketHandler {
             return;
         }
 
+        // 订阅条件无效时不鉴权
+        PushSubscription subscription;
+        try {
+            subscription = PushSubscription.of(connectMsg.getSubscription());
+        } catch (IllegalArgumentException e) {
+            sessionManager.sendMessage(session, ConnectMessage.error(400, "Invalid subscription: " + e.getMessage()));
+            return;
+        }
+
         // 验证凭据
         AuthHandler.AuthResult result = authHandler.authenticateWithResult(robotId, secret);
 
         if (result.isSuccess()) {
             // 鉴权成功
-            sessionManager.authenticateSession(sessionId, robotId, result.getRobotService());
+            if (!sessionManager.authenticateSession(sessionId, robotId, result.getRobotService())) {
+                return;
+            }
+            // 客户端收到鉴权响应时订阅已生效，之后补发的离线消息同样按订阅过滤
+            if (subscription != null) {
+                subscriptions.subscribe(robotId, subscription);
+            }
             ConnectMessage success = ConnectMessage.success();
+            boolean compress = Boolean.TRUE.equals(connectMsg.getCompress()) && frameCompressor.isEnabled();
+            if (compress) {
+                success.setCompress(true);
+            }
+            boolean protobuf = protobufEnabled && "protobuf".equals(connectMsg.getFormat());
+            if (protobuf) {
+                success.setFormat("protobuf");
+            }
+            // 先启用再回复，客户端收到响应后立即按协商结果发送的帧都能被识别；鉴权响应本身仍是JSON文本帧
+            if (compress) {
+                sessionManager.enableCompression(sessionId);
+            }
+            if (protobuf) {
+                sessionManager.enableProtobuf(sessionId);
+            }
             sessionManager.sendMessage(session, success);
-            LOG.info("Session {} authenticated as robot {}", sessionId, robotId);
+            LOG.info("Session {} authenticated as robot {}, format {}", sessionId, robotId, protobuf ? "protobuf" : "json");
+
+            // 补发离线期间缓存的消息
+            offlineMessageStore.replay(robotId);
         } else {
             // 鉴权失败
             ConnectMessage error = ConnectMessage.error(result.getCode(), result.getMsg());
@@ -152,18 +331,24 @@ public class RobotGatewayEndpoint extends TextWebSocketHandler {
         }
     }
 
+    /**
+     * 客户端对网关ping的回复，比JSON心跳开销更小的存活信号
+     */
+    @Override
+    protected void handlePongMessage(WebSocketSession session, PongMessage message) {
+        sessionManager.updateHeartbeatTime(session.getId());
+    }
+
     /**
      * 处理心跳消息
+     * 收到帧时已更新活跃时间，这里只回复响应
      */
-    private void handleHeartbeat(WebSocketSession session, RequestMessage request) {
+    private void handleHeartbeat(WebSocketSession session, String requestId) {
         String sessionId = session.getId();
         String robotId = sessionManager.getRobotIdBySession(sessionId);
 
-        // 更新心跳时间
-        sessionManager.updateHeartbeatTime(sessionId);
-
         // 返回心跳响应
-        ResponseMessage response = ResponseMessage.success(request.getRequestId(), System.currentTimeMillis());
+        ResponseMessage response = ResponseMessage.success(requestId, System.currentTimeMillis());
         sessionManager.sendMessage(session, response);
 
         LOG.debug("Heartbeat received from robot {}: {}", robotId, sessionId);
@@ -0,0 +1,165 @@
+package cn.wildfirechat.app.gateway;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 方法分发表
+ * 启动时一次性扫描目标类的公共方法，按 (方法名, 参数个数) 建立索引并绑定MethodHandle，
+ * 请求处理路径上不再做反射查找
+ */
+public final class RobotMethodTable {
+
+    private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+    /**
+     * key: 方法名/参数个数
+     */
+    private final Map<String, Entry> byNameAndArity;
+
+    /**
+     * key: 方法名，参数个数不匹配时的兜底
+     */
+    private final Map<String, Entry> byName;
+
+    private RobotMethodTable(Map<String, Entry> byNameAndArity, Map<String, Entry> byName) {
+        this.byNameAndArity = byNameAndArity;
+        this.byName = byName;
+    }
+
+    /**
+     * 为指定类构建分发表
+     */
+    public static RobotMethodTable build(Class<?> clazz) {
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        Map<String, Entry> byNameAndArity = new HashMap<>();
+        Map<String, Entry> byName = new HashMap<>();
+
+        for (Method method : clazz.getMethods()) {
+            if (Modifier.isStatic(method.getModifiers()) || method.getDeclaringClass() == Object.class) {
+                continue;
+            }
+            Entry entry;
+            try {
+                entry = new Entry(method, lookup.unreflect(method));
+            } catch (IllegalAccessException e) {
+                continue;
+            }
+            // 同名同参数个数的重载只保留第一个，与原先的匹配规则一致
+            byNameAndArity.putIfAbsent(key(method.getName(), method.getParameterCount()), entry);
+            byName.putIfAbsent(method.getName(), entry);
+        }
+
+        return new RobotMethodTable(Collections.unmodifiableMap(byNameAndArity), Collections.unmodifiableMap(byName));
+    }
+
+    /**
+     * 查找方法：优先按参数个数精确匹配，否则按方法名匹配
+     * @return 未找到返回null
+     */
+    public Entry find(String methodName, int arity) {
+        Entry entry = byNameAndArity.get(key(methodName, arity));
+        if (entry == null) {
+            entry = byName.get(methodName);
+        }
+        return entry;
+    }
+
+    /**
+     * 已注册的方法数量
+     */
+    public int size() {
+        return byNameAndArity.size();
+    }
+
+    private static String key(String methodName, int arity) {
+        return methodName + '/' + arity;
+    }
+
+    /**
+     * 分发表条目
+     */
+    public static final class Entry {
+        private final String name;
+        private final Type[] parameterTypes;
+        private final Class<?>[] parameterClasses;
+        private final MethodHandle invoker;
+
+        Entry(Method method, MethodHandle handle) {
+            this.name = method.getName();
+            // 保留泛型信息，如 List<PojoGroupMember>
+            this.parameterTypes = method.getGenericParameterTypes();
+            this.parameterClasses = method.getParameterTypes();
+            this.invoker = handle.asSpreader(Object[].class, parameterTypes.length).asType(INVOKER_TYPE);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getArity() {
+            return parameterTypes.length;
+        }
+
+        /**
+         * 参数类型，调用方不得修改
+         */
+        public Type[] getParameterTypes() {
+            return parameterTypes;
+        }
+
+        /**
+         * 调用目标方法
+         * 与Method.invoke保持一致：参数个数或类型不匹配抛出IllegalArgumentException，
+         * 只有目标方法自身抛出的异常才包装为InvocationTargetException
+         */
+        public Object invoke(Object target, Object[] args) throws InvocationTargetException {
+            checkArgs(args);
+            try {
+                return invoker.invokeExact(target, args);
+            } catch (Throwable t) {
+                throw new InvocationTargetException(t);
+            }
+        }
+
+        /**
+         * 检查参数个数和类型，规则与Method.invoke相同
+         * @throws IllegalArgumentException 参数不匹配
+         */
+        public void checkArgs(Object[] args) {
+            if (args.length != parameterClasses.length) {
+                throw new IllegalArgumentException("wrong number of arguments");
+            }
+            for (int i = 0; i < args.length; i++) {
+                if (!isAssignable(parameterClasses[i], args[i])) {
+                    throw new IllegalArgumentException("argument type mismatch");
+                }
+            }
+        }
+
+        /**
+         * 参数已通过检查后，invokeExact内的类型转换不会再失败，抛出的异常只可能来自目标方法
+         */
+        private static boolean isAssignable(Class<?> type, Object arg) {
+            if (arg == null) {
+                return !type.isPrimitive();
+            }
+            return wrap(type).isInstance(arg);
+        }
+
+        private static Class<?> wrap(Class<?> type) {
+            if (!type.isPrimitive()) {
+                return type;
+            }
+            return MethodType.methodType(type).wrap().returnType();
+        }
+    }
+}
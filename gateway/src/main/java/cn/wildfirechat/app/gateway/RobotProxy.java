@@ -1,44 +1,102 @@
 package cn.wildfirechat.app.gateway;
 
+import cn.wildfirechat.app.config.BatchConfig;
+import cn.wildfirechat.app.protocol.PushFilter;
+import cn.wildfirechat.app.protocol.RequestMessage;
 import cn.wildfirechat.app.protocol.ResponseMessage;
 import cn.wildfirechat.common.ErrorCode;
 import cn.wildfirechat.pojos.OutputRobot;
 import cn.wildfirechat.sdk.RobotService;
 import cn.wildfirechat.sdk.model.IMResult;
 import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.WebSocketSession;
 
-import java.lang.reflect.Method;
+import javax.annotation.PostConstruct;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 机器人服务代理
- * 通过反射调用RobotService SDK的方法，支持多实例
+ * 通过启动时构建的方法分发表调用RobotService SDK的方法，支持多实例；
+ * 已支持的方法通过非阻塞HTTP客户端调用IM服务
  */
 @Component
 public class RobotProxy {
 
     private static final Logger LOG = LoggerFactory.getLogger(RobotProxy.class);
 
+    /**
+     * 批量请求的方法名
+     */
+    public static final String BATCH_METHOD = "batch";
+
     @Autowired
     private SessionManager sessionManager;
 
+    @Autowired
+    private AsyncImClient asyncImClient;
+
+    @Autowired
+    private BatchConfig batchConfig;
+
+    @Autowired
+    private ImReadCache readCache;
+
+    @Autowired
+    private ImConcurrencyLimiter limiter;
+
+    @Autowired
+    private PushSubscriptions subscriptions;
+
+    @Autowired
+    @Qualifier("requestExecutor")
+    private Executor requestExecutor;
+
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong batchItemCount = new AtomicLong();
+
     private final Gson gson = new Gson();
 
+    private RobotMethodTable methodTable;
+
+    @PostConstruct
+    public void init() {
+        methodTable = RobotMethodTable.build(RobotService.class);
+        LOG.info("RobotProxy method table built, {} methods", methodTable.size());
+    }
+
     /**
      * 处理客户端请求
      * @param session WebSocket会话
      * @param request 请求消息
      * @return 响应消息
      */
-    public ResponseMessage handleRequest(WebSocketSession session, cn.wildfirechat.app.protocol.RequestMessage request) {
+    public ResponseMessage handleRequest(WebSocketSession session, RequestMessage request) {
         String sessionId = session.getId();
         String method = request.getMethod();
-        List<Object> params = request.getParams();
+        List<JsonElement> params = request.getParams();
 
         LOG.info("Handling request from session {}: method={}", sessionId, method);
 
@@ -59,22 +117,30 @@ public class RobotProxy {
 
         try {
             // 查找方法
-            Method targetMethod = findMethod(robotService.getClass(), method, params);
+            RobotMethodTable.Entry targetMethod = methodTable.find(method, params != null ? params.size() : 0);
             if (targetMethod == null) {
                 return ResponseMessage.error(null, 404, "Method not found: " + method);
             }
 
             // 转换参数类型并调用方法
             Object[] args = convertParams(targetMethod, params);
-            Object result = targetMethod.invoke(robotService, args);
-
-            if("getProfile".equals(method) && result instanceof IMResult) {
-                IMResult<OutputRobot> imResult = (IMResult<OutputRobot>)result;
-                if(imResult.getErrorCode() == ErrorCode.ERROR_CODE_SUCCESS && imResult.getResult() != null) {
-                    imResult.getResult().setCallback(null);
-                    imResult.getResult().setSecret(null);
-                }
+            // 参数不匹配在取得许可前拒绝，不计入IM调用异常
+            targetMethod.checkArgs(args);
+            ImConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+            if (permit == null) {
+                return ResponseMessage.error(null, ImConcurrencyLimiter.OVERLOADED_CODE, ImConcurrencyLimiter.OVERLOADED_MSG);
+            }
+            Object result;
+            boolean failed = true;
+            try {
+                result = targetMethod.invoke(robotService, args);
+                failed = false;
+            } finally {
+                permit.release(failed);
+                readCache.onInvoked(sessionManager.getRobotId(sessionId), method, params);
             }
+
+            hideRobotSecret(method, result);
             // 返回成功结果
             return ResponseMessage.success(null, result);
 
@@ -88,43 +154,355 @@ public class RobotProxy {
     }
 
     /**
-     * 查找匹配的方法
+     * 以非阻塞方式处理客户端请求，IM调用返回后完成
+     * 批量请求（method为"batch"）、设置推送订阅（method为"subscribe"）和可缓存的查询始终在这里处理
+     * @return 方法尚未支持非阻塞调用或会话状态异常时返回null，由调用方使用 {@link #handleRequest} 同步处理
      */
-    private Method findMethod(Class<?> clazz, String methodName, List<Object> params) {
-        for (Method method : clazz.getMethods()) {
-            if (method.getName().equals(methodName)) {
-                // 简单匹配：检查参数数量
-                if (method.getParameterCount() == (params != null ? params.size() : 0)) {
-                    return method;
-                }
+    public CompletableFuture<ResponseMessage> handleRequestAsync(WebSocketSession session, RequestMessage request) {
+        String sessionId = session.getId();
+        String method = request.getMethod();
+        if (BATCH_METHOD.equals(method)) {
+            return handleBatch(session, request);
+        }
+        if (PushSubscriptions.SUBSCRIBE_METHOD.equals(method)) {
+            return CompletableFuture.completedFuture(handleSubscribe(session, request));
+        }
+
+        // 可缓存的查询先查缓存，未命中时再调用IM服务
+        CompletableFuture<ResponseMessage> cached = readCache.get(sessionManager.getRobotId(sessionId), method,
+                request.getParams(), () -> invoke(session, request));
+        if (cached != null) {
+            return cached;
+        }
+        return invokeAsync(session, request);
+    }
+
+    /**
+     * 调用IM服务，已支持的方法非阻塞调用，其余方法交给请求线程池
+     */
+    private CompletableFuture<ResponseMessage> invoke(WebSocketSession session, RequestMessage request) {
+        CompletableFuture<ResponseMessage> pending = invokeAsync(session, request);
+        return pending != null ? pending : invokeOnExecutor(session, request);
+    }
+
+    /**
+     * 通过非阻塞HTTP客户端调用IM服务
+     * @return 方法尚未支持非阻塞调用或会话状态异常时返回null
+     */
+    private CompletableFuture<ResponseMessage> invokeAsync(WebSocketSession session, RequestMessage request) {
+        String sessionId = session.getId();
+        String method = request.getMethod();
+        List<JsonElement> params = request.getParams();
+        int arity = params != null ? params.size() : 0;
+
+        AsyncRobotMethods.Call call = AsyncRobotMethods.find(method, arity);
+        if (call == null || !sessionManager.isAuthenticated(sessionId)) {
+            return null;
+        }
+        RobotService robotService = sessionManager.getRobotService(sessionId);
+        RobotMethodTable.Entry targetMethod = methodTable.find(method, arity);
+        if (robotService == null || targetMethod == null || !asyncImClient.isAvailable(robotService)) {
+            return null;
+        }
+
+        LOG.info("Handling request from session {}: method={} (async)", sessionId, method);
+
+        Object body;
+        try {
+            body = call.buildBody(convertParams(targetMethod, params));
+        } catch (RuntimeException e) {
+            LOG.error("Invalid arguments for method {}: {}", method, e.getMessage());
+            return CompletableFuture.completedFuture(ResponseMessage.error(null, 400, "Invalid arguments: " + e.getMessage()));
+        }
+
+        ImConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+        if (permit == null) {
+            return CompletableFuture.completedFuture(
+                    ResponseMessage.error(null, ImConcurrencyLimiter.OVERLOADED_CODE, ImConcurrencyLimiter.OVERLOADED_MSG));
+        }
+        try {
+            return asyncImClient.post(robotService, call.getPath(), body, call.getResultType())
+                    .handle((result, e) -> {
+                        permit.release(e != null);
+                        if (e != null) {
+                            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                            LOG.error("Failed to execute method {}: {}", method, cause.getMessage());
+                            return ResponseMessage.error(null, 500, "Failed to execute: " + cause.getMessage());
+                        }
+                        hideRobotSecret(method, result);
+                        return ResponseMessage.success(null, result);
+                    });
+        } catch (RuntimeException e) {
+            permit.release(true);
+            throw e;
+        }
+    }
+
+    /**
+     * 设置推送订阅，params为[订阅条件]，条件为null或省略时取消订阅
+     */
+    private ResponseMessage handleSubscribe(WebSocketSession session, RequestMessage request) {
+        List<JsonElement> params = request.getParams();
+        if (params != null && params.size() > 1) {
+            return ResponseMessage.error(null, 400, "Invalid arguments: expected [filter]");
+        }
+        String robotId = sessionManager.getRobotId(session.getId());
+        if (robotId == null) {
+            return ResponseMessage.error(null, 401, "Not authenticated");
+        }
+        JsonElement param = params != null && !params.isEmpty() ? params.get(0) : null;
+        try {
+            PushFilter filter = param == null || param.isJsonNull() ? null : gson.fromJson(param, PushFilter.class);
+            if (!subscriptions.subscribe(robotId, filter)) {
+                return ResponseMessage.error(null, 401, "Not authenticated");
+            }
+        } catch (JsonParseException | IllegalArgumentException e) {
+            return ResponseMessage.error(null, 400, "Invalid subscription: " + e.getMessage());
+        }
+        return ResponseMessage.success(null, null);
+    }
+
+    /**
+     * 处理批量请求
+     * params中每一项是一个子请求 {"method": ..., "params": [...]}，响应结果按顺序列出每个子请求的code、msg和result。
+     * 针对同一会话的子请求按提交顺序执行，其余子请求最多同时执行parallelism个；
+     * 支持非阻塞调用的子请求不占用线程，其余子请求交给请求线程池执行
+     */
+    private CompletableFuture<ResponseMessage> handleBatch(WebSocketSession session, RequestMessage request) {
+        List<JsonElement> items = request.getParams();
+        if (items == null || items.isEmpty()) {
+            return CompletableFuture.completedFuture(ResponseMessage.error(null, 400, "Empty batch"));
+        }
+        if (items.size() > batchConfig.getMaxSize()) {
+            return CompletableFuture.completedFuture(ResponseMessage.error(null, 400,
+                    "Batch too large: " + items.size() + " > " + batchConfig.getMaxSize()));
+        }
+
+        // 按目标会话分组，不涉及会话的子请求单独成组
+        ResponseMessage[] results = new ResponseMessage[items.size()];
+        List<RequestMessage> requests = new ArrayList<>(items.size());
+        Map<Object, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            RequestMessage item = parseBatchItem(items.get(i));
+            requests.add(item);
+            if (item == null) {
+                results[i] = ResponseMessage.error(null, 400, "Invalid batch item: method is required");
+            } else if (BATCH_METHOD.equals(item.getMethod())) {
+                results[i] = ResponseMessage.error(null, 400, "Nested batch is not supported");
+            } else {
+                String key = conversationKey(item.getParams());
+                groups.computeIfAbsent(key != null ? key : i, k -> new ArrayList<>()).add(i);
             }
         }
-        // 尝试查找可变参数的方法
-        for (Method method : clazz.getMethods()) {
-            if (method.getName().equals(methodName)) {
-                return method;
+
+        batchCount.incrementAndGet();
+        batchItemCount.addAndGet(items.size());
+        LOG.info("Handling batch from session {}: {} items in {} groups", session.getId(), items.size(), groups.size());
+
+        BatchRun run = new BatchRun(session, requests, results, groups.values());
+        run.start(Math.max(1, batchConfig.getParallelism()));
+        return run.future;
+    }
+
+    private static RequestMessage parseBatchItem(JsonElement item) {
+        if (item == null || !item.isJsonObject()) {
+            return null;
+        }
+        JsonObject obj = item.getAsJsonObject();
+        JsonElement method = obj.get("method");
+        if (method == null || !method.isJsonPrimitive()) {
+            return null;
+        }
+        List<JsonElement> params = null;
+        JsonElement array = obj.get("params");
+        if (array != null && array.isJsonArray()) {
+            JsonArray values = array.getAsJsonArray();
+            params = new ArrayList<>(values.size());
+            for (JsonElement value : values) {
+                params.add(value);
+            }
+        }
+        return new RequestMessage(null, method.getAsString(), params);
+    }
+
+    /**
+     * 请求针对的会话（参数中第一个带type和target的对象），用于保证同一会话的请求顺序
+     * @return "type|target"，不涉及会话时返回null
+     */
+    static String conversationKey(List<JsonElement> params) {
+        if (params == null) {
+            return null;
+        }
+        for (JsonElement param : params) {
+            if (param != null && param.isJsonObject()) {
+                JsonObject obj = param.getAsJsonObject();
+                JsonElement type = obj.get("type");
+                JsonElement target = obj.get("target");
+                if (type != null && type.isJsonPrimitive() && target != null && target.isJsonPrimitive()) {
+                    return type.getAsString() + '|' + target.getAsString();
+                }
             }
         }
         return null;
     }
 
+    /**
+     * 执行单个子请求
+     */
+    private CompletableFuture<ResponseMessage> executeBatchItem(WebSocketSession session, RequestMessage item) {
+        CompletableFuture<ResponseMessage> pending = handleRequestAsync(session, item);
+        return pending != null ? pending : invokeOnExecutor(session, item);
+    }
+
+    /**
+     * 在请求线程池中同步调用，线程池已满时返回503
+     */
+    private CompletableFuture<ResponseMessage> invokeOnExecutor(WebSocketSession session, RequestMessage request) {
+        CompletableFuture<ResponseMessage> result = new CompletableFuture<>();
+        try {
+            requestExecutor.execute(() -> {
+                try {
+                    result.complete(handleRequest(session, request));
+                } catch (RuntimeException e) {
+                    result.complete(ResponseMessage.error(null, 500, "Internal server error: " + e.getMessage()));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.complete(ResponseMessage.error(null, 503, "Server busy, please retry later"));
+        }
+        return result;
+    }
+
+    /**
+     * 一次批量请求的执行状态
+     * 每条执行线路依次取出一组子请求顺序执行，子请求异步完成时由完成回调继续执行该线路
+     */
+    private class BatchRun {
+        private final WebSocketSession session;
+        private final List<RequestMessage> requests;
+        private final ResponseMessage[] results;
+        private final Queue<List<Integer>> groups;
+        private final AtomicInteger remainingGroups;
+        private final CompletableFuture<ResponseMessage> future = new CompletableFuture<>();
+
+        BatchRun(WebSocketSession session, List<RequestMessage> requests, ResponseMessage[] results,
+                 Collection<List<Integer>> groups) {
+            this.session = session;
+            this.requests = requests;
+            this.results = results;
+            this.groups = new ConcurrentLinkedQueue<>(groups);
+            this.remainingGroups = new AtomicInteger(groups.size());
+        }
+
+        void start(int lanes) {
+            int count = remainingGroups.get();
+            if (count == 0) {
+                complete();
+                return;
+            }
+            for (int i = 0; i < lanes && i < count; i++) {
+                lane();
+            }
+        }
+
+        /**
+         * 执行线路：依次执行各组，遇到未完成的子请求时返回，由其完成回调继续
+         */
+        private void lane() {
+            List<Integer> group;
+            while ((group = groups.poll()) != null) {
+                if (!runGroup(group, 0)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 从pos开始顺序执行一组子请求
+         * @return 该组是否已同步执行完
+         */
+        private boolean runGroup(List<Integer> group, int pos) {
+            while (pos < group.size()) {
+                int index = group.get(pos++);
+                CompletableFuture<ResponseMessage> pending;
+                try {
+                    pending = executeBatchItem(session, requests.get(index));
+                } catch (RuntimeException e) {
+                    pending = CompletableFuture.completedFuture(
+                            ResponseMessage.error(null, 500, "Internal server error: " + e.getMessage()));
+                }
+                if (!pending.isDone()) {
+                    int next = pos;
+                    pending.whenComplete((response, e) -> {
+                        record(index, response, e);
+                        if (runGroup(group, next)) {
+                            lane();
+                        }
+                    });
+                    return false;
+                }
+                pending.whenComplete((response, e) -> record(index, response, e));
+            }
+            if (remainingGroups.decrementAndGet() == 0) {
+                complete();
+            }
+            return true;
+        }
+
+        private void record(int index, ResponseMessage response, Throwable e) {
+            results[index] = e != null || response == null
+                    ? ResponseMessage.error(null, 500, "Failed to execute: " + (e != null ? e.getMessage() : "no response"))
+                    : response;
+        }
+
+        private void complete() {
+            future.complete(ResponseMessage.success(null, Arrays.asList(results)));
+        }
+    }
+
+    /**
+     * 批量请求数
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * 批量请求中的子请求总数
+     */
+    public long getBatchItemCount() {
+        return batchItemCount.get();
+    }
+
+    /**
+     * getProfile结果中不返回机器人的回调地址和密钥
+     */
+    @SuppressWarnings("unchecked")
+    private static void hideRobotSecret(String method, Object result) {
+        if("getProfile".equals(method) && result instanceof IMResult) {
+            IMResult<OutputRobot> imResult = (IMResult<OutputRobot>)result;
+            if(imResult.getErrorCode() == ErrorCode.ERROR_CODE_SUCCESS && imResult.getResult() != null) {
+                imResult.getResult().setCallback(null);
+                imResult.getResult().setSecret(null);
+            }
+        }
+    }
+
     /**
      * 转换参数类型
-     * 使用Gson将参数转换为目标方法的参数类型
+     * 使用Gson将已解析的JsonElement直接绑定为目标方法的参数类型
      */
-    private Object[] convertParams(Method method, List<Object> params) {
-        Class<?>[] paramTypes = method.getParameterTypes();
+    private Object[] convertParams(RobotMethodTable.Entry method, List<JsonElement> params) {
+        Type[] paramTypes = method.getParameterTypes();
         Object[] args = new Object[paramTypes.length];
 
         for (int i = 0; i < paramTypes.length; i++) {
-            Object param = params.get(i);
+            JsonElement param = params.get(i);
 
-            if (param == null) {
+            if (param == null || param.isJsonNull()) {
                 args[i] = null;
             } else {
-                // 将参数转换为JSON字符串，再转换为目标类型
-                String json = gson.toJson(param);
-                args[i] = gson.fromJson(json, paramTypes[i]);
+                args[i] = gson.fromJson(param, paramTypes[i]);
             }
         }
 
@@ -0,0 +1,322 @@
+package cn.wildfirechat.app.gateway;
+
+import cn.wildfirechat.app.config.ImHttpConfig;
+import cn.wildfirechat.sdk.RobotService;
+import cn.wildfirechat.sdk.utilities.RobotHttpUtils;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.ClientProtocolException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RobotService工厂
+ * SDK的每个RobotService自带一个HTTP连接池，这里创建后替换为网关共用的长连接池，
+ * 所有机器人复用到IM服务的连接
+ */
+@Component
+public class RobotServiceFactory {
+    private static final Logger LOG = LoggerFactory.getLogger(RobotServiceFactory.class);
+
+    @Value("${im.url}")
+    private String imUrl;
+
+    @Autowired
+    private ImHttpConfig imHttpConfig;
+
+    private InstrumentedConnectionManager connectionManager;
+    private CloseableHttpClient httpClient;
+    private SharedHttpClient sharedClient;
+
+    /**
+     * RobotService.robotHttpUtils 和 RobotHttpUtils.httpClient，SDK结构不符时为null，使用SDK自带的连接池
+     */
+    private Field robotHttpUtilsField;
+    private Field httpClientField;
+
+    private final AtomicLong attachedCount = new AtomicLong();
+    private final AtomicLong attachFailureCount = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        connectionManager = new InstrumentedConnectionManager();
+        connectionManager.setMaxTotal(imHttpConfig.getMaxTotal());
+        connectionManager.setDefaultMaxPerRoute(imHttpConfig.getMaxPerRoute());
+        connectionManager.setValidateAfterInactivity(imHttpConfig.getValidateAfterInactivityMs());
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(imHttpConfig.getConnectTimeoutMs())
+                .setSocketTimeout(imHttpConfig.getSocketTimeoutMs())
+                .setConnectionRequestTimeout(imHttpConfig.getLeaseTimeoutMs())
+                .build();
+        httpClient = HttpClients.custom()
+                .setDefaultRequestConfig(requestConfig)
+                .setConnectionManager(connectionManager)
+                .evictExpiredConnections()
+                .evictIdleConnections(imHttpConfig.getIdleTimeoutSeconds(), TimeUnit.SECONDS)
+                .setRetryHandler(DefaultHttpRequestRetryHandler.INSTANCE)
+                .build();
+        sharedClient = new SharedHttpClient(httpClient);
+
+        try {
+            robotHttpUtilsField = RobotService.class.getDeclaredField("robotHttpUtils");
+            robotHttpUtilsField.setAccessible(true);
+            httpClientField = robotHttpUtilsField.getType().getDeclaredField("httpClient");
+            httpClientField.setAccessible(true);
+            if (!httpClientField.getType().isAssignableFrom(SharedHttpClient.class)) {
+                throw new NoSuchFieldException("httpClient type " + httpClientField.getType().getName());
+            }
+        } catch (NoSuchFieldException | RuntimeException e) {
+            LOG.error("RobotService layout not supported, each instance keeps its own connection pool: {}", e.getMessage());
+            robotHttpUtilsField = null;
+            httpClientField = null;
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            LOG.error("Failed to close http client: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 创建使用共享连接池的RobotService
+     * 关闭返回的RobotService不会关闭共享连接池
+     */
+    public RobotService create(String robotId, String secret) {
+        RobotService robotService = new RobotService(imUrl, robotId, secret);
+        if (httpClientField == null) {
+            attachFailureCount.incrementAndGet();
+            return robotService;
+        }
+        try {
+            Object robotHttpUtils = robotHttpUtilsField.get(robotService);
+            Object ownClient = httpClientField.get(robotHttpUtils);
+            httpClientField.set(robotHttpUtils, sharedClient);
+            attachedCount.incrementAndGet();
+            // 关闭SDK创建的连接池及其清理线程
+            if (ownClient instanceof Closeable) {
+                ((Closeable) ownClient).close();
+            }
+        } catch (IllegalAccessException | RuntimeException e) {
+            attachFailureCount.incrementAndGet();
+            LOG.warn("Failed to attach shared connection pool to robot {}: {}", robotId, e.getMessage());
+        } catch (IOException e) {
+            LOG.warn("Failed to close own connection pool of robot {}: {}", robotId, e.getMessage());
+        }
+        return robotService;
+    }
+
+    /**
+     * 获取RobotService内部的RobotHttpUtils，用于读取机器人凭据
+     * @return SDK结构不符时返回null
+     */
+    RobotHttpUtils httpUtilsOf(RobotService robotService) {
+        if (robotHttpUtilsField == null) {
+            return null;
+        }
+        try {
+            return (RobotHttpUtils) robotHttpUtilsField.get(robotService);
+        } catch (IllegalAccessException | ClassCastException e) {
+            return null;
+        }
+    }
+
+    String getImUrl() {
+        return imUrl;
+    }
+
+    /**
+     * SDK结构是否支持替换连接池，不支持时每个RobotService使用自己的连接池
+     */
+    public boolean isSharedPoolSupported() {
+        return httpClientField != null;
+    }
+
+    /**
+     * RobotService当前是否使用共享连接池
+     */
+    boolean usesSharedPool(RobotService robotService) {
+        if (httpClientField == null) {
+            return false;
+        }
+        try {
+            return httpClientField.get(robotHttpUtilsField.get(robotService)) == sharedClient;
+        } catch (IllegalAccessException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 已替换为共享连接池的RobotService数量
+     */
+    public long getAttachedCount() {
+        return attachedCount.get();
+    }
+
+    /**
+     * 未能替换连接池、使用自己连接池的RobotService数量
+     */
+    public long getAttachFailureCount() {
+        return attachFailureCount.get();
+    }
+
+    /**
+     * 从连接池获取连接的次数
+     */
+    public long getLeaseCount() {
+        return connectionManager.leaseCount.get();
+    }
+
+    /**
+     * 获取连接超时的次数
+     */
+    public long getLeaseTimeoutCount() {
+        return connectionManager.leaseTimeoutCount.get();
+    }
+
+    /**
+     * 平均获取连接等待时间（毫秒）
+     */
+    public double getAvgLeaseWaitMillis() {
+        long leases = connectionManager.leaseCount.get();
+        return leases == 0 ? 0 : connectionManager.leaseWaitNanos.get() / 1e6 / leases;
+    }
+
+    /**
+     * 最长获取连接等待时间（毫秒）
+     */
+    public double getMaxLeaseWaitMillis() {
+        return connectionManager.maxLeaseWaitNanos.get() / 1e6;
+    }
+
+    /**
+     * 新建的连接数
+     */
+    public long getConnectCount() {
+        return connectionManager.connectCount.get();
+    }
+
+    /**
+     * 连接复用率：复用已有连接的请求占比
+     */
+    public double getReuseRatio() {
+        long leases = connectionManager.leaseCount.get();
+        return leases == 0 ? 0 : 1.0 - (double) connectionManager.connectCount.get() / leases;
+    }
+
+    public PoolStats getPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    /**
+     * 统计获取连接等待时间和新建连接数的连接池
+     */
+    private static class InstrumentedConnectionManager extends PoolingHttpClientConnectionManager {
+        private final AtomicLong leaseCount = new AtomicLong();
+        private final AtomicLong leaseTimeoutCount = new AtomicLong();
+        private final AtomicLong leaseWaitNanos = new AtomicLong();
+        private final AtomicLong maxLeaseWaitNanos = new AtomicLong();
+        private final AtomicLong connectCount = new AtomicLong();
+
+        @Override
+        public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+            ConnectionRequest request = super.requestConnection(route, state);
+            return new ConnectionRequest() {
+                @Override
+                public HttpClientConnection get(long timeout, TimeUnit timeUnit)
+                        throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                    long start = System.nanoTime();
+                    try {
+                        HttpClientConnection connection = request.get(timeout, timeUnit);
+                        leaseCount.incrementAndGet();
+                        return connection;
+                    } catch (ConnectionPoolTimeoutException e) {
+                        leaseTimeoutCount.incrementAndGet();
+                        throw e;
+                    } finally {
+                        long waited = System.nanoTime() - start;
+                        leaseWaitNanos.addAndGet(waited);
+                        maxLeaseWaitNanos.accumulateAndGet(waited, Math::max);
+                    }
+                }
+
+                @Override
+                public boolean cancel() {
+                    return request.cancel();
+                }
+            };
+        }
+
+        /**
+         * 只有池中没有可用连接时才会建立新连接
+         */
+        @Override
+        public void connect(HttpClientConnection managedConn, HttpRoute route, int connectTimeout,
+                            HttpContext context) throws IOException {
+            connectCount.incrementAndGet();
+            super.connect(managedConn, route, connectTimeout, context);
+        }
+    }
+
+    /**
+     * 共享HttpClient，RobotService关闭时不关闭连接池
+     */
+    @SuppressWarnings("deprecation")
+    private static class SharedHttpClient extends CloseableHttpClient {
+        private final CloseableHttpClient delegate;
+
+        SharedHttpClient(CloseableHttpClient delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        protected CloseableHttpResponse doExecute(HttpHost target, HttpRequest request, HttpContext context)
+                throws IOException, ClientProtocolException {
+            return delegate.execute(target, request, context);
+        }
+
+        @Override
+        public void close() {
+            // 共享连接池由RobotServiceFactory关闭
+        }
+
+        // 已废弃的接口方法，使用全限定名，导入语句不在@SuppressWarnings范围内
+        @Override
+        public org.apache.http.params.HttpParams getParams() {
+            return delegate.getParams();
+        }
+
+        @Override
+        public org.apache.http.conn.ClientConnectionManager getConnectionManager() {
+            return delegate.getConnectionManager();
+        }
+    }
+}
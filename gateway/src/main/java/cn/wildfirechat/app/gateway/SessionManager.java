@@ -1,17 +1,43 @@
 package cn.wildfirechat.app.gateway;
 
+import cn.wildfirechat.app.config.DeliveryConfig;
+import cn.wildfirechat.app.config.OutboundConfig;
+import cn.wildfirechat.app.config.SessionConfig;
+import cn.wildfirechat.app.protocol.ConnectMessage;
+import cn.wildfirechat.app.protocol.MessageRoute;
+import cn.wildfirechat.app.protocol.ProtobufEnvelope;
+import cn.wildfirechat.app.protocol.PushMessage;
 import cn.wildfirechat.sdk.RobotService;
 import com.google.gson.Gson;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * WebSocket会话管理器
@@ -23,6 +49,33 @@ public class SessionManager {
 
     private final Gson gson = new Gson();
 
+    @Autowired
+    private OutboundConfig outboundConfig;
+
+    @Autowired
+    @Qualifier("outboundExecutor")
+    private Executor outboundExecutor;
+
+    @Autowired
+    private AuthHandler authHandler;
+
+    @Autowired
+    private SessionConfig sessionConfig;
+
+    @Autowired
+    private FrameCompressor frameCompressor;
+
+    @Autowired
+    private DeliveryConfig deliveryConfig;
+
+    /**
+     * 空闲会话检测时间轮，每个会话只有一个待执行的检测任务
+     */
+    private HashedWheelTimer reaper;
+
+    private final AtomicLong idleClosedCount = new AtomicLong();
+    private final AtomicLong pingSentCount = new AtomicLong();
+
     /**
      * 存储所有活跃的WebSocket会话
      * key: sessionId
@@ -37,17 +90,46 @@ public class SessionManager {
      */
     private final Map<String, SessionInfo> sessionInfos = new ConcurrentHashMap<>();
 
+    /**
+     * 机器人ID索引
+     * key: robotId
+     * value: 该机器人已鉴权的会话
+     */
+    private final Map<String, RobotSessions> robotSessions = new ConcurrentHashMap<>();
+
+    /**
+     * 按机器人ID查找会话的统计
+     */
+    private final AtomicLong robotLookupCount = new AtomicLong();
+    private final AtomicLong robotLookupMissCount = new AtomicLong();
+
+    /**
+     * 已关闭会话的发送队列丢弃数，按机器人累计
+     * key: robotId
+     */
+    private final Map<String, AtomicLong> robotDroppedCounts = new ConcurrentHashMap<>();
+
     @PostConstruct
     public void init() {
+        reaper = new HashedWheelTimer(new DefaultThreadFactory("session-reaper", true),
+                sessionConfig.getReaperTickMillis(), TimeUnit.MILLISECONDS, 512);
         LOG.info("SessionManager initialized");
     }
 
+    @PreDestroy
+    public void destroy() {
+        reaper.stop();
+    }
+
     /**
      * 添加会话（未鉴权状态）
      */
     public void addSession(WebSocketSession session) {
+        SessionInfo info = new SessionInfo(session.getId());
+        info.setOutbound(new OutboundQueue(session, outboundExecutor, outboundConfig));
         sessions.put(session.getId(), session);
-        sessionInfos.put(session.getId(), new SessionInfo(session.getId()));
+        sessionInfos.put(session.getId(), info);
+        scheduleIdleCheck(session, info, TimeUnit.SECONDS.toMillis(sessionConfig.getAuthTimeoutSeconds()));
         LOG.info("Session added: {}, total sessions: {}", session.getId(), sessions.size());
     }
 
@@ -59,32 +141,55 @@ public class SessionManager {
         SessionInfo info = sessionInfos.remove(sessionId);
         sessions.remove(sessionId);
 
-        if (info != null && info.getRobotService() != null) {
-            // 关闭RobotService实例（如果有close方法）
-            try {
-                info.getRobotService().close();
-            } catch (Exception e) {
-                LOG.error("Failed to close robot service: {}", e.getMessage());
+        if (info != null) {
+            info.getOutbound().discard();
+        }
+
+        if (info != null && info.getIdleCheck() != null) {
+            info.getIdleCheck().cancel();
+        }
+
+        if (info != null && info.getRobotId() != null) {
+            unindexSession(info.getRobotId(), sessionId);
+            long dropped = info.getOutbound().getDroppedCount();
+            if (dropped > 0) {
+                robotDroppedCounts.computeIfAbsent(info.getRobotId(), k -> new AtomicLong()).addAndGet(dropped);
             }
         }
 
+        if (info != null) {
+            // RobotService由同一机器人的会话共享，释放引用
+            authHandler.release(info.takeRobotService());
+        }
+
         LOG.info("Session removed: {}, total sessions: {}", sessionId, sessions.size());
     }
 
     /**
      * 鉴权会话
+     * 失败时释放传入的RobotService
      * @return 鉴权是否成功
      */
     public boolean authenticateSession(String sessionId, String robotId, RobotService robotService) {
         SessionInfo info = sessionInfos.get(sessionId);
         if (info == null) {
             LOG.warn("Session {} not found for authentication", sessionId);
+            authHandler.release(robotService);
             return false;
         }
 
         info.setAuthenticated(true);
         info.setRobotId(robotId);
         info.setRobotService(robotService);
+        robotSessions.compute(robotId, (k, robot) -> (robot != null ? robot : new RobotSessions()).with(sessionId));
+
+        // 会话可能在鉴权过程中已被移除
+        if (!sessionInfos.containsKey(sessionId)) {
+            unindexSession(robotId, sessionId);
+            authHandler.release(info.takeRobotService());
+            LOG.warn("Session {} closed during authentication", sessionId);
+            return false;
+        }
 
         LOG.info("Session {} authenticated as robot {}", sessionId, robotId);
         return true;
@@ -115,34 +220,377 @@ public class SessionManager {
     }
 
     /**
-     * 通过机器人ID获取会话
+     * 通过机器人ID获取会话，有多个会话时返回最早鉴权的一个
      */
     public WebSocketSession getSessionByRobotId(String robotId) {
-        for (Map.Entry<String, SessionInfo> entry : sessionInfos.entrySet()) {
-            if (robotId.equals(entry.getValue().getRobotId())) {
-                return sessions.get(entry.getKey());
+        robotLookupCount.incrementAndGet();
+        RobotSessions robot = robotSessions.get(robotId);
+        if (robot != null) {
+            for (String sessionId : robot.ids) {
+                WebSocketSession session = sessions.get(sessionId);
+                if (session != null) {
+                    return session;
+                }
             }
         }
+        robotLookupMissCount.incrementAndGet();
         return null;
     }
 
+    /**
+     * 按机器人的分发模式选择推送的会话
+     * @param deliveryKey 聊天对象，STICKY模式按此选择会话，为null时选择最早鉴权的会话
+     * @return 没有在线会话时返回空列表
+     */
+    public List<WebSocketSession> selectSessions(String robotId, String deliveryKey) {
+        robotLookupCount.incrementAndGet();
+        RobotSessions robot = robotSessions.get(robotId);
+        List<WebSocketSession> online = new ArrayList<>(robot != null ? robot.ids.length : 0);
+        if (robot != null) {
+            for (String sessionId : robot.ids) {
+                WebSocketSession session = sessions.get(sessionId);
+                if (session != null && session.isOpen()) {
+                    online.add(session);
+                }
+            }
+        }
+        if (online.size() <= 1) {
+            if (online.isEmpty()) {
+                robotLookupMissCount.incrementAndGet();
+            }
+            return online;
+        }
+
+        switch (deliveryConfig.modeOf(robotId)) {
+            case BROADCAST:
+                return online;
+            case ROUND_ROBIN:
+                return Collections.singletonList(online.get(Math.floorMod(robot.next.getAndIncrement(), online.size())));
+            case STICKY:
+            default:
+                return Collections.singletonList(deliveryKey != null ? rendezvous(online, deliveryKey) : online.get(0));
+        }
+    }
+
+    /**
+     * 最高随机权重哈希：每个会话与key的哈希值最大者胜出，会话增减时只有原属于该会话的key迁移
+     */
+    private static WebSocketSession rendezvous(List<WebSocketSession> online, String deliveryKey) {
+        WebSocketSession selected = null;
+        long best = Long.MIN_VALUE;
+        long keyHash = deliveryKey.hashCode() * 0x9E3779B97F4A7C15L;
+        for (WebSocketSession session : online) {
+            long weight = mix(keyHash ^ session.getId().hashCode());
+            if (selected == null || weight > best) {
+                selected = session;
+                best = weight;
+            }
+        }
+        return selected;
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * 从机器人ID索引中移除会话，集合为空时一并移除
+     */
+    private void unindexSession(String robotId, String sessionId) {
+        robotSessions.computeIfPresent(robotId, (k, robot) -> robot.without(sessionId));
+    }
+
+    /**
+     * 设置机器人的推送订阅，同一机器人的所有会话共享，后设置的覆盖先设置的
+     * @param subscription 为null时推送所有消息
+     * @return 机器人没有已鉴权的会话时返回false
+     */
+    boolean setSubscription(String robotId, PushSubscription subscription) {
+        return robotSessions.computeIfPresent(robotId, (k, robot) -> robot.withSubscription(subscription)) != null;
+    }
+
+    /**
+     * @return 未设置订阅或机器人未连接时返回null，表示推送所有消息
+     */
+    PushSubscription getSubscription(String robotId) {
+        RobotSessions robot = robotSessions.get(robotId);
+        return robot != null ? robot.subscription : null;
+    }
+
+    /**
+     * 设置了推送订阅的机器人数量
+     */
+    public int getSubscribedRobotCount() {
+        int count = 0;
+        for (RobotSessions robot : robotSessions.values()) {
+            if (robot.subscription != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 同时有多个会话在线的机器人数量
+     */
+    public int getMultiSessionRobotCount() {
+        int count = 0;
+        for (RobotSessions robot : robotSessions.values()) {
+            if (robot.ids.length > 1) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 获取已建立索引的机器人数量
+     */
+    public int getRobotCount() {
+        return robotSessions.size();
+    }
+
+    /**
+     * 获取按机器人ID查找会话的总次数
+     */
+    public long getRobotLookupCount() {
+        return robotLookupCount.get();
+    }
+
+    /**
+     * 获取按机器人ID查找会话未命中的次数
+     */
+    public long getRobotLookupMissCount() {
+        return robotLookupMissCount.get();
+    }
+
     /**
      * 发送消息到指定会话
      */
     public boolean sendMessage(WebSocketSession session, Object message) {
         if (session != null && session.isOpen()) {
-            try {
-                String json = gson.toJson(message);
-                session.sendMessage(new TextMessage(json));
-                return true;
-            } catch (IOException e) {
-                LOG.error("Failed to send message to session {}: {}", session.getId(), e.getMessage());
+            SessionInfo info = getSessionInfo(session);
+            if (info == null) {
                 return false;
             }
+            if (message instanceof ConnectMessage) {
+                // 鉴权消息始终是未压缩的JSON文本帧，客户端据此协商之后的帧格式
+                return info.getOutbound().send(new TextMessage(gson.toJson(message)), false);
+            }
+            // 只有推送帧在发送队列溢出时可以丢弃，RPC响应丢失后客户端的请求永远不会完成
+            boolean droppable = message instanceof PushMessage;
+            if (info.isProtobuf()) {
+                byte[] envelope = ProtobufEnvelope.encode(message, gson);
+                if (envelope != null) {
+                    return sendEnvelope(info, envelope, droppable);
+                }
+            }
+            return sendFrame(info, new TextMessage(gson.toJson(message)), droppable);
         }
         return false;
     }
 
+    /**
+     * 发送已编码的JSON帧到指定会话，不再经过Gson序列化
+     * 协商protobuf格式的会话把消息数据直接写入信封
+     */
+    public boolean sendRawMessage(WebSocketSession session, byte[] json) {
+        if (session != null && session.isOpen()) {
+            SessionInfo info = getSessionInfo(session);
+            if (info == null) {
+                return false;
+            }
+            return info.getOutbound().send(rawFrame(info, json), true);
+        }
+        return false;
+    }
+
+    /**
+     * 发送多个已编码的JSON帧到指定会话，一起放入发送队列，由写线程合并写出
+     * @return 从头开始成功放入发送队列的帧数
+     */
+    public int sendRawMessages(WebSocketSession session, List<byte[]> jsons) {
+        if (session != null && session.isOpen()) {
+            SessionInfo info = getSessionInfo(session);
+            if (info == null) {
+                return 0;
+            }
+            List<WebSocketMessage<?>> frames = new ArrayList<>(jsons.size());
+            for (byte[] json : jsons) {
+                frames.add(rawFrame(info, json));
+            }
+            return info.getOutbound().sendAll(frames);
+        }
+        return 0;
+    }
+
+    private WebSocketMessage<?> rawFrame(SessionInfo info, byte[] json) {
+        if (info.isProtobuf()) {
+            byte[] envelope = ProtobufEnvelope.encodeRawPush(json);
+            if (envelope != null) {
+                return envelopeFrame(info, envelope);
+            }
+        }
+        return textFrame(info, new TextMessage(json));
+    }
+
+    private SessionInfo getSessionInfo(WebSocketSession session) {
+        SessionInfo info = sessionInfos.get(session.getId());
+        if (info == null) {
+            LOG.warn("Session {} not found", session.getId());
+        }
+        return info;
+    }
+
+    /**
+     * 放入会话的发送队列，由发送线程按顺序写出
+     */
+    private boolean sendFrame(SessionInfo info, TextMessage frame, boolean droppable) {
+        return info.getOutbound().send(textFrame(info, frame), droppable);
+    }
+
+    /**
+     * 以二进制帧发送protobuf信封
+     */
+    private boolean sendEnvelope(SessionInfo info, byte[] envelope, boolean droppable) {
+        return info.getOutbound().send(envelopeFrame(info, envelope), droppable);
+    }
+
+    /**
+     * 协商压缩后，超过阈值的文本帧以压缩后的二进制帧发送；
+     * protobuf会话中无法编码为信封的消息仍以文本帧发送，不压缩，避免与压缩的信封混淆
+     */
+    private WebSocketMessage<?> textFrame(SessionInfo info, TextMessage frame) {
+        if (info.isCompression() && !info.isProtobuf()) {
+            byte[] payload = frame.asBytes();
+            if (frameCompressor.shouldCompress(payload.length)) {
+                return new BinaryMessage(frameCompressor.compress(payload));
+            }
+        }
+        return frame;
+    }
+
+    /**
+     * protobuf信封的二进制帧，协商压缩且超过阈值时整体压缩
+     */
+    private WebSocketMessage<?> envelopeFrame(SessionInfo info, byte[] envelope) {
+        if (info.isCompression() && frameCompressor.shouldCompress(envelope.length)) {
+            envelope = frameCompressor.compress(envelope);
+        }
+        return new BinaryMessage(envelope);
+    }
+
+    /**
+     * 启用会话的帧压缩，之后发送的帧超过阈值时压缩
+     */
+    public void enableCompression(String sessionId) {
+        SessionInfo info = sessionInfos.get(sessionId);
+        if (info != null) {
+            info.setCompression(true);
+        }
+    }
+
+    /**
+     * 切换会话为protobuf帧格式，之后发送的消息编码为信封
+     */
+    public void enableProtobuf(String sessionId) {
+        SessionInfo info = sessionInfos.get(sessionId);
+        if (info != null) {
+            info.setProtobuf(true);
+        }
+    }
+
+    /**
+     * 会话是否已协商protobuf帧格式
+     */
+    public boolean isProtobuf(String sessionId) {
+        SessionInfo info = sessionInfos.get(sessionId);
+        return info != null && info.isProtobuf();
+    }
+
+    /**
+     * 使用protobuf帧格式的会话数
+     */
+    public int getProtobufSessionCount() {
+        int count = 0;
+        for (SessionInfo info : sessionInfos.values()) {
+            if (info.isProtobuf()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 会话是否已协商压缩
+     */
+    public boolean isCompression(String sessionId) {
+        SessionInfo info = sessionInfos.get(sessionId);
+        return info != null && info.isCompression();
+    }
+
+    /**
+     * 发送完已入队的消息后关闭会话
+     */
+    public void closeSession(WebSocketSession session, CloseStatus status) {
+        SessionInfo info = sessionInfos.get(session.getId());
+        if (info != null) {
+            info.getOutbound().close(status);
+            return;
+        }
+        try {
+            session.close(status);
+        } catch (IOException e) {
+            LOG.error("Failed to close session {}: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * 所有会话发送队列中缓存的字节数
+     */
+    public long getOutboundBufferedBytes() {
+        long bytes = 0;
+        for (SessionInfo info : sessionInfos.values()) {
+            bytes += info.getOutbound().getBufferedBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * 按机器人统计发送队列的缓存字节数和丢弃数
+     * key: robotId
+     */
+    public Map<String, Map<String, Long>> getOutboundStatsByRobot() {
+        Map<String, Map<String, Long>> stats = new HashMap<>();
+        for (Map.Entry<String, AtomicLong> entry : robotDroppedCounts.entrySet()) {
+            Map<String, Long> robot = stats.computeIfAbsent(entry.getKey(), k -> newOutboundStats());
+            robot.put("dropped", robot.get("dropped") + entry.getValue().get());
+        }
+        for (SessionInfo info : sessionInfos.values()) {
+            if (info.getRobotId() == null) {
+                continue;
+            }
+            Map<String, Long> robot = stats.computeIfAbsent(info.getRobotId(), k -> newOutboundStats());
+            robot.put("bufferedBytes", robot.get("bufferedBytes") + info.getOutbound().getBufferedBytes());
+            robot.put("bufferedMessages", robot.get("bufferedMessages") + info.getOutbound().getBufferedMessages());
+            robot.put("dropped", robot.get("dropped") + info.getOutbound().getDroppedCount());
+        }
+        return stats;
+    }
+
+    private static Map<String, Long> newOutboundStats() {
+        Map<String, Long> stats = new HashMap<>();
+        stats.put("bufferedBytes", 0L);
+        stats.put("bufferedMessages", 0L);
+        stats.put("dropped", 0L);
+        return stats;
+    }
+
     /**
      * 发送消息到指定会话（通过sessionId）
      */
@@ -156,15 +604,46 @@ public class SessionManager {
     }
 
     /**
-     * 发送消息到指定机器人
+     * 发送消息到指定机器人，按分发模式选择会话
+     * 消息推送按聊天对象选择会话，与透传推送的选择结果一致；其他消息选择最早鉴权的会话
      */
     public boolean sendMessageToRobot(String robotId, Object message) {
-        WebSocketSession session = getSessionByRobotId(robotId);
-        if (session != null) {
-            return sendMessage(session, message);
+        String deliveryKey = null;
+        if (message instanceof PushMessage && ((PushMessage) message).getData() != null) {
+            deliveryKey = MessageRoute.deliveryKey(((PushMessage) message).getData());
         }
-        LOG.warn("Robot {} session not found", robotId);
-        return false;
+        boolean sent = false;
+        for (WebSocketSession session : selectSessions(robotId, deliveryKey)) {
+            sent |= sendMessage(session, message);
+        }
+        if (!sent) {
+            LOG.warn("Robot {} session not found", robotId);
+        }
+        return sent;
+    }
+
+    /**
+     * 发送已编码的JSON帧到指定机器人，按分发模式选择会话
+     */
+    public boolean sendRawMessageToRobot(String robotId, String deliveryKey, byte[] json) {
+        return sendRawMessagesToRobot(robotId, deliveryKey, Collections.singletonList(json)) > 0;
+    }
+
+    /**
+     * 发送多个已编码的JSON帧到指定机器人，这些帧属于同一聊天，选择同一组会话
+     * @return 从头开始成功放入发送队列的帧数，广播时取各会话中的最大值
+     */
+    public int sendRawMessagesToRobot(String robotId, String deliveryKey, List<byte[]> jsons) {
+        List<WebSocketSession> targets = selectSessions(robotId, deliveryKey);
+        if (targets.isEmpty()) {
+            LOG.warn("Robot {} session not found", robotId);
+            return 0;
+        }
+        int sent = 0;
+        for (WebSocketSession session : targets) {
+            sent = Math.max(sent, sendRawMessages(session, jsons));
+        }
+        return sent;
     }
 
     /**
@@ -202,21 +681,65 @@ public class SessionManager {
                 LOG.error("Failed to close session {}: {}", session.getId(), e.getMessage());
             }
         }
-        // 关闭所有RobotService实例
+        // 释放所有RobotService引用
         for (SessionInfo info : sessionInfos.values()) {
-            if (info.getRobotService() != null) {
-                try {
-                    info.getRobotService().close();
-                } catch (Exception e) {
-                    LOG.error("Failed to close robot service: {}", e.getMessage());
-                }
-            }
+            info.getOutbound().discard();
+            authHandler.release(info.takeRobotService());
         }
         sessions.clear();
         sessionInfos.clear();
+        robotSessions.clear();
         LOG.info("All sessions closed");
     }
 
+    /**
+     * 同一机器人已鉴权的会话，按鉴权顺序排列，修改时复制；
+     * 推送订阅属于机器人，随最后一个会话移除
+     */
+    private static class RobotSessions {
+        private final String[] ids;
+        private final AtomicInteger next;
+        private final PushSubscription subscription;
+
+        RobotSessions() {
+            this(new String[0], new AtomicInteger(), null);
+        }
+
+        private RobotSessions(String[] ids, AtomicInteger next, PushSubscription subscription) {
+            this.ids = ids;
+            this.next = next;
+            this.subscription = subscription;
+        }
+
+        RobotSessions with(String sessionId) {
+            for (String id : ids) {
+                if (id.equals(sessionId)) {
+                    return this;
+                }
+            }
+            String[] added = Arrays.copyOf(ids, ids.length + 1);
+            added[ids.length] = sessionId;
+            return new RobotSessions(added, next, subscription);
+        }
+
+        /**
+         * @return 没有剩余会话时返回null
+         */
+        RobotSessions without(String sessionId) {
+            List<String> remaining = new ArrayList<>(ids.length);
+            for (String id : ids) {
+                if (!id.equals(sessionId)) {
+                    remaining.add(id);
+                }
+            }
+            return remaining.isEmpty() ? null : new RobotSessions(remaining.toArray(new String[0]), next, subscription);
+        }
+
+        RobotSessions withSubscription(PushSubscription subscription) {
+            return new RobotSessions(ids, next, subscription);
+        }
+    }
+
     /**
      * 会话信息
      */
@@ -224,13 +747,19 @@ public class SessionManager {
         private final String sessionId;
         private boolean authenticated;
         private String robotId;
-        private RobotService robotService;
+        private volatile RobotService robotService;
+        private OutboundQueue outbound;
         private volatile long lastHeartbeatTime;
+        private final long createdTime;
+        private volatile Timeout idleCheck;
+        private volatile boolean compression;
+        private volatile boolean protobuf;
 
         public SessionInfo(String sessionId) {
             this.sessionId = sessionId;
             this.authenticated = false;
-            this.lastHeartbeatTime = System.currentTimeMillis();
+            this.createdTime = System.currentTimeMillis();
+            this.lastHeartbeatTime = createdTime;
         }
 
         public String getSessionId() {
@@ -257,10 +786,27 @@ public class SessionManager {
             return robotService;
         }
 
-        public void setRobotService(RobotService robotService) {
+        public synchronized void setRobotService(RobotService robotService) {
             this.robotService = robotService;
         }
 
+        /**
+         * 取出并清空RobotService，保证每个会话只释放一次
+         */
+        synchronized RobotService takeRobotService() {
+            RobotService service = robotService;
+            robotService = null;
+            return service;
+        }
+
+        OutboundQueue getOutbound() {
+            return outbound;
+        }
+
+        void setOutbound(OutboundQueue outbound) {
+            this.outbound = outbound;
+        }
+
         public long getLastHeartbeatTime() {
             return lastHeartbeatTime;
         }
@@ -268,6 +814,106 @@ public class SessionManager {
         public void updateHeartbeatTime() {
             this.lastHeartbeatTime = System.currentTimeMillis();
         }
+
+        public long getCreatedTime() {
+            return createdTime;
+        }
+
+        public boolean isCompression() {
+            return compression;
+        }
+
+        public void setCompression(boolean compression) {
+            this.compression = compression;
+        }
+
+        public boolean isProtobuf() {
+            return protobuf;
+        }
+
+        public void setProtobuf(boolean protobuf) {
+            this.protobuf = protobuf;
+        }
+
+        Timeout getIdleCheck() {
+            return idleCheck;
+        }
+
+        void setIdleCheck(Timeout idleCheck) {
+            this.idleCheck = idleCheck;
+        }
+    }
+
+    /**
+     * 安排下一次空闲检测
+     */
+    private void scheduleIdleCheck(WebSocketSession session, SessionInfo info, long delayMillis) {
+        try {
+            info.setIdleCheck(reaper.newTimeout(timeout -> checkIdle(session, info),
+                    Math.max(delayMillis, 1), TimeUnit.MILLISECONDS));
+        } catch (IllegalStateException e) {
+            // 时间轮已停止
+        }
+    }
+
+    /**
+     * 空闲检测：未鉴权超时或空闲超时的会话被关闭，空闲超过ping间隔时发送ping，
+     * 否则按最近活跃时间重新安排检测，活跃时只更新时间戳，不操作时间轮
+     */
+    private void checkIdle(WebSocketSession session, SessionInfo info) {
+        if (sessionInfos.get(info.getSessionId()) != info) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (!info.isAuthenticated()) {
+            if (now - info.getCreatedTime() >= TimeUnit.SECONDS.toMillis(sessionConfig.getAuthTimeoutSeconds())) {
+                LOG.info("Session {} not authenticated in time, closing", info.getSessionId());
+                idleClosedCount.incrementAndGet();
+                closeSession(session, CloseStatus.POLICY_VIOLATION.withReason("Authentication timeout"));
+                return;
+            }
+        }
+
+        long idleTimeout = TimeUnit.SECONDS.toMillis(sessionConfig.getIdleTimeoutSeconds());
+        long idle = now - info.getLastHeartbeatTime();
+        if (idle >= idleTimeout) {
+            LOG.info("Session {} idle for {} ms, closing", info.getSessionId(), idle);
+            idleClosedCount.incrementAndGet();
+            closeSession(session, CloseStatus.SESSION_NOT_RELIABLE.withReason("Idle timeout"));
+            return;
+        }
+
+        long delay = idleTimeout - idle;
+        long pingInterval = TimeUnit.SECONDS.toMillis(sessionConfig.getPingIntervalSeconds());
+        if (pingInterval > 0) {
+            if (idle >= pingInterval) {
+                info.getOutbound().send(new PingMessage(), true);
+                pingSentCount.incrementAndGet();
+                delay = Math.min(delay, pingInterval);
+            } else {
+                delay = Math.min(delay, pingInterval - idle);
+            }
+        }
+        if (!info.isAuthenticated()) {
+            long authRemaining = TimeUnit.SECONDS.toMillis(sessionConfig.getAuthTimeoutSeconds()) - (now - info.getCreatedTime());
+            delay = Math.min(delay, authRemaining);
+        }
+        scheduleIdleCheck(session, info, delay);
+    }
+
+    /**
+     * 因空闲或鉴权超时被关闭的会话数
+     */
+    public long getIdleClosedCount() {
+        return idleClosedCount.get();
+    }
+
+    /**
+     * 发送的ping数
+     */
+    public long getPingSentCount() {
+        return pingSentCount.get();
     }
 
     /**
@@ -278,7 +924,7 @@ public class SessionManager {
     }
 
     /**
-     * 更新心跳时间
+     * 更新心跳时间，收到任何入站帧时调用
      */
     public void updateHeartbeatTime(String sessionId) {
         SessionInfo info = sessionInfos.get(sessionId);
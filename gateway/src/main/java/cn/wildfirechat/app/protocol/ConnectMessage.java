@@ -29,6 +29,21 @@ public class ConnectMessage {
      */
     private String msg;
 
+    /**
+     * 是否压缩超过阈值的帧：请求时表示客户端支持，响应时表示网关已启用
+     */
+    private Boolean compress;
+
+    /**
+     * 帧格式："json"（默认）或"protobuf"：请求时表示客户端希望使用的格式，响应时表示网关已切换的格式
+     */
+    private String format;
+
+    /**
+     * 推送订阅条件（仅请求时使用），不设置时沿用该机器人其他在线会话声明的订阅，没有时推送所有消息
+     */
+    private PushFilter subscription;
+
     public ConnectMessage() {
     }
 
@@ -107,6 +122,30 @@ public class ConnectMessage {
         this.msg = msg;
     }
 
+    public Boolean getCompress() {
+        return compress;
+    }
+
+    public void setCompress(Boolean compress) {
+        this.compress = compress;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public void setFormat(String format) {
+        this.format = format;
+    }
+
+    public PushFilter getSubscription() {
+        return subscription;
+    }
+
+    public void setSubscription(PushFilter subscription) {
+        this.subscription = subscription;
+    }
+
     @Override
     public String toString() {
         return "ConnectMessage{" +
@@ -0,0 +1,205 @@
+package cn.wildfirechat.app.protocol;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 客户端发来的帧
+ * 一次流式解析读取区分消息类型的字段（type、method、requestId）及对应内容，
+ * 不再先按字符串匹配判断鉴权消息、再整体反序列化
+ */
+public class InboundFrame {
+
+    private static final Gson GSON = new Gson();
+
+    /**
+     * 帧类型
+     */
+    public enum Kind {
+        // 鉴权消息，type为"connect"
+        CONNECT,
+        // 心跳，method为"heartbeat"
+        HEARTBEAT,
+        // RPC请求
+        REQUEST
+    }
+
+    private String type;
+    private String requestId;
+    private String method;
+    private List<JsonElement> params;
+    private String robotId;
+    private String secret;
+    private boolean compress;
+    private String format;
+    private PushFilter subscription;
+
+    private InboundFrame() {
+    }
+
+    /**
+     * 解析客户端发来的文本帧
+     * @throws IOException JSON格式错误
+     */
+    public static InboundFrame parse(String payload) throws IOException {
+        InboundFrame frame = new InboundFrame();
+        // 严格模式：不接受注释、单引号和未加引号的名称，对象后还有内容时视为格式错误
+        try (JsonReader reader = new JsonReader(new StringReader(payload))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                switch (name) {
+                    case "type":
+                        frame.type = readString(reader);
+                        break;
+                    case "requestId":
+                        frame.requestId = readString(reader);
+                        break;
+                    case "method":
+                        frame.method = readString(reader);
+                        break;
+                    case "robotId":
+                        frame.robotId = readString(reader);
+                        break;
+                    case "secret":
+                        frame.secret = readString(reader);
+                        break;
+                    case "compress":
+                        frame.compress = "true".equals(readString(reader));
+                        break;
+                    case "format":
+                        frame.format = readString(reader);
+                        break;
+                    case "subscription":
+                        frame.subscription = GSON.fromJson(reader, PushFilter.class);
+                        break;
+                    case "params":
+                        frame.params = readParams(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new IOException("Unexpected content after JSON object");
+            }
+        } catch (IllegalStateException | NumberFormatException | JsonParseException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        return frame;
+    }
+
+    /**
+     * 解析协商protobuf格式后客户端发来的请求信封（见 {@link ProtobufEnvelope}），
+     * 参数仍是JSON，逐个解析为JsonElement
+     * @throws IOException 信封格式错误
+     */
+    public static InboundFrame parse(byte[] envelope) throws IOException {
+        InboundFrame frame = new InboundFrame();
+        CodedInputStream input = CodedInputStream.newInstance(envelope);
+        try {
+            int kind = 0;
+            while (true) {
+                int tag = input.readTag();
+                if (tag == 0) {
+                    break;
+                }
+                int field = WireFormat.getTagFieldNumber(tag);
+                if (field == ProtobufEnvelope.FIELD_KIND && tag == ProtobufEnvelope.KIND_TAG) {
+                    kind = input.readInt32();
+                } else if ((tag & 7) != WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                    input.skipField(tag);
+                } else if (field == ProtobufEnvelope.FIELD_REQUEST_ID) {
+                    frame.requestId = input.readString();
+                } else if (field == ProtobufEnvelope.FIELD_METHOD) {
+                    frame.method = input.readString();
+                } else if (field == ProtobufEnvelope.FIELD_PARAMS) {
+                    byte[] param = input.readRawBytes(input.readRawVarint32());
+                    if (frame.params == null) {
+                        frame.params = new ArrayList<>();
+                    }
+                    frame.params.add(JsonParser.parseString(new String(param, StandardCharsets.UTF_8)));
+                } else {
+                    input.skipField(tag);
+                }
+            }
+            if (kind != ProtobufEnvelope.KIND_REQUEST) {
+                throw new IOException("Unexpected envelope kind " + kind);
+            }
+        } catch (JsonParseException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+        return frame;
+    }
+
+    private static String readString(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER || token == JsonToken.BOOLEAN) {
+            return token == JsonToken.BOOLEAN ? String.valueOf(reader.nextBoolean()) : reader.nextString();
+        }
+        reader.skipValue();
+        return null;
+    }
+
+    private static List<JsonElement> readParams(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return null;
+        }
+        List<JsonElement> params = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            params.add(JsonParser.parseReader(reader));
+        }
+        reader.endArray();
+        return params;
+    }
+
+    public Kind getKind() {
+        if ("connect".equals(type)) {
+            return Kind.CONNECT;
+        }
+        return "heartbeat".equals(method) ? Kind.HEARTBEAT : Kind.REQUEST;
+    }
+
+    /**
+     * 转换为鉴权消息
+     */
+    public ConnectMessage toConnectMessage() {
+        ConnectMessage connectMessage = new ConnectMessage(type, robotId, secret);
+        if (compress) {
+            connectMessage.setCompress(true);
+        }
+        connectMessage.setFormat(format);
+        connectMessage.setSubscription(subscription);
+        return connectMessage;
+    }
+
+    /**
+     * 转换为请求消息
+     */
+    public RequestMessage toRequestMessage() {
+        return new RequestMessage(requestId, method, params);
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+}
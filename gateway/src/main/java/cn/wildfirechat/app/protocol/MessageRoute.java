@@ -0,0 +1,304 @@
+package cn.wildfirechat.app.protocol;
+
+import cn.wildfirechat.pojos.Conversation;
+import cn.wildfirechat.pojos.OutputMessageData;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * IM回调消息的路由信息
+ * 通过流式解析只读取路由和订阅过滤所需字段（conv.type、conv.target、toRobotId、sender、messageId、
+ * payload.type、payload.mentionedType、payload.mentionedTarget），不构建完整的OutputMessageData
+ */
+public class MessageRoute {
+    /**
+     * 是否包含conv字段
+     */
+    private boolean hasConv;
+
+    /**
+     * 会话类型
+     */
+    private int convType;
+
+    /**
+     * 会话目标
+     */
+    private String convTarget;
+
+    /**
+     * 群聊等场景下的目标机器人ID
+     */
+    private String toRobotId;
+
+    /**
+     * 发送者
+     */
+    private String sender;
+
+    /**
+     * 消息ID
+     */
+    private long messageId;
+
+    /**
+     * 消息内容类型
+     */
+    private int payloadType;
+
+    /**
+     * @类型：0没有@，1@部分成员，2@所有人
+     */
+    private int mentionedType;
+
+    /**
+     * 被@的成员
+     */
+    private List<String> mentionedTarget;
+
+    private MessageRoute() {
+    }
+
+    /**
+     * 从IM回调的原始JSON中解析路由信息
+     * @throws IOException JSON格式错误，或对象之后还有其他内容
+     */
+    public static MessageRoute parse(byte[] json) throws IOException {
+        return parse(json, 0, json.length);
+    }
+
+    /**
+     * 从推送帧（见 {@link PushMessage#rawMessage(byte[])}）中解析消息的路由信息
+     * @return 不是消息推送帧时返回null
+     * @throws IOException JSON格式错误
+     */
+    public static MessageRoute parsePushFrame(byte[] frame) throws IOException {
+        int offset = PushMessage.rawDataOffset(frame);
+        return offset < 0 ? null : parse(frame, offset, frame.length - 1 - offset);
+    }
+
+    private static MessageRoute parse(byte[] json, int offset, int length) throws IOException {
+        MessageRoute route = new MessageRoute();
+        try (JsonReader reader = new JsonReader(new StringReader(new String(json, offset, length, StandardCharsets.UTF_8)))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("conv".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    readConversation(reader, route);
+                } else if ("payload".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    readPayload(reader, route);
+                } else if ("toRobotId".equals(name) && reader.peek() == JsonToken.STRING) {
+                    route.toRobotId = reader.nextString();
+                } else if ("sender".equals(name) && reader.peek() == JsonToken.STRING) {
+                    route.sender = reader.nextString();
+                } else if ("messageId".equals(name) && reader.peek() == JsonToken.NUMBER) {
+                    route.messageId = reader.nextLong();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            // 透传模式会把原始字节原样拼进推送帧，对象之后不允许有其他内容
+            reader.endObject();
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new IOException("Unexpected content after JSON object");
+            }
+        }
+        return route;
+    }
+
+    /**
+     * 把JSON数组拆分为每个元素的原始字节，不解析元素内容
+     * 只识别数组和对象的括号、字符串和转义，元素本身的格式由 {@link #parse(byte[])} 检查
+     * @throws IOException 不是JSON数组或括号不匹配
+     */
+    public static List<byte[]> splitArray(byte[] json) throws IOException {
+        List<byte[]> elements = new ArrayList<>();
+        int i = skipWhitespace(json, 0);
+        if (i >= json.length || json[i] != '[') {
+            throw new IOException("Expected JSON array");
+        }
+        int depth = 0;
+        int start = -1;
+        boolean inString = false;
+        for (i = i + 1; i < json.length; i++) {
+            byte b = json[i];
+            if (inString) {
+                if (b == '\\') {
+                    i++;
+                } else if (b == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+            if (b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+                continue;
+            }
+            if (start < 0) {
+                if (depth == 0 && b == ']' && elements.isEmpty() && skipWhitespace(json, i + 1) == json.length) {
+                    return elements;
+                }
+                start = i;
+            }
+            if (b == '"') {
+                inString = true;
+            } else if (b == '{' || b == '[') {
+                depth++;
+            } else if (b == '}' || b == ']') {
+                if (depth == 0) {
+                    if (b == '}') {
+                        throw new IOException("Unbalanced JSON array");
+                    }
+                    elements.add(trimmedCopy(json, start, i));
+                    if (skipWhitespace(json, i + 1) != json.length) {
+                        throw new IOException("Unexpected content after JSON array");
+                    }
+                    return elements;
+                }
+                depth--;
+            } else if (b == ',' && depth == 0) {
+                elements.add(trimmedCopy(json, start, i));
+                start = -1;
+            }
+        }
+        throw new IOException("Unterminated JSON array");
+    }
+
+    private static int skipWhitespace(byte[] json, int i) {
+        while (i < json.length && (json[i] == ' ' || json[i] == '\t' || json[i] == '\r' || json[i] == '\n')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static byte[] trimmedCopy(byte[] json, int start, int end) throws IOException {
+        while (end > start && (json[end - 1] == ' ' || json[end - 1] == '\t' || json[end - 1] == '\r' || json[end - 1] == '\n')) {
+            end--;
+        }
+        if (end <= start) {
+            throw new IOException("Empty JSON array element");
+        }
+        return Arrays.copyOfRange(json, start, end);
+    }
+
+    private static void readConversation(JsonReader reader, MessageRoute route) throws IOException {
+        route.hasConv = true;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("type".equals(name) && reader.peek() == JsonToken.NUMBER) {
+                route.convType = reader.nextInt();
+            } else if ("target".equals(name) && reader.peek() == JsonToken.STRING) {
+                route.convTarget = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * 只读取订阅过滤所需的字段，跳过消息内容
+     */
+    private static void readPayload(JsonReader reader, MessageRoute route) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("type".equals(name) && reader.peek() == JsonToken.NUMBER) {
+                route.payloadType = reader.nextInt();
+            } else if ("mentionedType".equals(name) && reader.peek() == JsonToken.NUMBER) {
+                route.mentionedType = reader.nextInt();
+            } else if ("mentionedTarget".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                List<String> targets = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (reader.peek() == JsonToken.STRING) {
+                        targets.add(reader.nextString());
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endArray();
+                route.mentionedTarget = targets;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * 获取目标机器人ID，规则与ServiceImpl一致：单聊取conv.target，其他取toRobotId
+     * @return 无法确定时返回null
+     */
+    public String getTargetRobotId() {
+        if (!hasConv) {
+            return null;
+        }
+        return convType == 0 ? convTarget : toRobotId;
+    }
+
+    /**
+     * 同一机器人有多个会话时选择会话的聊天对象，见 {@link #deliveryKey(int, String, String)}
+     */
+    public String getDeliveryKey() {
+        return deliveryKey(convType, convTarget, sender);
+    }
+
+    /**
+     * 聊天对象：单聊的会话目标是机器人自己，取发送者；其他会话取会话类型和目标
+     */
+    public static String deliveryKey(int convType, String convTarget, String sender) {
+        if (convType == 0) {
+            return sender;
+        }
+        return convTarget != null ? convType + "|" + convTarget : null;
+    }
+
+    /**
+     * 已反序列化消息的聊天对象，与 {@link #getDeliveryKey()} 一致
+     * @return 消息没有会话时返回null
+     */
+    public static String deliveryKey(OutputMessageData data) {
+        Conversation conv = data.getConv();
+        return conv != null ? deliveryKey(conv.getType(), conv.getTarget(), data.getSender()) : null;
+    }
+
+    public int getConvType() {
+        return convType;
+    }
+
+    public String getConvTarget() {
+        return convTarget;
+    }
+
+    public String getToRobotId() {
+        return toRobotId;
+    }
+
+    public String getSender() {
+        return sender;
+    }
+
+    public long getMessageId() {
+        return messageId;
+    }
+
+    public int getPayloadType() {
+        return payloadType;
+    }
+
+    public int getMentionedType() {
+        return mentionedType;
+    }
+
+    public List<String> getMentionedTarget() {
+        return mentionedTarget;
+    }
+}
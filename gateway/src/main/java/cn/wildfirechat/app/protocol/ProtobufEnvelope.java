@@ -0,0 +1,190 @@
+package cn.wildfirechat.app.protocol;
+
+import com.google.gson.Gson;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * protobuf帧格式
+ * 鉴权时客户端在connect消息中声明format为"protobuf"，网关同意后双方改用二进制帧传输以下信封，
+ * 鉴权消息始终是JSON文本帧：
+ * <pre>
+ * message Envelope {
+ *   Kind   kind       = 1;  // 始终是第一个字段
+ *   string request_id = 2;
+ *   string method     = 3;
+ *   repeated bytes params = 4;  // 每个参数的JSON（UTF-8）
+ *   int32  code       = 5;
+ *   string msg        = 6;
+ *   bytes  result     = 7;  // 结果的JSON
+ *   string push_type  = 8;  // "message" 或 "event"
+ *   bytes  data       = 9;  // OutputMessageData的JSON
+ *   string event      = 10;
+ *   bytes  extra      = 11; // 额外数据的JSON
+ * }
+ * enum Kind { REQUEST = 1; RESPONSE = 2; PUSH = 3; }
+ * </pre>
+ * 参数、结果和消息数据是SDK对象，没有对应的protobuf定义，仍以JSON字节嵌入；
+ * 透传模式下IM回调的原始JSON直接作为data写入，不再拼接和转义。
+ * 协商压缩后超过阈值的信封整体deflate，压缩数据的第一个字节不会是kind字段的tag，以此区分
+ */
+public final class ProtobufEnvelope {
+
+    public static final int KIND_REQUEST = 1;
+    public static final int KIND_RESPONSE = 2;
+    public static final int KIND_PUSH = 3;
+
+    static final int FIELD_KIND = 1;
+    static final int FIELD_REQUEST_ID = 2;
+    static final int FIELD_METHOD = 3;
+    static final int FIELD_PARAMS = 4;
+    static final int FIELD_CODE = 5;
+    static final int FIELD_MSG = 6;
+    static final int FIELD_RESULT = 7;
+    static final int FIELD_PUSH_TYPE = 8;
+    static final int FIELD_DATA = 9;
+    static final int FIELD_EVENT = 10;
+    static final int FIELD_EXTRA = 11;
+
+    /**
+     * kind字段的tag，信封的第一个字节
+     */
+    static final int KIND_TAG = FIELD_KIND << 3 | WireFormat.WIRETYPE_VARINT;
+
+    private ProtobufEnvelope() {
+    }
+
+    /**
+     * 二进制帧是否为未压缩的信封
+     */
+    public static boolean isEnvelope(byte[] frame) {
+        return frame.length > 0 && frame[0] == KIND_TAG;
+    }
+
+    /**
+     * 编码发往客户端的响应和推送
+     * @return 信封，其他消息类型（如鉴权消息）返回null
+     */
+    public static byte[] encode(Object message, Gson gson) {
+        if (message instanceof ResponseMessage) {
+            ResponseMessage response = (ResponseMessage) message;
+            Writer writer = new Writer(KIND_RESPONSE)
+                    .string(FIELD_REQUEST_ID, response.getRequestId())
+                    .int32(FIELD_CODE, response.getCode())
+                    .string(FIELD_MSG, response.getMsg());
+            if (response.getResult() != null) {
+                writer.json(FIELD_RESULT, gson.toJson(response.getResult()));
+            }
+            return writer.toByteArray();
+        }
+        if (message instanceof PushMessage) {
+            PushMessage push = (PushMessage) message;
+            Writer writer = new Writer(KIND_PUSH)
+                    .string(FIELD_PUSH_TYPE, push.getType())
+                    .string(FIELD_EVENT, push.getEvent());
+            if (push.getData() != null) {
+                writer.json(FIELD_DATA, gson.toJson(push.getData()));
+            }
+            if (push.getExtra() != null) {
+                writer.json(FIELD_EXTRA, gson.toJson(push.getExtra()));
+            }
+            return writer.toByteArray();
+        }
+        return null;
+    }
+
+    /**
+     * 把已编码的推送帧JSON（见 {@link PushMessage#rawMessage(byte[])}）转换为信封，
+     * 消息数据部分直接复制，不做解析
+     * @return 信封，不是消息推送帧时返回null
+     */
+    public static byte[] encodeRawPush(byte[] frame) {
+        int offset = PushMessage.rawDataOffset(frame);
+        if (offset < 0) {
+            return null;
+        }
+        return new Writer(KIND_PUSH)
+                .string(FIELD_PUSH_TYPE, "message")
+                .bytes(FIELD_DATA, frame, offset, frame.length - 1 - offset)
+                .toByteArray();
+    }
+
+    /**
+     * 先计算长度再写入，字节字段不经过ByteString复制
+     */
+    private static class Writer {
+        private final Object[] values = new Object[FIELD_EXTRA + 1];
+        private final int[] offsets = new int[FIELD_EXTRA + 1];
+        private final int[] lengths = new int[FIELD_EXTRA + 1];
+        private final int kind;
+
+        Writer(int kind) {
+            this.kind = kind;
+        }
+
+        Writer string(int field, String value) {
+            if (value != null) {
+                values[field] = value;
+            }
+            return this;
+        }
+
+        Writer int32(int field, int value) {
+            values[field] = value;
+            return this;
+        }
+
+        Writer json(int field, String json) {
+            byte[] data = json.getBytes(StandardCharsets.UTF_8);
+            return bytes(field, data, 0, data.length);
+        }
+
+        Writer bytes(int field, byte[] data, int offset, int length) {
+            values[field] = data;
+            offsets[field] = offset;
+            lengths[field] = length;
+            return this;
+        }
+
+        byte[] toByteArray() {
+            int size = CodedOutputStream.computeInt32Size(FIELD_KIND, kind);
+            for (int field = FIELD_REQUEST_ID; field < values.length; field++) {
+                Object value = values[field];
+                if (value instanceof String) {
+                    size += CodedOutputStream.computeStringSize(field, (String) value);
+                } else if (value instanceof Integer) {
+                    size += CodedOutputStream.computeInt32Size(field, (Integer) value);
+                } else if (value instanceof byte[]) {
+                    size += CodedOutputStream.computeTagSize(field)
+                            + CodedOutputStream.computeRawVarint32Size(lengths[field]) + lengths[field];
+                }
+            }
+
+            byte[] out = new byte[size];
+            CodedOutputStream output = CodedOutputStream.newInstance(out);
+            try {
+                output.writeInt32(FIELD_KIND, kind);
+                for (int field = FIELD_REQUEST_ID; field < values.length; field++) {
+                    Object value = values[field];
+                    if (value instanceof String) {
+                        output.writeString(field, (String) value);
+                    } else if (value instanceof Integer) {
+                        output.writeInt32(field, (Integer) value);
+                    } else if (value instanceof byte[]) {
+                        output.writeTag(field, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+                        output.writeRawVarint32(lengths[field]);
+                        output.writeRawBytes((byte[]) value, offsets[field], lengths[field]);
+                    }
+                }
+                output.checkNoSpaceLeft();
+            } catch (IOException e) {
+                // 写入预先分配好的数组不会出现IO错误
+                throw new IllegalStateException(e);
+            }
+            return out;
+        }
+    }
+}
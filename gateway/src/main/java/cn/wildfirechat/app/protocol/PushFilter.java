@@ -0,0 +1,74 @@
+package cn.wildfirechat.app.protocol;
+
+import java.util.List;
+
+/**
+ * 推送订阅条件
+ * 客户端在鉴权消息的subscription字段或subscribe请求中声明，网关只推送满足全部条件的消息，未设置的条件不限制
+ */
+public class PushFilter {
+    /**
+     * 会话类型，如[0]只接收单聊消息
+     */
+    private List<Integer> convTypes;
+
+    /**
+     * 消息内容类型下限（包含）
+     */
+    private Integer minPayloadType;
+
+    /**
+     * 消息内容类型上限（包含）
+     */
+    private Integer maxPayloadType;
+
+    /**
+     * 为true时非单聊消息只推送@机器人或@所有人的消息
+     */
+    private Boolean mentionsOnly;
+
+    /**
+     * 发送者白名单
+     */
+    private List<String> senders;
+
+    public List<Integer> getConvTypes() {
+        return convTypes;
+    }
+
+    public void setConvTypes(List<Integer> convTypes) {
+        this.convTypes = convTypes;
+    }
+
+    public Integer getMinPayloadType() {
+        return minPayloadType;
+    }
+
+    public void setMinPayloadType(Integer minPayloadType) {
+        this.minPayloadType = minPayloadType;
+    }
+
+    public Integer getMaxPayloadType() {
+        return maxPayloadType;
+    }
+
+    public void setMaxPayloadType(Integer maxPayloadType) {
+        this.maxPayloadType = maxPayloadType;
+    }
+
+    public Boolean getMentionsOnly() {
+        return mentionsOnly;
+    }
+
+    public void setMentionsOnly(Boolean mentionsOnly) {
+        this.mentionsOnly = mentionsOnly;
+    }
+
+    public List<String> getSenders() {
+        return senders;
+    }
+
+    public void setSenders(List<String> senders) {
+        this.senders = senders;
+    }
+}
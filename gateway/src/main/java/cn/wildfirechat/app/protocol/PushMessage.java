@@ -2,10 +2,14 @@ package cn.wildfirechat.app.protocol;
 
 import cn.wildfirechat.pojos.OutputMessageData;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * 推送消息（网关 &rarr; 客户端）
  */
 public class PushMessage {
+    private static final byte[] RAW_MESSAGE_PREFIX = "{\"type\":\"message\",\"data\":".getBytes(StandardCharsets.UTF_8);
+
     /**
      * 消息类型
      * "message" - 普通消息推送
@@ -40,6 +44,35 @@ public class PushMessage {
         return new PushMessage("message", data);
     }
 
+    /**
+     * 直接用IM回调的原始JSON构建推送帧，与 message(data) 序列化后的结构一致
+     * @param data OutputMessageData的原始JSON（UTF-8）
+     * @return 完整的推送帧JSON（UTF-8）
+     */
+    public static byte[] rawMessage(byte[] data) {
+        byte[] frame = new byte[RAW_MESSAGE_PREFIX.length + data.length + 1];
+        System.arraycopy(RAW_MESSAGE_PREFIX, 0, frame, 0, RAW_MESSAGE_PREFIX.length);
+        System.arraycopy(data, 0, frame, RAW_MESSAGE_PREFIX.length, data.length);
+        frame[frame.length - 1] = '}';
+        return frame;
+    }
+
+    /**
+     * 由 rawMessage(data) 或 message(data) 序列化得到的推送帧中消息数据的起始位置，数据到最后一个字节之前结束
+     * @return 不是消息推送帧时返回-1
+     */
+    static int rawDataOffset(byte[] frame) {
+        if (frame.length <= RAW_MESSAGE_PREFIX.length || frame[frame.length - 1] != '}') {
+            return -1;
+        }
+        for (int i = 0; i < RAW_MESSAGE_PREFIX.length; i++) {
+            if (frame[i] != RAW_MESSAGE_PREFIX[i]) {
+                return -1;
+            }
+        }
+        return RAW_MESSAGE_PREFIX.length;
+    }
+
     public static PushMessage event(String event, Object extra) {
         PushMessage msg = new PushMessage("event", null);
         msg.setEvent(event);
@@ -1,5 +1,7 @@
 package cn.wildfirechat.app.protocol;
 
+import com.google.gson.JsonElement;
+
 import java.util.List;
 
 /**
@@ -18,13 +20,14 @@ public class RequestMessage {
 
     /**
      * 参数列表
+     * 保留为JsonElement，由RobotProxy按目标方法的参数类型直接绑定，避免二次序列化
      */
-    private List<Object> params;
+    private List<JsonElement> params;
 
     public RequestMessage() {
     }
 
-    public RequestMessage(String requestId, String method, List<Object> params) {
+    public RequestMessage(String requestId, String method, List<JsonElement> params) {
         this.requestId = requestId;
         this.method = method;
         this.params = params;
@@ -46,11 +49,11 @@ public class RequestMessage {
         this.method = method;
     }
 
-    public List<Object> getParams() {
+    public List<JsonElement> getParams() {
         return params;
     }
 
-    public void setParams(List<Object> params) {
+    public void setParams(List<JsonElement> params) {
         this.params = params;
     }
 
@@ -1,6 +1,7 @@
 package cn.wildfirechat.app.service;
 
 import cn.wildfirechat.app.config.BotFatherConfig;
+import cn.wildfirechat.app.gateway.RobotServiceFactory;
 import cn.wildfirechat.common.ErrorCode;
 import cn.wildfirechat.pojos.*;
 import cn.wildfirechat.sdk.RelationAdmin;
@@ -12,7 +13,6 @@ import io.netty.util.internal.StringUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
@@ -30,8 +30,8 @@ public class RobotFatherService {
     @Autowired
     private BotFatherConfig botFatherConfig;
 
-    @Value("${im.url}")
-    private String imUrl;
+    @Autowired
+    private RobotServiceFactory robotServiceFactory;
 
     // 内存缓存：用户ID -> 机器人信息
     private final Map<String, RobotInfo> userRobotCache = new HashMap<>();
@@ -144,11 +144,10 @@ public class RobotFatherService {
      * @param robotDisplayName 机器人显示名称
      */
     private void sendWelcomeMessage(String userId, String robotId, String robotSecret, String robotDisplayName) {
-        try {
-            LOG.info("Sending welcome message from robot {} to user {}", robotId, userId);
+        LOG.info("Sending welcome message from robot {} to user {}", robotId, userId);
 
-            // 创建机器人服务实例
-            RobotService robotService = new RobotService(imUrl, robotId, robotSecret);
+        // 创建机器人服务实例，使用共享连接池
+        try (RobotService robotService = robotServiceFactory.create(robotId, robotSecret)) {
 
             // 构建会话（私聊）
             Conversation conversation = new Conversation();
@@ -0,0 +1,75 @@
+package cn.wildfirechat.app;
+
+import cn.wildfirechat.app.config.ThreadPoolConfig;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 模拟慢IM服务的简单基准：每个任务阻塞固定时间，比较线程池和虚拟线程模式完成同一批任务的耗时
+ * 使用webhook线程池的默认配置（10/20/10000），虚拟线程模式的并发上限与之一致；JDK 21以下只运行线程池模式
+ * 运行：mvn -pl gateway test-compile exec:java -Dexec.classpathScope=test
+ *      -Dexec.mainClass=cn.wildfirechat.app.BlockingExecutorBenchmark
+ */
+public class BlockingExecutorBenchmark {
+
+    private static final int TASKS = 2000;
+    private static final long IM_LATENCY_MILLIS = 50;
+
+    public static void main(String[] args) throws Exception {
+        ThreadPoolConfig.Pool pool = new ThreadPoolConfig().getWebhook();
+        int maxConcurrency = pool.getMaxSize() + pool.getQueueCapacity();
+
+        ThreadPoolTaskExecutor threadPool = new ThreadPoolTaskExecutor();
+        threadPool.setCorePoolSize(pool.getCoreSize());
+        threadPool.setMaxPoolSize(pool.getMaxSize());
+        threadPool.setQueueCapacity(pool.getQueueCapacity());
+        threadPool.setThreadNamePrefix("bench-");
+        threadPool.initialize();
+        try {
+            run("thread pool", threadPool);
+        } finally {
+            threadPool.shutdown();
+        }
+
+        if (VirtualThreadTaskExecutor.isSupported()) {
+            VirtualThreadTaskExecutor virtual = VirtualThreadTaskExecutor.create("bench", maxConcurrency);
+            try {
+                run("virtual threads", virtual);
+            } finally {
+                virtual.destroy();
+            }
+        } else {
+            System.out.println("virtual threads: skipped, requires JDK 21+");
+        }
+    }
+
+    private static void run(String name, TaskExecutor executor) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(TASKS);
+        AtomicInteger rejected = new AtomicInteger();
+        long start = System.nanoTime();
+        for (int i = 0; i < TASKS; i++) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        Thread.sleep(IM_LATENCY_MILLIS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    done.countDown();
+                });
+            } catch (RejectedExecutionException e) {
+                rejected.incrementAndGet();
+                done.countDown();
+            }
+        }
+        done.await();
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        System.out.printf("%s: %d tasks of %d ms in %d ms (%.0f tasks/s), %d rejected%n",
+                name, TASKS, IM_LATENCY_MILLIS, millis, TASKS * 1000.0 / Math.max(1, millis), rejected.get());
+    }
+}
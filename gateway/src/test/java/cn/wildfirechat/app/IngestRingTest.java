@@ -0,0 +1,77 @@
+package cn.wildfirechat.app;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngestRingTest {
+
+    @Test
+    void capacityRoundsUpToPowerOfTwo() {
+        assertEquals(2, IngestRing.roundCapacity(0));
+        assertEquals(2, IngestRing.roundCapacity(1));
+        assertEquals(2, IngestRing.roundCapacity(2));
+        assertEquals(4, IngestRing.roundCapacity(3));
+        assertEquals(4, IngestRing.roundCapacity(4));
+        assertEquals(8, IngestRing.roundCapacity(5));
+        assertEquals(8192, IngestRing.roundCapacity(8192));
+        assertEquals(16384, IngestRing.roundCapacity(8193));
+    }
+
+    @Test
+    void smallRingDeliversInOrder() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        IngestRing ring = new IngestRing("test", new KeyedExecutor("test", pool, 1000), 2);
+        try {
+            assertEquals(2, ring.getCapacity());
+            List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch done = new CountDownLatch(100);
+            for (int i = 0; i < 100; i++) {
+                int n = i;
+                Runnable task = () -> {
+                    order.add(n);
+                    done.countDown();
+                };
+                // 容量只有2，写满时等分发线程取出后重试
+                while (true) {
+                    try {
+                        ring.execute("k", task);
+                        break;
+                    } catch (RejectedExecutionException e) {
+                        Thread.yield();
+                    }
+                }
+            }
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i, order.get(i));
+            }
+        } finally {
+            ring.shutdown();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void rejectsBatchLargerThanCapacity() {
+        IngestRing ring = new IngestRing("test", new KeyedExecutor("test", Runnable::run, 1000), 2);
+        try {
+            Runnable noop = () -> { };
+            assertThrows(RejectedExecutionException.class,
+                    () -> ring.executeAll(Arrays.asList("a", "b", "c"), Arrays.asList(noop, noop, noop)));
+            assertEquals(3, ring.getShedCount());
+        } finally {
+            ring.shutdown();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package cn.wildfirechat.app;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeyedExecutorTest {
+
+    @Test
+    void sameKeyRunsInOrder() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            KeyedExecutor executor = new KeyedExecutor("test", pool, 1000);
+            List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch done = new CountDownLatch(100);
+            for (int i = 0; i < 100; i++) {
+                int n = i;
+                executor.execute("k", () -> {
+                    order.add(n);
+                    done.countDown();
+                });
+            }
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i, order.get(i));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void rejectsWhenKeyQueueIsFull() {
+        // 底层线程池不执行任务，任务一直排队
+        KeyedExecutor executor = new KeyedExecutor("test", task -> { }, 2);
+        executor.execute("k", () -> { });
+        executor.execute("k", () -> { });
+        assertThrows(RejectedExecutionException.class, () -> executor.execute("k", () -> { }));
+        assertEquals(1, executor.getRejectedCount());
+    }
+
+    @Test
+    void resumeNeverRunsTasksOnCompletingThread() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        AtomicBoolean saturated = new AtomicBoolean();
+        try {
+            // 模拟线程池已满：saturated期间拒绝所有提交
+            KeyedExecutor executor = new KeyedExecutor("test", task -> {
+                if (saturated.get()) {
+                    throw new RejectedExecutionException("saturated");
+                }
+                pool.execute(task);
+            }, 1000);
+
+            CompletableFuture<Void> imCall = new CompletableFuture<>();
+            CountDownLatch started = new CountDownLatch(1);
+            executor.executeAsync("k", () -> {
+                started.countDown();
+                return imCall;
+            });
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            AtomicReference<Thread> ranOn = new AtomicReference<>();
+            CountDownLatch next = new CountDownLatch(1);
+            executor.execute("k", () -> {
+                ranOn.set(Thread.currentThread());
+                next.countDown();
+            });
+
+            saturated.set(true);
+            Thread completer = new Thread(() -> imCall.complete(null), "io-reactor");
+            completer.start();
+            completer.join();
+            assertFalse(next.await(50, TimeUnit.MILLISECONDS));
+
+            saturated.set(false);
+            assertTrue(next.await(5, TimeUnit.SECONDS));
+            assertNotSame(completer, ranOn.get());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void rejectedSubmitRollsBackOnlyItsOwnTask() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        AtomicBoolean rejectNext = new AtomicBoolean(true);
+        List<String> ran = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<KeyedExecutor> ref = new AtomicReference<>();
+        try {
+            // 第一次提交到线程池时，另一个提交者已把同一key的任务追加到队列，然后线程池拒绝
+            KeyedExecutor executor = new KeyedExecutor("test", task -> {
+                if (rejectNext.getAndSet(false)) {
+                    ref.get().execute("k", () -> {
+                        ran.add("concurrent");
+                        done.countDown();
+                    });
+                    throw new RejectedExecutionException("saturated");
+                }
+                pool.execute(task);
+            }, 1000);
+            ref.set(executor);
+
+            assertThrows(RejectedExecutionException.class, () -> executor.execute("k", () -> ran.add("rejected")));
+            assertEquals(1, executor.getRejectedCount());
+
+            // 追加的任务不会丢失，也不需要等待下一次提交
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(Collections.singletonList("concurrent"), ran);
+            assertEquals(0, executor.getQueuedTasks());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void rejectedSubmitReleasesIdleKey() {
+        KeyedExecutor executor = new KeyedExecutor("test", task -> {
+            throw new RejectedExecutionException("saturated");
+        }, 1000);
+        assertThrows(RejectedExecutionException.class, () -> executor.execute("k", () -> { }));
+        assertEquals(0, executor.getActiveKeys());
+        assertEquals(0, executor.getQueuedTasks());
+    }
+}
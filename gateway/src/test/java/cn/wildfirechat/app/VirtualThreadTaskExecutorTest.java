@@ -0,0 +1,55 @@
+package cn.wildfirechat.app;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.TaskRejectedException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class VirtualThreadTaskExecutorTest {
+
+    @Test
+    void rejectsBeyondMaxConcurrency() throws Exception {
+        assumeTrue(VirtualThreadTaskExecutor.isSupported(), "requires JDK 21+");
+        VirtualThreadTaskExecutor executor = VirtualThreadTaskExecutor.create("test", 2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+        try {
+            for (int i = 0; i < 2; i++) {
+                executor.execute(() -> {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    done.countDown();
+                });
+            }
+            assertEquals(2, executor.getActiveCount());
+            assertThrows(TaskRejectedException.class, () -> executor.execute(() -> { }));
+            assertEquals(1, executor.getRejectedCount());
+
+            release.countDown();
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            // 任务结束后许可归还，可以继续提交
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (executor.getActiveCount() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(2, executor.getCompletedCount());
+            executor.execute(() -> { });
+        } finally {
+            release.countDown();
+            executor.destroy();
+        }
+    }
+
+    @Test
+    void createFailsWithoutVirtualThreads() {
+        assumeTrue(!VirtualThreadTaskExecutor.isSupported());
+        assertThrows(IllegalStateException.class, () -> VirtualThreadTaskExecutor.create("test", 1));
+    }
+}
@@ -0,0 +1,184 @@
+package cn.wildfirechat.app.gateway;
+
+import cn.wildfirechat.app.config.CompressionConfig;
+import cn.wildfirechat.app.protocol.PushMessage;
+import cn.wildfirechat.app.protocol.ResponseMessage;
+import cn.wildfirechat.pojos.Conversation;
+import cn.wildfirechat.pojos.MessagePayload;
+import cn.wildfirechat.pojos.OutputMessageData;
+import com.google.gson.Gson;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * 压缩阈值的简单基准，用于选择gateway.compression.threshold和level
+ * 先按帧大小分段全部压缩，输出各段的压缩率和每帧压缩耗时；再用短消息推送、长文本推送和RPC响应混合的帧序列，
+ * 输出不同阈值和压缩级别下被压缩的帧比例、压缩后发送的总字节占原始字节的比例，以及每万帧的压缩CPU耗时
+ * 运行：mvn -pl gateway test-compile exec:java -Dexec.classpathScope=test
+ *      -Dexec.mainClass=cn.wildfirechat.app.gateway.FrameCompressorBenchmark
+ */
+public class FrameCompressorBenchmark {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 5;
+    private static final int FRAMES = 10_000;
+    private static final int[] THRESHOLDS = {0, 256, 512, 1024, 4096, 16384};
+    private static final int[] LEVELS = {1, 6, 9};
+    private static final int[] BUCKETS = {256, 512, 1024, 4096, 16384, Integer.MAX_VALUE};
+
+    private static final String[] WORDS = {"今天", "下午", "会议", "请", "准时", "参加", "项目", "进度", "已经", "完成",
+            "需要", "确认", "一下", "文件", "发到", "群里", "谢谢", "好的", "收到", "明天", "上线", "测试", "环境",
+            "ok", "done", "PR", "review", "bug", "https://example.com/doc/", "，", "。", "！", "？", " "};
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        List<byte[]> frames = frames(new Gson(), new Random(42));
+        long total = 0;
+        for (byte[] frame : frames) {
+            total += frame.length;
+        }
+        System.out.printf("frames: %d, avg %d bytes%n", frames.size(), total / frames.size());
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            for (int level : LEVELS) {
+                run(frames, compressor(0, level));
+            }
+        }
+
+        // 各大小段全部压缩时的压缩率和每帧耗时
+        for (int level : LEVELS) {
+            FrameCompressor[] byBucket = new FrameCompressor[BUCKETS.length];
+            for (int b = 0; b < BUCKETS.length; b++) {
+                byBucket[b] = compressor(0, level);
+            }
+            for (int i = 0; i < ROUNDS; i++) {
+                for (byte[] frame : frames) {
+                    sink = byBucket[bucket(frame.length)].compress(frame);
+                }
+            }
+            StringBuilder line = new StringBuilder("level " + level + " by size:");
+            int lower = 0;
+            for (int b = 0; b < BUCKETS.length; b++) {
+                if (byBucket[b].getCompressedFrames() == 0) {
+                    lower = BUCKETS[b];
+                    continue;
+                }
+                line.append(String.format(" [%d,%s) ratio %.2f %.1f us/frame;", lower,
+                        BUCKETS[b] == Integer.MAX_VALUE ? "-" : String.valueOf(BUCKETS[b]),
+                        byBucket[b].getCompressionRatio(), byBucket[b].getAvgCompressMicros()));
+                lower = BUCKETS[b];
+            }
+            System.out.println(line);
+        }
+
+        // 混合帧序列在不同阈值下的效果
+        for (int level : LEVELS) {
+            for (int threshold : THRESHOLDS) {
+                FrameCompressor compressor = null;
+                long wireBytes = 0;
+                for (int i = 0; i < ROUNDS; i++) {
+                    compressor = compressor(threshold, level);
+                    wireBytes = run(frames, compressor);
+                }
+                System.out.printf("level %d threshold %5d: compressed %5.1f%% of frames, ratio %.2f, "
+                                + "wire bytes %5.1f%% of original, compress cpu %d ms per %d frames%n",
+                        level, threshold, 100.0 * compressor.getCompressedFrames() / frames.size(),
+                        compressor.getCompressionRatio(), 100.0 * wireBytes / total,
+                        compressor.getCompressMillis(), frames.size());
+            }
+        }
+    }
+
+    /**
+     * 按SessionManager的方式发送：达到阈值的帧压缩，返回实际发送的总字节数
+     */
+    private static long run(List<byte[]> frames, FrameCompressor compressor) {
+        long wireBytes = 0;
+        for (byte[] frame : frames) {
+            byte[] sent = compressor.shouldCompress(frame.length) ? compressor.compress(frame) : frame;
+            wireBytes += sent.length;
+            sink = sent;
+        }
+        return wireBytes;
+    }
+
+    private static FrameCompressor compressor(int threshold, int level) throws Exception {
+        CompressionConfig config = new CompressionConfig();
+        config.setThreshold(threshold);
+        config.setLevel(level);
+        FrameCompressor compressor = new FrameCompressor();
+        Field field = FrameCompressor.class.getDeclaredField("compressionConfig");
+        field.setAccessible(true);
+        field.set(compressor, config);
+        return compressor;
+    }
+
+    private static int bucket(int length) {
+        int b = 0;
+        while (length >= BUCKETS[b]) {
+            b++;
+        }
+        return b;
+    }
+
+    /**
+     * 70%短消息推送，20%长文本推送，10%群成员、用户信息列表等RPC响应
+     */
+    private static List<byte[]> frames(Gson gson, Random random) {
+        List<byte[]> frames = new ArrayList<>(FRAMES);
+        for (int i = 0; i < FRAMES; i++) {
+            int kind = random.nextInt(10);
+            Object frame;
+            if (kind < 7) {
+                frame = PushMessage.message(message(random, i, 5 + random.nextInt(40)));
+            } else if (kind < 9) {
+                frame = PushMessage.message(message(random, i, 200 + random.nextInt(2000)));
+            } else {
+                List<Map<String, Object>> members = new ArrayList<>();
+                int count = 5 + random.nextInt(random.nextBoolean() ? 50 : 500);
+                for (int m = 0; m < count; m++) {
+                    Map<String, Object> member = new HashMap<>();
+                    member.put("memberId", "user" + random.nextInt(100_000));
+                    member.put("alias", text(random, 1 + random.nextInt(3)));
+                    member.put("type", random.nextInt(3));
+                    member.put("updateDt", 1_700_000_000_000L + random.nextInt(1_000_000_000));
+                    members.add(member);
+                }
+                frame = ResponseMessage.success(String.valueOf(i), members);
+            }
+            frames.add(gson.toJson(frame).getBytes(StandardCharsets.UTF_8));
+        }
+        return frames;
+    }
+
+    private static OutputMessageData message(Random random, int i, int words) {
+        MessagePayload payload = new MessagePayload();
+        payload.setType(1);
+        payload.setSearchableContent(text(random, words));
+        OutputMessageData data = new OutputMessageData();
+        data.setSender("user" + random.nextInt(1000));
+        data.setMessageId(1_000_000L + i);
+        data.setTimestamp(1_700_000_000_000L + i);
+        data.setConv(new Conversation());
+        data.getConv().setType(1);
+        data.getConv().setTarget("group" + random.nextInt(100));
+        data.setToRobotId("robot1");
+        data.setPayload(payload);
+        return data;
+    }
+
+    private static String text(Random random, int words) {
+        StringBuilder sb = new StringBuilder();
+        for (int w = 0; w < words; w++) {
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,85 @@
+package cn.wildfirechat.app.gateway;
+
+import cn.wildfirechat.app.config.CompressionConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrameCompressorTest {
+
+    private final CompressionConfig config = new CompressionConfig();
+    private final FrameCompressor compressor = new FrameCompressor();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        config.setThreshold(1024);
+        config.setMaxInflatedBytes(64 * 1024);
+        Field field = FrameCompressor.class.getDeclaredField("compressionConfig");
+        field.setAccessible(true);
+        field.set(compressor, config);
+    }
+
+    private static byte[] json(int size) {
+        StringBuilder sb = new StringBuilder("{\"items\":[");
+        while (sb.length() < size) {
+            sb.append("{\"type\":1,\"target\":\"user\"},");
+        }
+        sb.append("{}]}");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        byte[] data = json(8192);
+        byte[] compressed = compressor.compress(data);
+        assertTrue(compressed.length < data.length);
+        assertArrayEquals(data, compressor.inflate(ByteBuffer.wrap(compressed)));
+        assertEquals(1, compressor.getCompressedFrames());
+        assertEquals(1, compressor.getInflatedFrames());
+        assertTrue(compressor.getCompressionRatio() < 1);
+    }
+
+    @Test
+    void roundTripIncompressibleData() throws IOException {
+        byte[] data = new byte[20000];
+        new Random(1).nextBytes(data);
+        assertArrayEquals(data, compressor.inflate(ByteBuffer.wrap(compressor.compress(data))));
+    }
+
+    @Test
+    void thresholdDecidesCompression() {
+        assertFalse(compressor.shouldCompress(1023));
+        assertTrue(compressor.shouldCompress(1024));
+        assertEquals(1, compressor.getSkippedFrames());
+    }
+
+    @Test
+    void rejectsInvalidAndTruncatedInput() throws IOException {
+        assertThrows(IOException.class, () -> compressor.inflate(ByteBuffer.wrap(new byte[]{1, 2, 3, 4})));
+        assertThrows(IOException.class, () -> compressor.inflate(ByteBuffer.wrap(new byte[0])));
+
+        byte[] compressed = compressor.compress(json(8192));
+        assertThrows(IOException.class, () -> compressor.inflate(ByteBuffer.wrap(Arrays.copyOf(compressed, compressed.length / 2))));
+
+        // 出错后线程复用的Inflater已重置，可以继续使用
+        byte[] data = json(4096);
+        assertArrayEquals(data, compressor.inflate(ByteBuffer.wrap(compressor.compress(data))));
+    }
+
+    @Test
+    void rejectsFramesInflatingPastLimit() {
+        // 1MB的0压缩后只有约1KB
+        byte[] bomb = compressor.compress(new byte[1024 * 1024]);
+        assertTrue(bomb.length < config.getMaxInflatedBytes());
+        IOException e = assertThrows(IOException.class, () -> compressor.inflate(ByteBuffer.wrap(bomb)));
+        assertTrue(e.getMessage().contains("exceeds"));
+    }
+}
@@ -0,0 +1,92 @@
+package cn.wildfirechat.app.gateway;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * 去重集合的简单基准：long开放寻址哈希表 vs HashSet&lt;Long&gt;
+ * 分别用递增（雪花ID）和随机的messageId，输出每次检查加记录的耗时，以及记录ENTRIES个messageId分配和占用的内存。
+ * 递增的Long的hashCode在HashMap中是连续的桶，访问局部性好；LongSet把值打散，不依赖messageId的分布
+ * 运行：mvn -pl gateway test-compile exec:java -Dexec.classpathScope=test
+ *      -Dexec.mainClass=cn.wildfirechat.app.gateway.MessageDeduplicatorBenchmark
+ */
+public class MessageDeduplicatorBenchmark {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 5;
+    private static final int ENTRIES = 65_536;
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) {
+        long[] sequential = new long[ENTRIES];
+        long[] random = new long[ENTRIES];
+        Random rnd = new Random(42);
+        for (int i = 0; i < ENTRIES; i++) {
+            // IM服务的messageId是雪花ID，高位为时间戳，低位递增
+            sequential[i] = 1_700_000_000_000L << 22 | (i + 1);
+            random[i] = rnd.nextLong() | 1;
+        }
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            runLongSet(sequential);
+            runHashSet(sequential);
+            runLongSet(random);
+            runHashSet(random);
+        }
+        for (int i = 0; i < ROUNDS; i++) {
+            System.out.printf("round %d: sequential ids LongSet %d ns/check, HashSet<Long> %d ns/check; "
+                            + "random ids LongSet %d ns/check, HashSet<Long> %d ns/check%n", i,
+                    runLongSet(sequential) / ENTRIES, runHashSet(sequential) / ENTRIES,
+                    runLongSet(random) / ENTRIES, runHashSet(random) / ENTRIES);
+        }
+
+        // 记录过程中分配的字节数（含扩容时丢弃的旧表），LongSet最终占用的内存就是数组本身
+        long before = allocatedBytes();
+        MessageDeduplicator.LongSet longSet = new MessageDeduplicator.LongSet();
+        for (long id : sequential) {
+            longSet.add(id);
+        }
+        long longSetAllocated = allocatedBytes() - before;
+        sink = longSet;
+        before = allocatedBytes();
+        Set<Long> hashSet = new HashSet<>();
+        for (long id : sequential) {
+            hashSet.add(id);
+        }
+        long hashSetAllocated = allocatedBytes() - before;
+        sink = hashSet;
+
+        System.out.printf("recording %d ids: LongSet allocates %.1f bytes/id and retains %.1f bytes/id, "
+                        + "HashSet<Long> allocates %.1f bytes/id%n", ENTRIES,
+                (double) longSetAllocated / ENTRIES, 8.0 * longSet.capacity() / ENTRIES, (double) hashSetAllocated / ENTRIES);
+    }
+
+    private static long runLongSet(long[] ids) {
+        MessageDeduplicator.LongSet set = new MessageDeduplicator.LongSet();
+        long start = System.nanoTime();
+        for (long messageId : ids) {
+            if (!set.contains(messageId)) {
+                set.add(messageId);
+            }
+        }
+        sink = set;
+        return System.nanoTime() - start;
+    }
+
+    private static long runHashSet(long[] ids) {
+        Set<Long> set = new HashSet<>();
+        long start = System.nanoTime();
+        for (long messageId : ids) {
+            set.add(messageId);
+        }
+        sink = set;
+        return System.nanoTime() - start;
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,138 @@
+package cn.wildfirechat.app.gateway;
+
+import cn.wildfirechat.app.config.DedupConfig;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageDeduplicatorTest {
+
+    private static final long WINDOW = 1000;
+
+    private final DedupConfig config = new DedupConfig();
+    private final MessageDeduplicator deduplicator = new MessageDeduplicator();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        Field field = MessageDeduplicator.class.getDeclaredField("dedupConfig");
+        field.setAccessible(true);
+        field.set(deduplicator, config);
+    }
+
+    @Test
+    void longSetMatchesHashSet() {
+        MessageDeduplicator.LongSet set = new MessageDeduplicator.LongSet();
+        Set<Long> expected = new HashSet<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            // 包括负数和只有高位不同的值
+            long value = i % 3 == 0 ? random.nextLong() : (long) i << 32 | 1;
+            if (value == 0 || !expected.add(value)) {
+                continue;
+            }
+            assertFalse(set.contains(value));
+            set.add(value);
+        }
+        for (long value : expected) {
+            assertTrue(set.contains(value));
+        }
+        assertFalse(set.contains(7));
+
+        set.clear(0);
+        for (long value : expected) {
+            assertFalse(set.contains(value));
+        }
+        set.add(5);
+        assertTrue(set.contains(5));
+    }
+
+    @Test
+    void remembersIdsForAtLeastOneWindow() {
+        MessageDeduplicator.Window window = new MessageDeduplicator.Window();
+        long start = System.currentTimeMillis();
+        assertFalse(window.checkAndAdd(1, start, WINDOW, 100));
+        assertTrue(window.checkAndAdd(1, start + 10, WINDOW, 100));
+
+        // 轮换一次后仍在上一代中
+        assertFalse(window.checkAndAdd(2, start + WINDOW, WINDOW, 100));
+        assertTrue(window.checkAndAdd(1, start + WINDOW + 10, WINDOW, 100));
+
+        // 再轮换一次后最早的一代被清空
+        assertFalse(window.checkAndAdd(3, start + 2 * WINDOW, WINDOW, 100));
+        assertFalse(window.checkAndAdd(1, start + 2 * WINDOW + 10, WINDOW, 100));
+        assertTrue(window.checkAndAdd(2, start + 2 * WINDOW + 10, WINDOW, 100));
+    }
+
+    @Test
+    void forgetsBothGenerationsAfterLongIdle() {
+        MessageDeduplicator.Window window = new MessageDeduplicator.Window();
+        long start = System.currentTimeMillis();
+        assertFalse(window.checkAndAdd(1, start, WINDOW, 100));
+        assertFalse(window.checkAndAdd(2, start + WINDOW, WINDOW, 100));
+
+        // 空闲两个窗口以上，1和2都已过期
+        long later = start + 4 * WINDOW;
+        assertFalse(window.checkAndAdd(2, later, WINDOW, 100));
+        assertFalse(window.checkAndAdd(1, later, WINDOW, 100));
+        assertTrue(window.checkAndAdd(2, later + 10, WINDOW, 100));
+    }
+
+    @Test
+    void rotatesEarlyWhenGenerationIsFull() {
+        MessageDeduplicator.Window window = new MessageDeduplicator.Window();
+        long now = System.currentTimeMillis();
+        for (long id = 1; id <= 5; id++) {
+            assertFalse(window.checkAndAdd(id, now, WINDOW, 2));
+        }
+        // 每代最多2个，第5条消息时轮换第二次，1和2所在的一代被清空，3和4成为上一代
+        assertTrue(window.checkAndAdd(3, now, WINDOW, 2));
+        assertFalse(window.checkAndAdd(1, now, WINDOW, 2));
+    }
+
+    @Test
+    void deduplicatesPerRobot() {
+        assertFalse(deduplicator.isDuplicate("r1", 100));
+        assertTrue(deduplicator.isDuplicate("r1", 100));
+        assertFalse(deduplicator.isDuplicate("r2", 100));
+        assertEquals(3, deduplicator.getCheckedCount());
+        assertEquals(1, deduplicator.getDuplicateCount());
+        assertEquals(2, deduplicator.getRobotCount());
+        assertEquals(2, deduplicator.getEntryCount());
+    }
+
+    @Test
+    void skipsUnknownIdsAndDisabledConfig() {
+        assertFalse(deduplicator.isDuplicate("r1", 0));
+        assertFalse(deduplicator.isDuplicate("r1", 0));
+        assertFalse(deduplicator.isDuplicate(null, 1));
+        assertFalse(deduplicator.isDuplicate(null, 1));
+
+        config.setEnabled(false);
+        assertFalse(deduplicator.isDuplicate("r1", 1));
+        assertFalse(deduplicator.isDuplicate("r1", 1));
+        assertEquals(0, deduplicator.getCheckedCount());
+    }
+
+    @Test
+    void tableShrinksAfterBurst() {
+        config.setMaxEntriesPerRobot(100_000);
+        for (long id = 1; id <= 50_000; id++) {
+            deduplicator.isDuplicate("r1", id);
+        }
+        long afterBurst = deduplicator.getMemoryBytes();
+        assertTrue(afterBurst >= 8L * 100_000, "table holds the burst");
+
+        // 两次提前轮换后，清空的代按刚结束一代的数量重新分配
+        config.setMaxEntriesPerRobot(10);
+        for (long id = 100_001; id <= 100_030; id++) {
+            deduplicator.isDuplicate("r1", id);
+        }
+        assertTrue(deduplicator.getMemoryBytes() < afterBurst / 100, "tables shrink after the burst");
+    }
+}
@@ -0,0 +1,126 @@
+package cn.wildfirechat.app.gateway;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OfflineQueueTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+
+    /**
+     * 每个段正好容纳两条
+     */
+    private static final int HALF = SEGMENT_SIZE / 2 - OfflineSegment.HEADER_SIZE;
+
+    @TempDir
+    File dir;
+
+    private final AtomicLong totalBytes = new AtomicLong();
+
+    private OfflineQueue newQueue(String robotId, long maxTotalBytes) {
+        File robotDir = new File(dir, robotId);
+        assertTrue(robotDir.mkdirs());
+        return new OfflineQueue(robotId, robotDir, SEGMENT_SIZE, 16 * SEGMENT_SIZE, totalBytes, maxTotalBytes);
+    }
+
+    private static byte[] frame(int size) {
+        byte[] frame = new byte[size];
+        frame[0] = 'x';
+        return frame;
+    }
+
+    private static int segmentFiles(File robotDir) {
+        File[] files = robotDir.listFiles((d, name) -> name.endsWith(".seg"));
+        return files == null ? 0 : files.length;
+    }
+
+    @Test
+    void peekAndCommitInOrder() {
+        OfflineQueue queue = newQueue("r1", Long.MAX_VALUE);
+        queue.append("a".getBytes(StandardCharsets.UTF_8), 1);
+        queue.append("b".getBytes(StandardCharsets.UTF_8), 2);
+
+        long[] expired = new long[1];
+        OfflineQueue.Record first = queue.peek(0, expired);
+        assertEquals("a", new String(first.getFrame(), StandardCharsets.UTF_8));
+        queue.commit(first);
+        OfflineQueue.Record second = queue.peek(0, expired);
+        assertEquals("b", new String(second.getFrame(), StandardCharsets.UTF_8));
+        queue.commit(second);
+        assertTrue(queue.isEmpty());
+        assertEquals(0, totalBytes.get());
+    }
+
+    @Test
+    void commitAfterExpireDoesNotCountTwice() {
+        OfflineQueue queue = newQueue("r1", Long.MAX_VALUE);
+        queue.append("a".getBytes(StandardCharsets.UTF_8), 1);
+        queue.append("b".getBytes(StandardCharsets.UTF_8), 2);
+
+        // 补发取出a后、确认前，定期清理把a作为过期消息消费
+        long[] expired = new long[1];
+        OfflineQueue.Record first = queue.peek(0, expired);
+        assertEquals(1, queue.expire(2));
+        queue.commit(first);
+        assertEquals(1, queue.getDepth());
+
+        OfflineQueue.Record second = queue.peek(0, expired);
+        assertEquals("b", new String(second.getFrame(), StandardCharsets.UTF_8));
+        queue.commit(second);
+        assertEquals(0, queue.getDepth());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void expireDeletesExpiredSegments() {
+        OfflineQueue queue = newQueue("r1", Long.MAX_VALUE);
+        // 三条消息占两个段
+        for (int i = 0; i < 3; i++) {
+            queue.append(frame(HALF), 100 + i);
+        }
+        assertEquals(2, segmentFiles(new File(dir, "r1")));
+
+        assertEquals(2, queue.expire(102));
+        assertEquals(1, queue.getDepth());
+        assertEquals(1, segmentFiles(new File(dir, "r1")));
+        assertEquals(SEGMENT_SIZE, totalBytes.get());
+
+        assertEquals(1, queue.expire(200));
+        assertTrue(queue.closeIfEmpty());
+        assertEquals(0, segmentFiles(new File(dir, "r1")));
+        assertEquals(0, totalBytes.get());
+        assertEquals(OfflineQueue.CLOSED, queue.append(frame(1), 300));
+    }
+
+    @Test
+    void closeIfEmptyKeepsPendingMessages() {
+        OfflineQueue queue = newQueue("r1", Long.MAX_VALUE);
+        queue.append(frame(1), 1);
+        assertFalse(queue.closeIfEmpty());
+        assertEquals(1, queue.getDepth());
+    }
+
+    @Test
+    void totalCapIsSharedAcrossQueues() {
+        OfflineQueue first = newQueue("r1", 2L * SEGMENT_SIZE);
+        OfflineQueue second = newQueue("r2", 2L * SEGMENT_SIZE);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(0, first.append(frame(HALF), i));
+        }
+        assertEquals(2L * SEGMENT_SIZE, totalBytes.get());
+
+        // 存储已满且r2没有可丢弃的段
+        assertEquals(-1, second.append(frame(1), 4));
+
+        // r1丢弃自己最旧的段腾出空间
+        assertEquals(2, first.append(frame(HALF), 5));
+        assertEquals(3, first.getDepth());
+        assertEquals(2L * SEGMENT_SIZE, totalBytes.get());
+    }
+}
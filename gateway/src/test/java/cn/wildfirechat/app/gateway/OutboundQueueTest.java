@@ -0,0 +1,92 @@
+package cn.wildfirechat.app.gateway;
+
+import cn.wildfirechat.app.config.OutboundConfig;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutboundQueueTest {
+
+    private final AtomicReference<CloseStatus> closeStatus = new AtomicReference<>();
+
+    /**
+     * 只记录关闭状态的会话
+     */
+    private WebSocketSession session() {
+        return (WebSocketSession) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{WebSocketSession.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getId":
+                            return "s1";
+                        case "isOpen":
+                            return closeStatus.get() == null;
+                        case "close":
+                            closeStatus.set(args != null && args.length > 0 ? (CloseStatus) args[0] : CloseStatus.NORMAL);
+                            return null;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    /**
+     * 写任务从不执行，消息一直留在队列中
+     */
+    private OutboundQueue queue(OutboundConfig.OverflowPolicy policy, int maxMessages) {
+        OutboundConfig config = new OutboundConfig();
+        config.setMaxBufferedMessages(maxMessages);
+        config.setOverflowPolicy(policy);
+        return new OutboundQueue(session(), task -> { }, config);
+    }
+
+    @Test
+    void dropOldestEvictsPushesOnly() {
+        OutboundQueue queue = queue(OutboundConfig.OverflowPolicy.DROP_OLDEST, 2);
+        assertTrue(queue.send(new TextMessage("response"), false));
+        assertTrue(queue.send(new TextMessage("push1"), true));
+        assertTrue(queue.send(new TextMessage("push2"), true));
+        assertEquals(2, queue.getBufferedMessages());
+        assertEquals(1, queue.getDroppedCount());
+        assertNull(closeStatus.get());
+
+        // 推送帧被丢弃后可以放入响应
+        assertTrue(queue.send(new TextMessage("response2"), false));
+        assertEquals(2, queue.getBufferedMessages());
+        assertEquals(2, queue.getDroppedCount());
+    }
+
+    @Test
+    void dropOldestDropsNewPushWhenOnlyResponsesQueued() {
+        OutboundQueue queue = queue(OutboundConfig.OverflowPolicy.DROP_OLDEST, 1);
+        assertTrue(queue.send(new TextMessage("response"), false));
+        assertFalse(queue.send(new TextMessage("push"), true));
+        assertEquals(1, queue.getBufferedMessages());
+        assertNull(closeStatus.get());
+    }
+
+    @Test
+    void dropOldestDisconnectsWhenResponseDoesNotFit() {
+        OutboundQueue queue = queue(OutboundConfig.OverflowPolicy.DROP_OLDEST, 1);
+        assertTrue(queue.send(new TextMessage("response"), false));
+        assertFalse(queue.send(new TextMessage("response2"), false));
+        assertEquals(0, queue.getBufferedMessages());
+        assertNotNull(closeStatus.get());
+        assertEquals(CloseStatus.SESSION_NOT_RELIABLE.getCode(), closeStatus.get().getCode());
+    }
+
+    @Test
+    void dropNewDisconnectsWhenResponseDoesNotFit() {
+        OutboundQueue queue = queue(OutboundConfig.OverflowPolicy.DROP_NEW, 1);
+        assertTrue(queue.send(new TextMessage("push"), true));
+        assertFalse(queue.send(new TextMessage("push2"), true));
+        assertNull(closeStatus.get());
+        assertFalse(queue.send(new TextMessage("response"), false));
+        assertNotNull(closeStatus.get());
+    }
+}
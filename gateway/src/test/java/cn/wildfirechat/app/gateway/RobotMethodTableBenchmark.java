@@ -0,0 +1,72 @@
+package cn.wildfirechat.app.gateway;
+
+import cn.wildfirechat.sdk.RobotService;
+
+import java.lang.reflect.Method;
+
+/**
+ * 方法分发的简单基准：逐次扫描getMethods()后Method.invoke（原实现） vs RobotMethodTable
+ * 调用不访问网络的getRobotId，只比较查找和调用本身的开销
+ * 运行：mvn -pl gateway test-compile exec:java -Dexec.classpathScope=test
+ *      -Dexec.mainClass=cn.wildfirechat.app.gateway.RobotMethodTableBenchmark
+ */
+public class RobotMethodTableBenchmark {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 5;
+    private static final int CALLS = 200_000;
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        RobotService service = new RobotService("http://127.0.0.1:1", "robot", "secret");
+        RobotMethodTable table = RobotMethodTable.build(RobotService.class);
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            runReflection(service);
+            runTable(table, service);
+        }
+        for (int i = 0; i < ROUNDS; i++) {
+            long reflection = runReflection(service);
+            long methodTable = runTable(table, service);
+            System.out.printf("round %d: reflection %d ns/call, table %d ns/call%n",
+                    i, reflection / CALLS, methodTable / CALLS);
+        }
+    }
+
+    private static long runReflection(RobotService service) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            Method method = findMethod(RobotService.class, "getRobotId", 0);
+            sink = method.invoke(service);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long runTable(RobotMethodTable table, RobotService service) throws Exception {
+        Object[] noArgs = new Object[0];
+        long start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            RobotMethodTable.Entry entry = table.find("getRobotId", 0);
+            sink = entry.invoke(service, noArgs);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * 原RobotProxy.findMethod的查找方式
+     */
+    private static Method findMethod(Class<?> clazz, String methodName, int arity) {
+        for (Method method : clazz.getMethods()) {
+            if (method.getName().equals(methodName) && method.getParameterCount() == arity) {
+                return method;
+            }
+        }
+        for (Method method : clazz.getMethods()) {
+            if (method.getName().equals(methodName)) {
+                return method;
+            }
+        }
+        return null;
+    }
+}
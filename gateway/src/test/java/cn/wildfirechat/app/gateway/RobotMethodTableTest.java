@@ -0,0 +1,49 @@
+package cn.wildfirechat.app.gateway;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationTargetException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RobotMethodTableTest {
+
+    public static class Target {
+        public String echo(String value, int times) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < times; i++) {
+                sb.append(value);
+            }
+            return sb.toString();
+        }
+
+        public void fail() {
+            throw new IllegalArgumentException("from target");
+        }
+    }
+
+    private final RobotMethodTable table = RobotMethodTable.build(Target.class);
+
+    @Test
+    void findsByNameAndArity() throws Exception {
+        RobotMethodTable.Entry entry = table.find("echo", 2);
+        assertNotNull(entry);
+        assertEquals("abab", entry.invoke(new Target(), new Object[]{"ab", 2}));
+        assertNull(table.find("missing", 0));
+    }
+
+    @Test
+    void argumentMismatchIsIllegalArgument() {
+        RobotMethodTable.Entry entry = table.find("echo", 2);
+        assertThrows(IllegalArgumentException.class, () -> entry.invoke(new Target(), new Object[]{"ab"}));
+        assertThrows(IllegalArgumentException.class, () -> entry.invoke(new Target(), new Object[]{"ab", "2"}));
+        assertThrows(IllegalArgumentException.class, () -> entry.invoke(new Target(), new Object[]{"ab", null}));
+    }
+
+    @Test
+    void targetExceptionIsWrapped() {
+        RobotMethodTable.Entry entry = table.find("fail", 0);
+        InvocationTargetException e = assertThrows(InvocationTargetException.class, () -> entry.invoke(new Target(), new Object[0]));
+        assertTrue(e.getCause() instanceof IllegalArgumentException);
+    }
+}
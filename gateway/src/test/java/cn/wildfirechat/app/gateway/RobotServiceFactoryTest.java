@@ -0,0 +1,61 @@
+package cn.wildfirechat.app.gateway;
+
+import cn.wildfirechat.app.config.ImHttpConfig;
+import cn.wildfirechat.sdk.RobotService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 共享连接池依赖SDK的私有字段RobotService.robotHttpUtils和RobotHttpUtils.httpClient，
+ * 升级SDK后结构不符时该测试失败，而不是运行时静默回退到每个机器人一个连接池
+ */
+class RobotServiceFactoryTest {
+
+    private final RobotServiceFactory factory = new RobotServiceFactory();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        set("imUrl", "http://127.0.0.1:1");
+        set("imHttpConfig", new ImHttpConfig());
+        factory.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        factory.destroy();
+    }
+
+    private void set(String name, Object value) throws Exception {
+        Field field = RobotServiceFactory.class.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(factory, value);
+    }
+
+    @Test
+    void sdkLayoutSupportsSharedPool() {
+        assertTrue(factory.isSharedPoolSupported(), "RobotService layout changed, shared connection pool cannot be attached");
+    }
+
+    @Test
+    void createdServicesUseSharedPool() {
+        RobotService first = factory.create("r1", "s1");
+        RobotService second = factory.create("r2", "s2");
+        assertTrue(factory.usesSharedPool(first));
+        assertTrue(factory.usesSharedPool(second));
+        assertEquals(2, factory.getAttachedCount());
+        assertEquals(0, factory.getAttachFailureCount());
+
+        // 未经工厂创建的RobotService使用SDK自带的连接池
+        assertFalse(factory.usesSharedPool(new RobotService("http://127.0.0.1:1", "r3", "s3")));
+    }
+
+    @Test
+    void exposesRobotHttpUtils() {
+        assertNotNull(factory.httpUtilsOf(factory.create("r1", "s1")));
+    }
+}
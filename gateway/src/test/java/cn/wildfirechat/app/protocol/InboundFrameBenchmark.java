@@ -0,0 +1,70 @@
+package cn.wildfirechat.app.protocol;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+
+/**
+ * 客户端文本帧解析的简单基准：InboundFrame一次流式解析 vs 原先的字符串匹配判断鉴权消息后再用Gson整体反序列化，
+ * 分别用RPC请求、心跳和参数里提到"type"/"connect"的请求（原先会被误判为鉴权消息而多解析一次）输出每帧的解析耗时
+ * 运行：mvn -pl gateway test-compile exec:java -Dexec.classpathScope=test
+ *      -Dexec.mainClass=cn.wildfirechat.app.protocol.InboundFrameBenchmark
+ */
+public class InboundFrameBenchmark {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 5;
+    private static final int FRAMES = 200_000;
+
+    private static final String REQUEST = "{\"requestId\":\"12345\",\"method\":\"sendMessage\",\"params\":[\"robot1\","
+            + "{\"type\":1,\"target\":\"group1\",\"line\":0},{\"type\":1,\"searchableContent\":\"今天下午三点开会，请准时参加\","
+            + "\"mentionedType\":0,\"mentionedTargets\":[]}]}";
+    private static final String HEARTBEAT = "{\"requestId\":\"12346\",\"method\":\"heartbeat\",\"params\":[]}";
+    private static final String MENTIONS_CONNECT = "{\"requestId\":\"12347\",\"method\":\"sendMessage\",\"params\":[\"robot1\","
+            + "{\"type\":1,\"target\":\"group1\",\"line\":0},{\"type\":1,\"searchableContent\":\"connect\"}]}";
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        Gson gson = new Gson();
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            runStreaming(REQUEST);
+            runGson(gson, REQUEST);
+            runStreaming(MENTIONS_CONNECT);
+            runGson(gson, MENTIONS_CONNECT);
+        }
+        for (int i = 0; i < ROUNDS; i++) {
+            System.out.printf("round %d: request streaming %d ns/frame, gson %d ns/frame; "
+                            + "heartbeat streaming %d ns/frame, gson %d ns/frame; "
+                            + "request mentioning connect streaming %d ns/frame, gson %d ns/frame%n", i,
+                    runStreaming(REQUEST) / FRAMES, runGson(gson, REQUEST) / FRAMES,
+                    runStreaming(HEARTBEAT) / FRAMES, runGson(gson, HEARTBEAT) / FRAMES,
+                    runStreaming(MENTIONS_CONNECT) / FRAMES, runGson(gson, MENTIONS_CONNECT) / FRAMES);
+        }
+    }
+
+    private static long runStreaming(String payload) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < FRAMES; i++) {
+            InboundFrame frame = InboundFrame.parse(payload);
+            sink = frame.getKind() == InboundFrame.Kind.CONNECT ? frame.toConnectMessage() : frame.toRequestMessage();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long runGson(Gson gson, String payload) {
+        long start = System.nanoTime();
+        for (int i = 0; i < FRAMES; i++) {
+            ConnectMessage connect = null;
+            if (payload.contains("\"type\"") && payload.contains("\"connect\"")) {
+                try {
+                    connect = gson.fromJson(payload, ConnectMessage.class);
+                } catch (JsonSyntaxException e) {
+                    // 不是鉴权消息
+                }
+            }
+            sink = connect != null && "connect".equals(connect.getType())
+                    ? connect : gson.fromJson(payload, RequestMessage.class);
+        }
+        return System.nanoTime() - start;
+    }
+}
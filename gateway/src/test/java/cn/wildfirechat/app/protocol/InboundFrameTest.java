@@ -0,0 +1,118 @@
+package cn.wildfirechat.app.protocol;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InboundFrameTest {
+
+    @Test
+    void classifiesConnect() throws IOException {
+        InboundFrame frame = InboundFrame.parse("{\"type\":\"connect\",\"robotId\":\"r1\",\"secret\":\"s\",\"compress\":true,"
+                + "\"format\":\"protobuf\",\"subscription\":{\"convTypes\":[0]},\"unknown\":{\"a\":[1,2]}}");
+        assertEquals(InboundFrame.Kind.CONNECT, frame.getKind());
+        ConnectMessage connect = frame.toConnectMessage();
+        assertEquals("r1", connect.getRobotId());
+        assertEquals("s", connect.getSecret());
+        assertTrue(connect.getCompress());
+        assertEquals("protobuf", connect.getFormat());
+        assertEquals(Arrays.asList(0), connect.getSubscription().getConvTypes());
+    }
+
+    @Test
+    void classifiesHeartbeatAndRequest() throws IOException {
+        assertEquals(InboundFrame.Kind.HEARTBEAT, InboundFrame.parse("{\"method\":\"heartbeat\"}").getKind());
+
+        InboundFrame frame = InboundFrame.parse("{\"params\":[\"u1\",{\"type\":1,\"target\":\"g\"},null,[1,2]],"
+                + "\"method\":\"sendMessage\",\"requestId\":42}");
+        assertEquals(InboundFrame.Kind.REQUEST, frame.getKind());
+        RequestMessage request = frame.toRequestMessage();
+        assertEquals("42", request.getRequestId());
+        assertEquals("sendMessage", request.getMethod());
+        assertEquals(4, request.getParams().size());
+        assertEquals("u1", request.getParams().get(0).getAsString());
+        assertEquals(1, request.getParams().get(1).getAsJsonObject().get("type").getAsInt());
+        assertTrue(request.getParams().get(2).isJsonNull());
+        assertEquals(2, request.getParams().get(3).getAsJsonArray().size());
+    }
+
+    @Test
+    void nonArrayParamsAreIgnored() throws IOException {
+        assertNull(InboundFrame.parse("{\"method\":\"getProfile\",\"params\":\"x\"}").toRequestMessage().getParams());
+    }
+
+    @Test
+    void rejectsMalformedJson() {
+        for (String payload : Arrays.asList("", "[]", "\"connect\"", "{\"type\":", "{\"params\":[1,}",
+                "{\"type\":\"connect\",\"subscription\":{\"minPayloadType\":\"x\"}}")) {
+            assertThrows(IOException.class, () -> InboundFrame.parse(payload), payload);
+        }
+    }
+
+    @Test
+    void rejectsNonStrictJson() throws IOException {
+        for (String payload : Arrays.asList("{\"method\":\"heartbeat\"}{\"method\":\"m\"}", "{\"method\":\"heartbeat\"} x",
+                "{method:\"heartbeat\"}", "{'method':'heartbeat'}", "{\"method\":heartbeat}",
+                "// c\n{\"method\":\"heartbeat\"}", "{\"method\":\"m\",\"params\":[1];[2]}")) {
+            assertThrows(IOException.class, () -> InboundFrame.parse(payload), payload);
+        }
+        // 对象后的空白不算多余内容
+        assertEquals(InboundFrame.Kind.HEARTBEAT, InboundFrame.parse(" {\"method\":\"heartbeat\"}\n").getKind());
+    }
+
+    @Test
+    void rejectsDeeplyNestedParams() {
+        StringBuilder payload = new StringBuilder("{\"method\":\"m\",\"params\":[");
+        for (int i = 0; i < 100000; i++) {
+            payload.append('[');
+        }
+        for (int i = 0; i < 100000; i++) {
+            payload.append(']');
+        }
+        payload.append("]}");
+        assertThrows(IOException.class, () -> InboundFrame.parse(payload.toString()));
+    }
+
+    @Test
+    void parsesRequestEnvelope() throws IOException {
+        byte[] envelope = envelope(ProtobufEnvelope.KIND_REQUEST, "7", "getUserInfo", "\"u1\"", "{\"a\":1}");
+        InboundFrame frame = InboundFrame.parse(envelope);
+        assertEquals(InboundFrame.Kind.REQUEST, frame.getKind());
+        assertEquals("7", frame.getRequestId());
+        assertEquals("getUserInfo", frame.getMethod());
+        RequestMessage request = frame.toRequestMessage();
+        assertEquals("u1", request.getParams().get(0).getAsString());
+        assertEquals(1, request.getParams().get(1).getAsJsonObject().get("a").getAsInt());
+    }
+
+    @Test
+    void rejectsMalformedEnvelope() throws IOException {
+        assertThrows(IOException.class, () -> InboundFrame.parse(envelope(ProtobufEnvelope.KIND_RESPONSE, "1", "m")));
+        assertThrows(IOException.class, () -> InboundFrame.parse(envelope(ProtobufEnvelope.KIND_REQUEST, "1", "m", "{bad")));
+
+        byte[] valid = envelope(ProtobufEnvelope.KIND_REQUEST, "1", "getProfile", "\"x\"");
+        assertThrows(IOException.class, () -> InboundFrame.parse(Arrays.copyOf(valid, valid.length - 2)));
+        // 长度前缀超出剩余字节
+        assertThrows(IOException.class, () -> InboundFrame.parse(new byte[]{ProtobufEnvelope.KIND_TAG, 1, 0x22, 0x7f, 'a'}));
+        assertThrows(IOException.class, () -> InboundFrame.parse(new byte[0]));
+    }
+
+    private static byte[] envelope(int kind, String requestId, String method, String... params) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CodedOutputStream output = CodedOutputStream.newInstance(bytes);
+        output.writeInt32(ProtobufEnvelope.FIELD_KIND, kind);
+        output.writeString(ProtobufEnvelope.FIELD_REQUEST_ID, requestId);
+        output.writeString(ProtobufEnvelope.FIELD_METHOD, method);
+        for (String param : params) {
+            output.writeBytes(ProtobufEnvelope.FIELD_PARAMS, ByteString.copyFromUtf8(param));
+        }
+        output.flush();
+        return bytes.toByteArray();
+    }
+}
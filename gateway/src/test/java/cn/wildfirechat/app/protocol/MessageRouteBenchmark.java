@@ -0,0 +1,97 @@
+package cn.wildfirechat.app.protocol;
+
+import cn.wildfirechat.pojos.Conversation;
+import cn.wildfirechat.pojos.MessagePayload;
+import cn.wildfirechat.pojos.OutputMessageData;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.gson.Gson;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * /robot/recvmsgs 请求体处理的简单基准：Jackson反序列化为OutputMessageData[]后用Gson序列化推送帧（类型化模式）
+ * vs splitArray拆分后逐条解析路由字段、原始JSON直接拼接推送帧（透传模式），分别输出只解析和解析加构建推送帧的耗时
+ * 运行：mvn -pl gateway test-compile exec:java -Dexec.classpathScope=test
+ *      -Dexec.mainClass=cn.wildfirechat.app.protocol.MessageRouteBenchmark
+ */
+public class MessageRouteBenchmark {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 5;
+    private static final int MESSAGES_PER_BATCH = 100;
+    private static final int BATCHES = 2_000;
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        Gson gson = new Gson();
+        byte[] body = batch(gson);
+        System.out.printf("batch: %d messages, %d bytes%n", MESSAGES_PER_BATCH, body.length);
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            runTyped(objectMapper, gson, body, false);
+            runTyped(objectMapper, gson, body, true);
+            runPassthrough(body, false);
+            runPassthrough(body, true);
+        }
+        for (int i = 0; i < ROUNDS; i++) {
+            System.out.printf("round %d: parse typed %d us/batch, passthrough %d us/batch; "
+                            + "parse+frames typed %d us/batch, passthrough %d us/batch%n", i,
+                    runTyped(objectMapper, gson, body, false) / BATCHES / 1000,
+                    runPassthrough(body, false) / BATCHES / 1000,
+                    runTyped(objectMapper, gson, body, true) / BATCHES / 1000,
+                    runPassthrough(body, true) / BATCHES / 1000);
+        }
+    }
+
+    private static long runTyped(ObjectMapper objectMapper, Gson gson, byte[] body, boolean frames) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < BATCHES; i++) {
+            OutputMessageData[] messages = objectMapper.readValue(body, OutputMessageData[].class);
+            sink = messages;
+            if (frames) {
+                for (OutputMessageData message : messages) {
+                    sink = gson.toJson(PushMessage.message(message)).getBytes(StandardCharsets.UTF_8);
+                }
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long runPassthrough(byte[] body, boolean frames) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < BATCHES; i++) {
+            List<byte[]> elements = MessageRoute.splitArray(body);
+            for (byte[] element : elements) {
+                sink = MessageRoute.parse(element);
+                if (frames) {
+                    sink = PushMessage.rawMessage(element);
+                }
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static byte[] batch(Gson gson) {
+        OutputMessageData[] messages = new OutputMessageData[MESSAGES_PER_BATCH];
+        for (int i = 0; i < messages.length; i++) {
+            MessagePayload payload = new MessagePayload();
+            payload.setType(1);
+            payload.setSearchableContent("第" + i + "条消息，内容包含\"引号\"和[括号]");
+            OutputMessageData data = new OutputMessageData();
+            data.setSender("user" + i % 10);
+            data.setMessageId(1_000_000L + i);
+            data.setTimestamp(1700000000000L + i);
+            data.setConv(new Conversation());
+            data.getConv().setType(1);
+            data.getConv().setTarget("group" + i % 5);
+            data.setToRobotId("robot1");
+            data.setPayload(payload);
+            messages[i] = data;
+        }
+        return gson.toJson(messages).getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,132 @@
+package cn.wildfirechat.app.protocol;
+
+import cn.wildfirechat.pojos.OutputMessageData;
+import com.google.gson.Gson;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MessageRouteTest {
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void parsesRouteFields() throws IOException {
+        MessageRoute route = MessageRoute.parse(bytes("{\"sender\":\"u1\",\"conv\":{\"type\":1,\"target\":\"g1\",\"line\":0},"
+                + "\"toRobotId\":\"r1\",\"messageId\":123456789012,\"payload\":{\"type\":1,\"searchableContent\":\"hi\","
+                + "\"mentionedType\":1,\"mentionedTarget\":[\"r1\",2]},\"timestamp\":1}"));
+        assertEquals("u1", route.getSender());
+        assertEquals(1, route.getConvType());
+        assertEquals("g1", route.getConvTarget());
+        assertEquals("r1", route.getTargetRobotId());
+        assertEquals(123456789012L, route.getMessageId());
+        assertEquals(1, route.getPayloadType());
+        assertEquals(1, route.getMentionedType());
+        assertEquals(Arrays.asList("r1"), route.getMentionedTarget());
+        assertEquals("1|g1", route.getDeliveryKey());
+    }
+
+    @Test
+    void privateChatRoutesToConversationTarget() throws IOException {
+        MessageRoute route = MessageRoute.parse(bytes(" {\"sender\":\"u1\",\"conv\":{\"type\":0,\"target\":\"r1\"},\"toRobotId\":\"x\"}\n"));
+        assertEquals("r1", route.getTargetRobotId());
+        assertEquals("u1", route.getDeliveryKey());
+    }
+
+    @Test
+    void missingConversationHasNoTarget() throws IOException {
+        assertNull(MessageRoute.parse(bytes("{\"toRobotId\":\"r1\"}")).getTargetRobotId());
+    }
+
+    @Test
+    void typedDeliveryKeyMatchesRoute() throws IOException {
+        Gson gson = new Gson();
+        for (String json : Arrays.asList("{\"sender\":\"u1\",\"conv\":{\"type\":0,\"target\":\"r1\"}}",
+                "{\"sender\":\"u1\",\"conv\":{\"type\":1,\"target\":\"g1\"},\"toRobotId\":\"r1\"}")) {
+            OutputMessageData data = gson.fromJson(json, OutputMessageData.class);
+            assertEquals(MessageRoute.parse(bytes(json)).getDeliveryKey(), MessageRoute.deliveryKey(data), json);
+        }
+    }
+
+    @Test
+    void rejectsTrailingContent() {
+        assertThrows(IOException.class, () -> MessageRoute.parse(bytes("{\"conv\":{\"type\":0,\"target\":\"r1\"}} garbage")));
+        assertThrows(IOException.class, () -> MessageRoute.parse(bytes("{\"conv\":{\"type\":0,\"target\":\"r1\"}}{}")));
+    }
+
+    @Test
+    void rejectsMalformedJson() {
+        assertThrows(IOException.class, () -> MessageRoute.parse(bytes("")));
+        // 不是对象时由Gson抛出IllegalStateException，Controller同样返回400
+        assertThrows(IllegalStateException.class, () -> MessageRoute.parse(bytes("[]")));
+        assertThrows(IOException.class, () -> MessageRoute.parse(bytes("{\"conv\":{\"type\":0")));
+    }
+
+    @Test
+    void splitsEmptyArray() throws IOException {
+        assertTrue(MessageRoute.splitArray(bytes("[]")).isEmpty());
+        assertTrue(MessageRoute.splitArray(bytes(" [ \n ] \r\n")).isEmpty());
+    }
+
+    @Test
+    void splitsNestedElements() throws IOException {
+        List<byte[]> elements = MessageRoute.splitArray(bytes("[{\"a\":[1,{\"b\":[2,3]}],\"c\":{}} , {\"d\":1}\n]"));
+        assertEquals(2, elements.size());
+        assertEquals("{\"a\":[1,{\"b\":[2,3]}],\"c\":{}}", new String(elements.get(0), StandardCharsets.UTF_8));
+        assertEquals("{\"d\":1}", new String(elements.get(1), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void splitIgnoresBracketsAndEscapesInStrings() throws IOException {
+        String first = "{\"s\":\"]},[{\\\"\\\\\",\"t\":\"中文\\u005d\"}";
+        List<byte[]> elements = MessageRoute.splitArray(bytes("[" + first + ",{\"e\":\"\\\\\"}]"));
+        assertEquals(2, elements.size());
+        assertEquals(first, new String(elements.get(0), StandardCharsets.UTF_8));
+        assertEquals("{\"e\":\"\\\\\"}", new String(elements.get(1), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void splitElementsParseAsRoutes() throws IOException {
+        List<byte[]> elements = MessageRoute.splitArray(bytes("[{\"conv\":{\"type\":0,\"target\":\"r1\"},\"messageId\":1},"
+                + "{\"conv\":{\"type\":1,\"target\":\"g1\"},\"toRobotId\":\"r2\",\"messageId\":2}]"));
+        assertEquals("r1", MessageRoute.parse(elements.get(0)).getTargetRobotId());
+        assertEquals(2L, MessageRoute.parse(elements.get(1)).getMessageId());
+        assertEquals("r2", MessageRoute.parse(elements.get(1)).getTargetRobotId());
+    }
+
+    @Test
+    void splitRejectsTrailingContent() {
+        assertThrows(IOException.class, () -> MessageRoute.splitArray(bytes("[{}] x")));
+        assertThrows(IOException.class, () -> MessageRoute.splitArray(bytes("[{}][]")));
+        assertThrows(IOException.class, () -> MessageRoute.splitArray(bytes("[] {}")));
+    }
+
+    @Test
+    void splitRejectsUnterminatedInput() {
+        assertThrows(IOException.class, () -> MessageRoute.splitArray(bytes("[")));
+        assertThrows(IOException.class, () -> MessageRoute.splitArray(bytes("[{}")));
+        assertThrows(IOException.class, () -> MessageRoute.splitArray(bytes("[{\"s\":\"]}")));
+        assertThrows(IOException.class, () -> MessageRoute.splitArray(bytes("[{\"s\":\"\\\"]}")));
+    }
+
+    @Test
+    void splitRejectsEmptyElements() {
+        assertThrows(IOException.class, () -> MessageRoute.splitArray(bytes("[,{}]")));
+        assertThrows(IOException.class, () -> MessageRoute.splitArray(bytes("[{},]")));
+        assertThrows(IOException.class, () -> MessageRoute.splitArray(bytes("[{}, ,{}]")));
+    }
+
+    @Test
+    void splitRejectsNonArrayAndUnbalancedInput() {
+        assertThrows(IOException.class, () -> MessageRoute.splitArray(bytes("")));
+        assertThrows(IOException.class, () -> MessageRoute.splitArray(bytes("{}")));
+        assertThrows(IOException.class, () -> MessageRoute.splitArray(bytes("[{}}]")));
+    }
+}
@@ -0,0 +1,95 @@
+package cn.wildfirechat.app.protocol;
+
+import cn.wildfirechat.pojos.Conversation;
+import cn.wildfirechat.pojos.MessagePayload;
+import cn.wildfirechat.pojos.OutputMessageData;
+import com.google.gson.Gson;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 推送帧编码的简单基准：JSON文本帧 vs protobuf信封，以及透传模式下两者的原始字节拼接
+ * 输出每种编码的帧大小和每帧耗时
+ * 运行：mvn -pl gateway test-compile exec:java -Dexec.classpathScope=test
+ *      -Dexec.mainClass=cn.wildfirechat.app.protocol.ProtobufEnvelopeBenchmark
+ */
+public class ProtobufEnvelopeBenchmark {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 5;
+    private static final int FRAMES = 200_000;
+
+    private static volatile Object sink;
+
+    public static void main(String[] args) {
+        Gson gson = new Gson();
+        OutputMessageData data = message();
+        PushMessage push = PushMessage.message(data);
+        byte[] raw = gson.toJson(data).getBytes(StandardCharsets.UTF_8);
+
+        System.out.printf("frame size: json %d bytes, envelope %d bytes, raw json %d bytes, raw envelope %d bytes%n",
+                gson.toJson(push).getBytes(StandardCharsets.UTF_8).length,
+                ProtobufEnvelope.encode(push, gson).length,
+                PushMessage.rawMessage(raw).length,
+                ProtobufEnvelope.encodeRawPush(PushMessage.rawMessage(raw)).length);
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            runJson(gson, push);
+            runEnvelope(gson, push);
+            runRawJson(raw);
+            runRawEnvelope(raw);
+        }
+        for (int i = 0; i < ROUNDS; i++) {
+            System.out.printf("round %d: json %d ns/frame, envelope %d ns/frame, raw json %d ns/frame, raw envelope %d ns/frame%n",
+                    i, runJson(gson, push) / FRAMES, runEnvelope(gson, push) / FRAMES,
+                    runRawJson(raw) / FRAMES, runRawEnvelope(raw) / FRAMES);
+        }
+    }
+
+    private static long runJson(Gson gson, PushMessage push) {
+        long start = System.nanoTime();
+        for (int i = 0; i < FRAMES; i++) {
+            sink = gson.toJson(push).getBytes(StandardCharsets.UTF_8);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long runEnvelope(Gson gson, PushMessage push) {
+        long start = System.nanoTime();
+        for (int i = 0; i < FRAMES; i++) {
+            sink = ProtobufEnvelope.encode(push, gson);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long runRawJson(byte[] raw) {
+        long start = System.nanoTime();
+        for (int i = 0; i < FRAMES; i++) {
+            sink = PushMessage.rawMessage(raw);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long runRawEnvelope(byte[] raw) {
+        long start = System.nanoTime();
+        for (int i = 0; i < FRAMES; i++) {
+            sink = ProtobufEnvelope.encodeRawPush(PushMessage.rawMessage(raw));
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static OutputMessageData message() {
+        MessagePayload payload = new MessagePayload();
+        payload.setType(1);
+        payload.setSearchableContent("你好，这是一条用于测试编码开销的文本消息");
+        OutputMessageData data = new OutputMessageData();
+        data.setSender("user1");
+        data.setMessageId(1234567890123L);
+        data.setTimestamp(1700000000000L);
+        data.setConv(new Conversation());
+        data.getConv().setType(1);
+        data.getConv().setTarget("group1");
+        data.setPayload(payload);
+        return data;
+    }
+}
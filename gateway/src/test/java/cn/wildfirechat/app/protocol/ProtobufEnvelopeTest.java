@@ -0,0 +1,139 @@
+package cn.wildfirechat.app.protocol;
+
+import cn.wildfirechat.pojos.Conversation;
+import cn.wildfirechat.pojos.OutputMessageData;
+import com.google.gson.Gson;
+import com.google.gson.JsonParser;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProtobufEnvelopeTest {
+
+    private final Gson gson = new Gson();
+
+    @Test
+    void encodesResponse() throws IOException {
+        byte[] envelope = ProtobufEnvelope.encode(ResponseMessage.success("42", Collections.singletonMap("name", "小火")), gson);
+        assertTrue(ProtobufEnvelope.isEnvelope(envelope));
+
+        Map<Integer, List<Object>> fields = decode(envelope);
+        assertEquals(ProtobufEnvelope.KIND_RESPONSE, first(fields, ProtobufEnvelope.FIELD_KIND));
+        assertEquals("42", string(fields, ProtobufEnvelope.FIELD_REQUEST_ID));
+        assertEquals(0, first(fields, ProtobufEnvelope.FIELD_CODE));
+        assertEquals("{\"name\":\"小火\"}", string(fields, ProtobufEnvelope.FIELD_RESULT));
+    }
+
+    @Test
+    void encodesErrorWithoutResult() throws IOException {
+        Map<Integer, List<Object>> fields = decode(ProtobufEnvelope.encode(ResponseMessage.error("7", 503, "busy"), gson));
+        assertEquals(503, first(fields, ProtobufEnvelope.FIELD_CODE));
+        assertEquals("busy", string(fields, ProtobufEnvelope.FIELD_MSG));
+        assertFalse(fields.containsKey(ProtobufEnvelope.FIELD_RESULT));
+    }
+
+    @Test
+    void encodesPushMessageAndEvent() throws IOException {
+        Map<Integer, List<Object>> fields = decode(ProtobufEnvelope.encode(PushMessage.message(message()), gson));
+        assertEquals(ProtobufEnvelope.KIND_PUSH, first(fields, ProtobufEnvelope.FIELD_KIND));
+        assertEquals("message", string(fields, ProtobufEnvelope.FIELD_PUSH_TYPE));
+        OutputMessageData data = gson.fromJson(string(fields, ProtobufEnvelope.FIELD_DATA), OutputMessageData.class);
+        assertEquals(12345L, data.getMessageId());
+        assertEquals("u1", data.getSender());
+
+        fields = decode(ProtobufEnvelope.encode(PushMessage.event("kicked", Collections.singletonMap("reason", 1)), gson));
+        assertEquals("event", string(fields, ProtobufEnvelope.FIELD_PUSH_TYPE));
+        assertEquals("kicked", string(fields, ProtobufEnvelope.FIELD_EVENT));
+        assertEquals("{\"reason\":1}", string(fields, ProtobufEnvelope.FIELD_EXTRA));
+        assertFalse(fields.containsKey(ProtobufEnvelope.FIELD_DATA));
+    }
+
+    @Test
+    void otherMessagesAreNotEncoded() {
+        assertNull(ProtobufEnvelope.encode(new ConnectMessage(), gson));
+    }
+
+    @Test
+    void rawPushCopiesDataUnchanged() throws IOException {
+        String json = gson.toJson(message());
+        byte[] raw = ProtobufEnvelope.encodeRawPush(PushMessage.rawMessage(json.getBytes(StandardCharsets.UTF_8)));
+        Map<Integer, List<Object>> fields = decode(raw);
+        assertEquals(ProtobufEnvelope.KIND_PUSH, first(fields, ProtobufEnvelope.FIELD_KIND));
+        assertEquals("message", string(fields, ProtobufEnvelope.FIELD_PUSH_TYPE));
+        assertEquals(json, string(fields, ProtobufEnvelope.FIELD_DATA));
+
+        // 与先反序列化再编码的结果等价
+        Map<Integer, List<Object>> typed = decode(ProtobufEnvelope.encode(PushMessage.message(message()), gson));
+        assertEquals(JsonParser.parseString(string(typed, ProtobufEnvelope.FIELD_DATA)),
+                JsonParser.parseString(string(fields, ProtobufEnvelope.FIELD_DATA)));
+    }
+
+    @Test
+    void rawPushRejectsOtherFrames() {
+        assertNull(ProtobufEnvelope.encodeRawPush("{\"type\":\"event\",\"event\":\"x\"}".getBytes(StandardCharsets.UTF_8)));
+        assertNull(ProtobufEnvelope.encodeRawPush("{\"type\":\"message\",\"data\":".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void kindTagIsFirstByte() {
+        assertFalse(ProtobufEnvelope.isEnvelope(new byte[0]));
+        assertFalse(ProtobufEnvelope.isEnvelope("{}".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(0x08, ProtobufEnvelope.KIND_TAG);
+    }
+
+    private static OutputMessageData message() {
+        OutputMessageData data = new OutputMessageData();
+        data.setSender("u1");
+        data.setMessageId(12345L);
+        data.setTimestamp(1700000000000L);
+        data.setConv(new Conversation());
+        data.getConv().setType(0);
+        data.getConv().setTarget("robot1");
+        return data;
+    }
+
+    /**
+     * 按字段号收集信封中的字段，varint字段为Integer，长度前缀字段为byte[]
+     */
+    private static Map<Integer, List<Object>> decode(byte[] envelope) throws IOException {
+        Map<Integer, List<Object>> fields = new HashMap<>();
+        CodedInputStream input = CodedInputStream.newInstance(envelope);
+        boolean firstField = true;
+        int tag;
+        while ((tag = input.readTag()) != 0) {
+            int field = WireFormat.getTagFieldNumber(tag);
+            if (firstField) {
+                assertEquals(ProtobufEnvelope.FIELD_KIND, field, "kind must be the first field");
+                firstField = false;
+            }
+            Object value;
+            if ((tag & 7) == WireFormat.WIRETYPE_VARINT) {
+                value = input.readInt32();
+            } else {
+                assertEquals(WireFormat.WIRETYPE_LENGTH_DELIMITED, (tag & 7));
+                value = input.readBytes().toByteArray();
+            }
+            fields.computeIfAbsent(field, k -> new ArrayList<>()).add(value);
+        }
+        return fields;
+    }
+
+    private static Object first(Map<Integer, List<Object>> fields, int field) {
+        assertTrue(fields.containsKey(field), "missing field " + field);
+        return fields.get(field).get(0);
+    }
+
+    private static String string(Map<Integer, List<Object>> fields, int field) {
+        return new String((byte[]) first(fields, field), StandardCharsets.UTF_8);
+    }
+}
@@ -2,8 +2,11 @@ package cn.wildfirechat.openclaw.core;
 
 import cn.wildfirechat.client.RobotServiceClient;
 import cn.wildfirechat.client.handler.MessageHandler;
+import cn.wildfirechat.client.protocol.PushFilter;
 import cn.wildfirechat.client.protocol.PushMessage;
+import cn.wildfirechat.openclaw.config.GroupStrategyConfig;
 import cn.wildfirechat.openclaw.config.OpenclawConfig;
+import cn.wildfirechat.openclaw.config.WhitelistConfig;
 import cn.wildfirechat.openclaw.converter.MessageConverter;
 import cn.wildfirechat.openclaw.filter.WhitelistFilter;
 import cn.wildfirechat.openclaw.openclaw.OpenclawWebSocketClient;
@@ -20,6 +23,7 @@ import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.util.Arrays;
 
 /**
  * Openclaw桥接器
@@ -53,6 +57,12 @@ public class OpenclawBridge implements OpenclawWebSocketClient.OpenclawMessageHa
     @Autowired
     private SessionContextManager sessionContextManager;
 
+    @Autowired
+    private GroupStrategyConfig groupStrategyConfig;
+
+    @Autowired
+    private WhitelistConfig whitelistConfig;
+
     private RobotServiceClient wildfireClient;
     private OpenclawWebSocketClient openclawClient;
 
@@ -88,6 +98,7 @@ public class OpenclawBridge implements OpenclawWebSocketClient.OpenclawMessageHa
                 wfGatewayUrl,
                 this  // this implements MessageHandler
         );
+        wildfireClient.setSubscription(pushSubscription());
 
         boolean connected = wildfireClient.connect(
                 wfRobotId,
@@ -217,6 +228,28 @@ public class OpenclawBridge implements OpenclawWebSocketClient.OpenclawMessageHa
         }
     }
 
+    /**
+     * 由网关过滤掉一定会被丢弃的消息
+     * 只声明与本地过滤等价的条件：未启用群聊策略时不接收群聊；
+     * 白名单只有用户时只接收这些用户的消息（有群组白名单时用户和群组是"或"的关系，无法在网关表达）
+     * @return 没有可声明的条件时返回null
+     */
+    private PushFilter pushSubscription() {
+        PushFilter filter = new PushFilter();
+        boolean restricted = false;
+        if (!groupStrategyConfig.isEnabled()) {
+            // 与MessageConverter一致，类型1、2是群聊，其余会话（单聊、频道等）不受群聊策略限制
+            filter.setConvTypes(Arrays.asList(0, 3, 4, 5));
+            restricted = true;
+        }
+        if (whitelistConfig.isEnabled() && whitelistConfig.getAllowedGroupList().isEmpty()
+                && !whitelistConfig.getAllowedUserList().isEmpty()) {
+            filter.setSenders(whitelistConfig.getAllowedUserList());
+            restricted = true;
+        }
+        return restricted ? filter : null;
+    }
+
     // ==================== Openclaw Message Handler ====================
 
     @Override